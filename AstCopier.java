@@ -0,0 +1,265 @@
+import CPP.Absyn.*;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Copies statements and expressions, renaming every variable when
+ * it has a suffix, and counts what it copied on the way. Passes that
+ * rewrite the tree extend it, passes that only look at the tree read
+ * the counts of a copy.
+ */
+public class AstCopier implements Stm.Visitor<Stm,Void>, Exp.Visitor<Exp,Void>
+{
+    private final String suffix;
+
+    // Expressions that replace variables
+    final Map<String,Exp> values = new TreeMap<>();
+
+    // Facts about what was copied
+    int size;
+    int returns;
+    boolean assigns;
+    boolean effects;
+    final Map<String,Integer> uses = new TreeMap<>();
+    final Set<String> calls = new HashSet<>();
+    final Set<String> assigned = new HashSet<>();
+    final Set<String> declared = new HashSet<>();
+
+    AstCopier(String suffix) {
+        this.suffix = suffix;
+    }
+
+    String name(String id) {
+        return suffix == null ? id : id + "$" + suffix;
+    }
+
+    ListStm copyList(ListStm stms) {
+        ListStm out = new ListStm();
+        for (Stm s : stms)
+            copyInto(s, out);
+        return out;
+    }
+
+    void copyInto(Stm s, ListStm out) {
+        Stm copy = s.accept(this, null);
+        // a visit returns null for a statement that is left out
+        if (copy != null)
+            out.add(copy);
+    }
+
+    // a statement that stands alone, like the body of a loop
+    Stm copyStm(Stm s) {
+        ListStm out = new ListStm();
+        copyInto(s, out);
+        return out.size() == 1 ? out.getFirst() : new SBlock(out);
+    }
+
+    Exp copy(Exp e) {
+        return e.accept(this, null);
+    }
+
+    ListExp copyArgs(ListExp args) {
+        ListExp out = new ListExp();
+        for (Exp e : args)
+            out.add(copy(e));
+        return out;
+    }
+
+    // Statements
+
+    public Stm visit(SExp p, Void arg) {
+        size++;
+        return new SExp(copy(p.exp_));
+    }
+
+    public Stm visit(SDecls p, Void arg) {
+        size++;
+        ListId ids = new ListId();
+        declared.addAll(p.listid_);
+        for (String id : p.listid_)
+            ids.add(name(id));
+        return new SDecls(p.type_, ids);
+    }
+
+    public Stm visit(SInit p, Void arg) {
+        size++;
+        declared.add(p.id_);
+        return new SInit(p.type_, name(p.id_), copy(p.exp_));
+    }
+
+    public Stm visit(SReturn p, Void arg) {
+        size++;
+        returns++;
+        return new SReturn(copy(p.exp_));
+    }
+
+    public Stm visit(SWhile p, Void arg) {
+        size++;
+        return new SWhile(copy(p.exp_), copyStm(p.stm_));
+    }
+
+    public Stm visit(SBlock p, Void arg) {
+        size++;
+        return new SBlock(copyList(p.liststm_));
+    }
+
+    public Stm visit(SIfElse p, Void arg) {
+        size++;
+        return new SIfElse(copy(p.exp_), copyStm(p.stm_1), copyStm(p.stm_2));
+    }
+
+    // Expressions
+
+    public Exp visit(ETrue p, Void arg) {
+        size++;
+        return new ETrue();
+    }
+
+    public Exp visit(EFalse p, Void arg) {
+        size++;
+        return new EFalse();
+    }
+
+    public Exp visit(EInt p, Void arg) {
+        size++;
+        return new EInt(p.integer_);
+    }
+
+    public Exp visit(EDouble p, Void arg) {
+        size++;
+        return new EDouble(p.double_);
+    }
+
+    public Exp visit(EId p, Void arg) {
+        size++;
+        uses.merge(p.id_, 1, Integer::sum);
+        Exp value = values.get(p.id_);
+        if (value != null)
+            return value.accept(new AstCopier(null), null);
+        return new EId(name(p.id_));
+    }
+
+    public Exp visit(EApp p, Void arg) {
+        size++;
+        effects = true;
+        calls.add(p.id_);
+        return new EApp(p.id_, copyArgs(p.listexp_));
+    }
+
+    public Exp visit(EPostIncr p, Void arg) {
+        assigned();
+        return new EPostIncr(copyTarget(p.exp_));
+    }
+
+    public Exp visit(EPostDecr p, Void arg) {
+        assigned();
+        return new EPostDecr(copyTarget(p.exp_));
+    }
+
+    public Exp visit(EPreIncr p, Void arg) {
+        assigned();
+        return new EPreIncr(copyTarget(p.exp_));
+    }
+
+    public Exp visit(EPreDecr p, Void arg) {
+        assigned();
+        return new EPreDecr(copyTarget(p.exp_));
+    }
+
+    public Exp visit(EAss p, Void arg) {
+        assigned();
+        Exp target = copyTarget(p.exp_1);
+        return new EAss(target, copy(p.exp_2));
+    }
+
+    public Exp visit(ETimes p, Void arg) {
+        size++;
+        return new ETimes(copy(p.exp_1), copy(p.exp_2));
+    }
+
+    public Exp visit(EDiv p, Void arg) {
+        // division by zero throws, so it is not moved around
+        size++;
+        effects = true;
+        return new EDiv(copy(p.exp_1), copy(p.exp_2));
+    }
+
+    public Exp visit(EPlus p, Void arg) {
+        size++;
+        return new EPlus(copy(p.exp_1), copy(p.exp_2));
+    }
+
+    public Exp visit(EMinus p, Void arg) {
+        size++;
+        return new EMinus(copy(p.exp_1), copy(p.exp_2));
+    }
+
+    public Exp visit(ELt p, Void arg) {
+        size++;
+        return new ELt(copy(p.exp_1), copy(p.exp_2));
+    }
+
+    public Exp visit(EGt p, Void arg) {
+        size++;
+        return new EGt(copy(p.exp_1), copy(p.exp_2));
+    }
+
+    public Exp visit(ELtEq p, Void arg) {
+        size++;
+        return new ELtEq(copy(p.exp_1), copy(p.exp_2));
+    }
+
+    public Exp visit(EGtEq p, Void arg) {
+        size++;
+        return new EGtEq(copy(p.exp_1), copy(p.exp_2));
+    }
+
+    public Exp visit(EEq p, Void arg) {
+        size++;
+        return new EEq(copy(p.exp_1), copy(p.exp_2));
+    }
+
+    public Exp visit(ENEq p, Void arg) {
+        size++;
+        return new ENEq(copy(p.exp_1), copy(p.exp_2));
+    }
+
+    public Exp visit(EAnd p, Void arg) {
+        size++;
+        return new EAnd(copy(p.exp_1), copy(p.exp_2));
+    }
+
+    public Exp visit(EOr p, Void arg) {
+        size++;
+        return new EOr(copy(p.exp_1), copy(p.exp_2));
+    }
+
+    // the operand of an increment or decrement, null for any other expression
+    static Exp incremented(Exp e) {
+        if (e instanceof EPostIncr) return ((EPostIncr) e).exp_;
+        if (e instanceof EPostDecr) return ((EPostDecr) e).exp_;
+        if (e instanceof EPreIncr)  return ((EPreIncr) e).exp_;
+        if (e instanceof EPreDecr)  return ((EPreDecr) e).exp_;
+        return null;
+    }
+
+    // the variable assigned to is never replaced by a value
+    Exp copyTarget(Exp e) {
+        if (!(e instanceof EId))
+            return copy(e);
+        String id = ((EId) e).id_;
+        size++;
+        uses.merge(id, 1, Integer::sum);
+        assigned.add(id);
+        return new EId(name(id));
+    }
+
+    private void assigned() {
+        size++;
+        assigns = true;
+        effects = true;
+    }
+}
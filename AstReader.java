@@ -0,0 +1,172 @@
+import CPP.Absyn.*;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Reads back a tree written by AstWriter. For a tree written with its
+ * types the type of every expression is kept as the TypeChecker would
+ * have found it. Anything that is not a tree in that form, a tag out of
+ * place or an early end, is an IOException.
+ */
+public class AstReader
+{
+    private final DataInputStream in;
+    private final boolean typed;
+
+    // Type of every expression read, when they were written
+    final Map<Exp,Type> types = new IdentityHashMap<>();
+
+    public AstReader(InputStream in, boolean typed) {
+        this.in = new DataInputStream(in);
+        this.typed = typed;
+    }
+
+    // Entry point
+
+    public Program readProgram() throws IOException {
+        expect(AstWriter.PROGRAM);
+        ListDef defs = new ListDef();
+        for (int n = length(); n > 0; n--)
+            defs.add(readFunction());
+        return new PDefs(defs);
+    }
+
+    public DFun readFunction() throws IOException {
+        expect(AstWriter.FUNCTION);
+        Type type = readType();
+        String id = in.readUTF();
+        ListArg args = new ListArg();
+        for (int n = length(); n > 0; n--) {
+            Type argType = readType();
+            args.add(new ADecl(argType, in.readUTF()));
+        }
+        return new DFun(type, id, args, stms());
+    }
+
+    public Type readType() throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case AstWriter.BOOL:   return new Type_bool();
+            case AstWriter.DOUBLE: return new Type_double();
+            case AstWriter.INT:    return new Type_int();
+            case AstWriter.VOID:   return new Type_void();
+            default: throw badTag(tag);
+        }
+    }
+
+    private void expect(int tag) throws IOException {
+        int read = in.readUnsignedByte();
+        if (read != tag)
+            throw badTag(read);
+    }
+
+    private IOException badTag(int tag) {
+        return new IOException("unexpected tag " + tag);
+    }
+
+    private int length() throws IOException {
+        int n = in.readInt();
+        if (n < 0)
+            throw new IOException("negative length " + n);
+        return n;
+    }
+
+    // Statements
+
+    private ListStm stms() throws IOException {
+        ListStm stms = new ListStm();
+        for (int n = length(); n > 0; n--)
+            stms.add(stm());
+        return stms;
+    }
+
+    private Stm stm() throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case AstWriter.SEXP:
+                return new SExp(exp());
+            case AstWriter.SDECLS: {
+                Type type = readType();
+                ListId ids = new ListId();
+                for (int n = length(); n > 0; n--)
+                    ids.add(in.readUTF());
+                return new SDecls(type, ids);
+            }
+            case AstWriter.SINIT: {
+                Type type = readType();
+                String id = in.readUTF();
+                return new SInit(type, id, exp());
+            }
+            case AstWriter.SRETURN:
+                return new SReturn(exp());
+            case AstWriter.SWHILE: {
+                Exp condition = exp();
+                return new SWhile(condition, stm());
+            }
+            case AstWriter.SBLOCK:
+                return new SBlock(stms());
+            case AstWriter.SIFELSE: {
+                Exp condition = exp();
+                Stm then = stm();
+                return new SIfElse(condition, then, stm());
+            }
+            default:
+                throw badTag(tag);
+        }
+    }
+
+    // Expressions
+
+    private Exp exp() throws IOException {
+        Exp e = node();
+        if (typed)
+            types.put(e, readType());
+        return e;
+    }
+
+    private Exp node() throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case AstWriter.ETRUE:     return new ETrue();
+            case AstWriter.EFALSE:    return new EFalse();
+            case AstWriter.EINT:      return new EInt(in.readInt());
+            case AstWriter.EDOUBLE:   return new EDouble(in.readDouble());
+            case AstWriter.EID:       return new EId(in.readUTF());
+            case AstWriter.EAPP: {
+                String id = in.readUTF();
+                ListExp args = new ListExp();
+                for (int n = length(); n > 0; n--)
+                    args.add(exp());
+                return new EApp(id, args);
+            }
+            case AstWriter.EPOSTINCR: return new EPostIncr(exp());
+            case AstWriter.EPOSTDECR: return new EPostDecr(exp());
+            case AstWriter.EPREINCR:  return new EPreIncr(exp());
+            case AstWriter.EPREDECR:  return new EPreDecr(exp());
+            default: {
+                Exp e1 = exp();
+                Exp e2 = exp();
+                switch (tag) {
+                    case AstWriter.ETIMES: return new ETimes(e1, e2);
+                    case AstWriter.EDIV:   return new EDiv(e1, e2);
+                    case AstWriter.EPLUS:  return new EPlus(e1, e2);
+                    case AstWriter.EMINUS: return new EMinus(e1, e2);
+                    case AstWriter.ELT:    return new ELt(e1, e2);
+                    case AstWriter.EGT:    return new EGt(e1, e2);
+                    case AstWriter.ELTEQ:  return new ELtEq(e1, e2);
+                    case AstWriter.EGTEQ:  return new EGtEq(e1, e2);
+                    case AstWriter.EEQ:    return new EEq(e1, e2);
+                    case AstWriter.ENEQ:   return new ENEq(e1, e2);
+                    case AstWriter.EAND:   return new EAnd(e1, e2);
+                    case AstWriter.EOR:    return new EOr(e1, e2);
+                    case AstWriter.EASS:   return new EAss(e1, e2);
+                    default: throw badTag(tag);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,323 @@
+import CPP.Absyn.*;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+/**
+ * Writes a tree in a compact binary form: every node is a tag byte
+ * followed by its fields, names as modified UTF-8 and lists with their
+ * length first. Given the types the TypeChecker found, every
+ * expression is followed by its type, and AstReader reads a checked
+ * program back without checking it again.
+ */
+public class AstWriter implements Stm.Visitor<Void,Void>, Exp.Visitor<Void,Void>
+{
+    // Tags of the nodes
+    static final int PROGRAM = 1, FUNCTION = 2;
+    static final int BOOL = 8, DOUBLE = 9, INT = 10, VOID = 11;
+    static final int SEXP = 16, SDECLS = 17, SINIT = 18, SRETURN = 19,
+                     SWHILE = 20, SBLOCK = 21, SIFELSE = 22;
+    static final int ETRUE = 32, EFALSE = 33, EINT = 34, EDOUBLE = 35, EID = 36,
+                     EAPP = 37, EPOSTINCR = 38, EPOSTDECR = 39, EPREINCR = 40,
+                     EPREDECR = 41, ETIMES = 42, EDIV = 43, EPLUS = 44, EMINUS = 45,
+                     ELT = 46, EGT = 47, ELTEQ = 48, EGTEQ = 49, EEQ = 50, ENEQ = 51,
+                     EAND = 52, EOR = 53, EASS = 54;
+
+    private final DataOutputStream out;
+
+    // Type of every expression, or null to write none
+    private final Map<Exp,Type> types;
+
+    public AstWriter(OutputStream out) {
+        this(out, null);
+    }
+
+    public AstWriter(OutputStream out, Map<Exp,Type> types) {
+        this.out = new DataOutputStream(out);
+        this.types = types;
+    }
+
+    // Entry points
+
+    public void write(Program p) throws IOException {
+        ListDef defs = ((PDefs) p).listdef_;
+        out.writeByte(PROGRAM);
+        out.writeInt(defs.size());
+        for (Def d : defs)
+            write((DFun) d);
+        out.flush();
+    }
+
+    public void write(DFun f) throws IOException {
+        out.writeByte(FUNCTION);
+        writeType(f.type_);
+        out.writeUTF(f.id_);
+        out.writeInt(f.listarg_.size());
+        for (Arg a : f.listarg_) {
+            writeType(((ADecl) a).type_);
+            out.writeUTF(((ADecl) a).id_);
+        }
+        try {
+            stms(f.liststm_);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.flush();
+    }
+
+    public void writeType(Type t) throws IOException {
+        if (t instanceof Type_bool)
+            out.writeByte(BOOL);
+        else if (t instanceof Type_double)
+            out.writeByte(DOUBLE);
+        else if (t instanceof Type_int)
+            out.writeByte(INT);
+        else
+            out.writeByte(VOID);
+    }
+
+    // The visitors cannot throw an IOException, it is carried out
+    // unchecked and taken out again by write
+
+    private void tag(int tag) {
+        try {
+            out.writeByte(tag);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void name(String name) {
+        try {
+            out.writeUTF(name);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void type(Type t) {
+        try {
+            writeType(t);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void length(int n) {
+        try {
+            out.writeInt(n);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void exp(Exp e) {
+        e.accept(this, null);
+        if (types != null) {
+            Type t = types.get(e);
+            if (t == null)
+                throw new RuntimeException("expression has not been type checked " + e);
+            type(t);
+        }
+    }
+
+    private void stms(ListStm stms) {
+        length(stms.size());
+        for (Stm s : stms)
+            s.accept(this, null);
+    }
+
+    private void binary(int tag, Exp e1, Exp e2) {
+        tag(tag);
+        exp(e1);
+        exp(e2);
+    }
+
+    private void unary(int tag, Exp e) {
+        tag(tag);
+        exp(e);
+    }
+
+    // Statements
+
+    public Void visit(SExp p, Void arg) {
+        unary(SEXP, p.exp_);
+        return null;
+    }
+
+    public Void visit(SDecls p, Void arg) {
+        tag(SDECLS);
+        type(p.type_);
+        length(p.listid_.size());
+        for (String id : p.listid_)
+            name(id);
+        return null;
+    }
+
+    public Void visit(SInit p, Void arg) {
+        tag(SINIT);
+        type(p.type_);
+        name(p.id_);
+        exp(p.exp_);
+        return null;
+    }
+
+    public Void visit(SReturn p, Void arg) {
+        unary(SRETURN, p.exp_);
+        return null;
+    }
+
+    public Void visit(SWhile p, Void arg) {
+        unary(SWHILE, p.exp_);
+        p.stm_.accept(this, null);
+        return null;
+    }
+
+    public Void visit(SBlock p, Void arg) {
+        tag(SBLOCK);
+        stms(p.liststm_);
+        return null;
+    }
+
+    public Void visit(SIfElse p, Void arg) {
+        unary(SIFELSE, p.exp_);
+        p.stm_1.accept(this, null);
+        p.stm_2.accept(this, null);
+        return null;
+    }
+
+    // Expressions
+
+    public Void visit(ETrue p, Void arg) {
+        tag(ETRUE);
+        return null;
+    }
+
+    public Void visit(EFalse p, Void arg) {
+        tag(EFALSE);
+        return null;
+    }
+
+    public Void visit(EInt p, Void arg) {
+        tag(EINT);
+        try {
+            out.writeInt(p.integer_);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return null;
+    }
+
+    public Void visit(EDouble p, Void arg) {
+        tag(EDOUBLE);
+        try {
+            out.writeDouble(p.double_);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return null;
+    }
+
+    public Void visit(EId p, Void arg) {
+        tag(EID);
+        name(p.id_);
+        return null;
+    }
+
+    public Void visit(EApp p, Void arg) {
+        tag(EAPP);
+        name(p.id_);
+        length(p.listexp_.size());
+        for (Exp e : p.listexp_)
+            exp(e);
+        return null;
+    }
+
+    public Void visit(EPostIncr p, Void arg) {
+        unary(EPOSTINCR, p.exp_);
+        return null;
+    }
+
+    public Void visit(EPostDecr p, Void arg) {
+        unary(EPOSTDECR, p.exp_);
+        return null;
+    }
+
+    public Void visit(EPreIncr p, Void arg) {
+        unary(EPREINCR, p.exp_);
+        return null;
+    }
+
+    public Void visit(EPreDecr p, Void arg) {
+        unary(EPREDECR, p.exp_);
+        return null;
+    }
+
+    public Void visit(ETimes p, Void arg) {
+        binary(ETIMES, p.exp_1, p.exp_2);
+        return null;
+    }
+
+    public Void visit(EDiv p, Void arg) {
+        binary(EDIV, p.exp_1, p.exp_2);
+        return null;
+    }
+
+    public Void visit(EPlus p, Void arg) {
+        binary(EPLUS, p.exp_1, p.exp_2);
+        return null;
+    }
+
+    public Void visit(EMinus p, Void arg) {
+        binary(EMINUS, p.exp_1, p.exp_2);
+        return null;
+    }
+
+    public Void visit(ELt p, Void arg) {
+        binary(ELT, p.exp_1, p.exp_2);
+        return null;
+    }
+
+    public Void visit(EGt p, Void arg) {
+        binary(EGT, p.exp_1, p.exp_2);
+        return null;
+    }
+
+    public Void visit(ELtEq p, Void arg) {
+        binary(ELTEQ, p.exp_1, p.exp_2);
+        return null;
+    }
+
+    public Void visit(EGtEq p, Void arg) {
+        binary(EGTEQ, p.exp_1, p.exp_2);
+        return null;
+    }
+
+    public Void visit(EEq p, Void arg) {
+        binary(EEQ, p.exp_1, p.exp_2);
+        return null;
+    }
+
+    public Void visit(ENEq p, Void arg) {
+        binary(ENEQ, p.exp_1, p.exp_2);
+        return null;
+    }
+
+    public Void visit(EAnd p, Void arg) {
+        binary(EAND, p.exp_1, p.exp_2);
+        return null;
+    }
+
+    public Void visit(EOr p, Void arg) {
+        binary(EOR, p.exp_1, p.exp_2);
+        return null;
+    }
+
+    public Void visit(EAss p, Void arg) {
+        binary(EASS, p.exp_1, p.exp_2);
+        return null;
+    }
+}
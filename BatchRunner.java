@@ -0,0 +1,147 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs every .cc program of a directory through lab2, side by side on
+ * all cores of one JVM. A program reads name.input when there is one,
+ * and passes when it prints what name.output holds, line ends aside.
+ * Without an output file it only runs. Every run has its own streams,
+ * and the summary gives each program's result and wall time, and the
+ * totals at the end.
+ */
+public class BatchRunner {
+
+    private final Path directory;
+    private final String[] options;
+    private final int threads;
+
+    /**options are the arguments of lab2 for every program*/
+    public BatchRunner(Path directory, String[] options, int threads) {
+        this.directory = directory;
+        this.options = options;
+        this.threads = threads;
+    }
+
+    /**the result of one program*/
+    private static class Result {
+        final String name;
+        final String verdict;
+        final long nanos;
+        final String note;
+
+        Result(String name, String verdict, long nanos, String note) {
+            this.name = name;
+            this.verdict = verdict;
+            this.nanos = nanos;
+            this.note = note;
+        }
+    }
+
+    /**runs the programs, prints the summary on out and returns the
+     * exit status, 1 if a program failed*/
+    public int run(PrintStream out) throws IOException {
+        List<Path> programs = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.cc")) {
+            for (Path file : files) {
+                programs.add(file);
+            }
+        }
+        Collections.sort(programs);
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Result>> results = new ArrayList<>();
+        try {
+            for (Path program : programs) {
+                results.add(pool.submit(() -> runOne(program)));
+            }
+            int passed = 0;
+            int failed = 0;
+            int ran = 0;
+            for (Future<Result> future : results) {
+                Result r = future.get();
+                out.printf("%-4s %10.1f ms  %s%s%n", r.verdict, r.nanos / 1e6, r.name,
+                        r.note == null ? "" : "  (" + r.note + ")");
+                if (r.verdict.equals("PASS")) {
+                    passed++;
+                } else if (r.verdict.equals("FAIL")) {
+                    failed++;
+                } else {
+                    ran++;
+                }
+            }
+            out.printf("%d programs: %d passed, %d failed, %d without output; %.1f ms on %d threads%n",
+                    programs.size(), passed, failed, ran, (System.nanoTime() - start) / 1e6, threads);
+            return failed == 0 ? 0 : 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private Result runOne(Path program) throws IOException {
+        String name = program.getFileName().toString();
+        String base = name.substring(0, name.length() - ".cc".length());
+        Path inputFile = program.resolveSibling(base + ".input");
+        Path outputFile = program.resolveSibling(base + ".output");
+        InputStream input = new ByteArrayInputStream(
+                Files.isRegularFile(inputFile) ? Files.readAllBytes(inputFile) : new byte[0]);
+
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(stdout, true);
+        // what the runs report on stderr is not compared
+        PrintStream err = new PrintStream(new ByteArrayOutputStream(), true);
+        String[] args = Arrays.copyOf(options, options.length + 1);
+        args[options.length] = program.toString();
+
+        long start = System.nanoTime();
+        int status;
+        try {
+            status = lab2.run(args, null, input, out, err);
+        } catch (RuntimeException | Error e) {
+            out.println(e.toString());
+            status = 1;
+        }
+        long nanos = System.nanoTime() - start;
+
+        if (!Files.isRegularFile(outputFile)) {
+            return new Result(name, "RAN", nanos, "exit " + status);
+        }
+        String[] expected = lines(new String(Files.readAllBytes(outputFile), StandardCharsets.UTF_8));
+        String[] actual = lines(new String(stdout.toByteArray(), StandardCharsets.UTF_8));
+        for (int i = 0; i < Math.max(expected.length, actual.length); i++) {
+            if (i >= expected.length || i >= actual.length || !expected[i].equals(actual[i])) {
+                return new Result(name, "FAIL", nanos, "differs at line " + (i + 1));
+            }
+        }
+        return new Result(name, "PASS", nanos, null);
+    }
+
+    // the lines of a text, without a last empty one
+    private static String[] lines(String text) {
+        text = text.replace("\r\n", "\n");
+        if (text.endsWith("\n")) {
+            text = text.substring(0, text.length() - 1);
+        }
+        return text.isEmpty() ? new String[0] : text.split("\n", -1);
+    }
+}
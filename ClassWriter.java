@@ -0,0 +1,322 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal writer of JVM class files, just enough for the JvmCompiler:
+ * a constant pool, static methods and their bytecode.
+ * Classes are written in version 49 so that the JVM verifies them by
+ * type inference and no stack map frames have to be computed.
+ */
+public class ClassWriter {
+
+    // opcodes used by the JvmCompiler
+    public static final int ICONST_0 = 3, DCONST_0 = 14, DCONST_1 = 15;
+    public static final int BIPUSH = 16, SIPUSH = 17, LDC = 18, LDC_W = 19, LDC2_W = 20;
+    public static final int ILOAD = 21, DLOAD = 24, ISTORE = 54, DSTORE = 57;
+    public static final int POP = 87, POP2 = 88, DUP = 89, DUP2 = 92;
+    public static final int IADD = 96, DADD = 99, ISUB = 100, DSUB = 103;
+    public static final int IMUL = 104, DMUL = 107, IDIV = 108, DDIV = 111;
+    public static final int IINC = 132;
+    public static final int LCMP = 148, DCMPL = 151, DCMPG = 152;
+    public static final int IFEQ = 153, IFNE = 154, IFLT = 155, IFGE = 156, IFGT = 157, IFLE = 158;
+    public static final int IF_ICMPEQ = 159, IF_ICMPNE = 160, IF_ICMPLT = 161;
+    public static final int IF_ICMPGE = 162, IF_ICMPGT = 163, IF_ICMPLE = 164;
+    public static final int GOTO = 167, IRETURN = 172, DRETURN = 175, RETURN = 177;
+    public static final int INVOKESTATIC = 184, WIDE = 196;
+
+    public static final int ACC_PUBLIC = 0x0001, ACC_STATIC = 0x0008, ACC_SUPER = 0x0020;
+
+    private final String className;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String,Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    private final List<MethodWriter> methods = new ArrayList<>();
+
+    public ClassWriter(String className) {
+        this.className = className;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public MethodWriter newMethod(String name, String descriptor) {
+        MethodWriter m = new MethodWriter(name, descriptor);
+        methods.add(m);
+        return m;
+    }
+
+    public byte[] toByteArray() {
+        try {
+            int thisClass = classConst(className);
+            int superClass = classConst("java/lang/Object");
+            for (MethodWriter m : methods) {
+                m.nameIndex = utf8(m.name);
+                m.descIndex = utf8(m.descriptor);
+            }
+            int codeName = utf8("Code");
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(poolCount);
+            pool.flush();
+            out.write(poolBytes.toByteArray());
+            out.writeShort(ACC_PUBLIC | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfaces
+            out.writeShort(0); // fields
+            out.writeShort(methods.size());
+            for (MethodWriter m : methods) {
+                m.write(out, codeName);
+            }
+            out.writeShort(0); // attributes
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    ///////////////////////// Constant pool /////////////////////////
+
+    private int constant(String key, int size, PoolEntry entry) {
+        Integer index = poolIndex.get(key);
+        if (index == null) {
+            try {
+                entry.write();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            index = poolCount;
+            poolCount += size;
+            if (poolCount > 0xFFFF)
+                throw new RuntimeException("constant pool of " + className + " is too large");
+            poolIndex.put(key, index);
+        }
+        return index;
+    }
+
+    private interface PoolEntry {
+        void write() throws IOException;
+    }
+
+    public int utf8(final String s) {
+        return constant("U" + s, 1, () -> { pool.writeByte(1); pool.writeUTF(s); });
+    }
+
+    public int intConst(final int v) {
+        return constant("I" + v, 1, () -> { pool.writeByte(3); pool.writeInt(v); });
+    }
+
+    public int doubleConst(final double v) {
+        // doubles take two pool entries
+        return constant("D" + Double.doubleToRawLongBits(v), 2, () -> { pool.writeByte(6); pool.writeDouble(v); });
+    }
+
+    public int classConst(String name) {
+        final int n = utf8(name);
+        return constant("C" + name, 1, () -> { pool.writeByte(7); pool.writeShort(n); });
+    }
+
+    public int methodConst(String owner, String name, String descriptor) {
+        final int c = classConst(owner);
+        final int n = utf8(name);
+        final int d = utf8(descriptor);
+        final int nt = constant("N" + name + ":" + descriptor, 1,
+                () -> { pool.writeByte(12); pool.writeShort(n); pool.writeShort(d); });
+        return constant("M" + owner + "." + name + ":" + descriptor, 1,
+                () -> { pool.writeByte(10); pool.writeShort(c); pool.writeShort(nt); });
+    }
+
+
+    ///////////////////////// Methods /////////////////////////
+
+    /**a branch target, jumps to it are patched once it is placed*/
+    public static class Label {
+        private int position = -1;
+        private final List<Integer> jumps = new ArrayList<>();
+    }
+
+    /**a public static method, tracks the operand stack depth
+     * of emitted code to compute max_stack*/
+    public class MethodWriter {
+        private final String name;
+        private final String descriptor;
+        private int nameIndex, descIndex;
+
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private int stack = 0;
+        private int maxStack = 0;
+        private int maxLocals = 0;
+
+        private MethodWriter(String name, String descriptor) {
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+
+        public void setMaxLocals(int maxLocals) {
+            this.maxLocals = maxLocals;
+        }
+
+        public int getStack() {
+            return stack;
+        }
+
+        /**sets the stack depth, used where control flow merges*/
+        public void setStack(int depth) {
+            stack = depth;
+        }
+
+        private void adjust(int delta) {
+            stack += delta;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        /**an instruction without operands changing the stack by delta*/
+        public void op(int opcode, int delta) {
+            code.write(opcode);
+            adjust(delta);
+        }
+
+        public void iconst(int v) {
+            if (v >= -1 && v <= 5) {
+                code.write(ICONST_0 + v);
+            } else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE) {
+                code.write(BIPUSH);
+                code.write(v);
+            } else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE) {
+                code.write(SIPUSH);
+                u2(v);
+            } else {
+                ldc(intConst(v));
+            }
+            adjust(1);
+        }
+
+        public void dconst(double v) {
+            if (Double.doubleToRawLongBits(v) == 0L) {
+                code.write(DCONST_0);
+            } else if (v == 1.0) {
+                code.write(DCONST_1);
+            } else {
+                code.write(LDC2_W);
+                u2(doubleConst(v));
+            }
+            adjust(2);
+        }
+
+        private void ldc(int index) {
+            if (index < 256) {
+                code.write(LDC);
+                code.write(index);
+            } else {
+                code.write(LDC_W);
+                u2(index);
+            }
+        }
+
+        /**load or store of a local, delta is the stack change*/
+        public void local(int opcode, int index, int delta) {
+            if (index < 256) {
+                code.write(opcode);
+                code.write(index);
+            } else {
+                code.write(WIDE);
+                code.write(opcode);
+                u2(index);
+            }
+            adjust(delta);
+        }
+
+        public void iinc(int index, int increment) {
+            if (index < 256) {
+                code.write(IINC);
+                code.write(index);
+                code.write(increment);
+            } else {
+                code.write(WIDE);
+                code.write(IINC);
+                u2(index);
+                u2(increment);
+            }
+        }
+
+        public void invokestatic(String owner, String name, String descriptor, int delta) {
+            code.write(INVOKESTATIC);
+            u2(methodConst(owner, name, descriptor));
+            adjust(delta);
+        }
+
+        /**a conditional or unconditional jump, delta is the number
+         * of operands consumed by the jump*/
+        public void jump(int opcode, Label target, int delta) {
+            target.jumps.add(code.size());
+            code.write(opcode);
+            u2(0);
+            adjust(delta);
+        }
+
+        public void place(Label label) {
+            label.position = code.size();
+        }
+
+        private void u2(int v) {
+            code.write(v >> 8);
+            code.write(v);
+        }
+
+        private void write(DataOutputStream out, int codeName) throws IOException {
+            byte[] bytes = code.toByteArray();
+            if (bytes.length > 0xFFFF)
+                throw new RuntimeException("method " + name + " is too large for the JVM");
+
+            patchJumps(bytes);
+
+            out.writeShort(ACC_PUBLIC | ACC_STATIC);
+            out.writeShort(nameIndex);
+            out.writeShort(descIndex);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + bytes.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeShort(0); // exception table
+            out.writeShort(0); // attributes
+        }
+
+        private final List<Label> labels = new ArrayList<>();
+
+        public Label newLabel() {
+            Label label = new Label();
+            labels.add(label);
+            return label;
+        }
+
+        private void patchJumps(byte[] bytes) {
+            for (Label label : labels) {
+                for (int at : label.jumps) {
+                    int offset = label.position - at;
+                    if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)
+                        throw new RuntimeException("method " + name + " is too large for the JVM");
+                    bytes[at + 1] = (byte) (offset >> 8);
+                    bytes[at + 2] = (byte) offset;
+                }
+            }
+        }
+    }
+}
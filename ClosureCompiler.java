@@ -0,0 +1,1018 @@
+import CPP.Absyn.*;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Execution engine that translates every function once into a tree
+ * of executable nodes and then runs the nodes instead of the AST.
+ * Every node is specialized for the static type of its operands when
+ * it is built, calls are linked directly to the called function, and
+ * variables live unboxed in frame slots assigned by the Resolver.
+ * Values and results of calls are passed as primitives, no visitor
+ * is involved and no value is boxed once the program runs.
+ */
+public class ClosureCompiler {
+
+    private final String MAIN_FUNC = "main";
+
+    private final String PRINT_INT = "printInt";
+    private final String PRINT_DOUBLE = "printDouble";
+    private final String READ_INT = "readInt";
+    private final String READ_DOUBLE = "readDouble";
+
+    // result of a compiled loop that executed a return
+    // statement whose expression has no value
+    static final Object NO_VALUE = new VNull();
+
+    // back edges after which the interpreters replace a loop by its compiled form
+    public static final int HOT_LOOP = 1000;
+
+    public final Type BOOL   = new Type_bool();
+    public final Type INT    = new Type_int();
+    public final Type DOUBLE = new Type_double();
+
+    private final Map<String, Function> functions = new TreeMap<>();
+    private final Map<SWhile, Loop> loops = new IdentityHashMap<>();
+    private final Resolver resolver = new Resolver();
+    private final ProgramIO io;
+
+    // the function being compiled and the static type of its slots
+    private Function current;
+    private Type[] slotTypes;
+
+    private final StmCompiler stmCompiler = new StmCompiler();
+    private final ExpCompiler expCompiler = new ExpCompiler();
+
+
+    public ClosureCompiler() {
+        this(new ProgramIO());
+    }
+
+    public ClosureCompiler(ProgramIO io) {
+        this.io = io;
+    }
+
+    public void interpret(Program p) {
+        compile(p);
+        Function main = functions.get(MAIN_FUNC);
+        main.invoke(new Frame(main.frameSize));
+    }
+
+    /**translates every function of the program,
+     * returns the compiled functions by name*/
+    public Map<String, Function> compile(Program p) {
+        resolver.resolve(p);
+
+        // create all functions first so that calls can be linked
+        // to functions that are defined later in the program
+        for (Def def : ((PDefs) p).listdef_) {
+            DFun dFun = (DFun) def;
+            functions.put(dFun.id_, new Function(dFun, resolver.frameSize(dFun)));
+        }
+
+        for (Function function : functions.values()) {
+            compileFunction(function);
+        }
+        return functions;
+    }
+
+    private void compileFunction(Function function) {
+        DFun dFun = function.definition;
+        current = function;
+        slotTypes = new Type[function.frameSize];
+
+        for (Arg arg : dFun.listarg_) {
+            ADecl decl = (ADecl) arg;
+            slotTypes[resolver.slotOf(decl)] = decl.type_;
+        }
+
+        function.body = compileList(dFun.liststm_);
+    }
+
+    private StmNode[] compileList(ListStm list) {
+        StmNode[] nodes = new StmNode[list.size()];
+        int i = 0;
+        for (Stm stm : list) {
+            nodes[i++] = stm.accept(stmCompiler, null);
+        }
+        return nodes;
+    }
+
+
+    ////////////////////////////// Functions //////////////////////////////
+
+    /**a compiled function, calls hold a direct reference to it*/
+    public static final class Function {
+        final DFun definition;
+        final int frameSize;
+        StmNode[] body;
+
+        Function(DFun definition, int frameSize) {
+            this.definition = definition;
+            this.frameSize = frameSize;
+        }
+
+        /**runs the body in a frame whose parameter slots are set,
+         * the returned value is left in the frame's result*/
+        void invoke(Frame frame) {
+            for (StmNode stm : body) {
+                if (stm.execute(frame)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**activation of a compiled function. Values are never boxed:
+     * ints and booleans (as 0 and 1) and doubles are kept in two
+     * arrays indexed by slot, a return statement leaves its value
+     * in the result field of its type*/
+    static final class Frame {
+        final int[] ints;
+        final double[] doubles;
+        int intResult;
+        double doubleResult;
+
+        Frame(int size) {
+            ints = new int[size];
+            doubles = new double[size];
+        }
+    }
+
+
+    /**the compiled form of a while statement, lets an interpreter
+     * continue a hot loop on compiled code (on-stack replacement)*/
+    public static final class Loop {
+        final StmNode node;
+        final int frameSize;
+        final Type returnType;
+        // slots of the variables in scope at the loop
+        final Map<String, Integer> variables;
+
+        Loop(StmNode node, int frameSize, Type returnType, Map<String, Integer> variables) {
+            this.node = node;
+            this.frameSize = frameSize;
+            this.returnType = returnType;
+            this.variables = variables;
+        }
+
+        /**runs the loop from its condition on. The variables in scope
+         * are unboxed from an interpreter's frame, which is laid out
+         * like the frame of the function containing the loop, and boxed
+         * back when the loop is left. Returns null when the loop ended,
+         * the returned value or NO_VALUE when it executed a return*/
+        Object execute(Object[] boxed) {
+            Frame frame = new Frame(frameSize);
+            for (int slot : variables.values()) {
+                Object value = boxed[slot];
+                if (value instanceof Integer) {
+                    frame.ints[slot] = (Integer) value;
+                } else if (value instanceof Double) {
+                    frame.doubles[slot] = (Double) value;
+                } else if (value instanceof Boolean) {
+                    frame.ints[slot] = (Boolean) value ? 1 : 0;
+                }
+            }
+
+            boolean returned = node.execute(frame);
+
+            for (int slot : variables.values()) {
+                Object value = boxed[slot];
+                if (value instanceof Integer) {
+                    boxed[slot] = frame.ints[slot];
+                } else if (value instanceof Double) {
+                    boxed[slot] = frame.doubles[slot];
+                } else if (value instanceof Boolean) {
+                    boxed[slot] = frame.ints[slot] != 0;
+                }
+            }
+
+            if (!returned) {
+                return null;
+            } else if (returnType instanceof Type_int) {
+                return frame.intResult;
+            } else if (returnType instanceof Type_double) {
+                return frame.doubleResult;
+            } else if (returnType instanceof Type_bool) {
+                return frame.intResult != 0;
+            } else {
+                return NO_VALUE;
+            }
+        }
+    }
+
+    /**the compiled form of a while statement of the compiled program*/
+    public Loop loop(SWhile p) {
+        return loops.get(p);
+    }
+
+
+    ////////////////////////////// Statement nodes //////////////////////////////
+
+    /**statements return false when execution continues with the
+     * next statement, and true when a return was executed*/
+    abstract static class StmNode {
+        abstract boolean execute(Frame frame);
+    }
+
+    static final class ExpStm extends StmNode {
+        final ExpNode exp;
+        ExpStm(ExpNode exp) { this.exp = exp; }
+
+        boolean execute(Frame frame) {
+            exp.executeVoid(frame);
+            return false;
+        }
+    }
+
+    static final class Decls extends StmNode {
+        final int slot, count;
+        final boolean isDouble;
+        Decls(int slot, int count, boolean isDouble) { this.slot = slot; this.count = count; this.isDouble = isDouble; }
+
+        boolean execute(Frame frame) {
+            for (int i = 0; i < count; i++) {
+                if (isDouble) {
+                    frame.doubles[slot + i] = 0.0;
+                } else {
+                    frame.ints[slot + i] = 0;
+                }
+            }
+            return false;
+        }
+    }
+
+    static final class Init extends StmNode {
+        final int slot;
+        final ExpNode exp;
+        Init(int slot, ExpNode exp) { this.slot = slot; this.exp = exp; }
+
+        boolean execute(Frame frame) {
+            exp.executeInto(frame, frame, slot);
+            return false;
+        }
+    }
+
+    static final class IntReturn extends StmNode {
+        final IntNode exp;
+        IntReturn(IntNode exp) { this.exp = exp; }
+
+        boolean execute(Frame frame) {
+            frame.intResult = exp.executeInt(frame);
+            return true;
+        }
+    }
+
+    static final class DoubleReturn extends StmNode {
+        final DoubleNode exp;
+        DoubleReturn(DoubleNode exp) { this.exp = exp; }
+
+        boolean execute(Frame frame) {
+            frame.doubleResult = exp.executeDouble(frame);
+            return true;
+        }
+    }
+
+    static final class BoolReturn extends StmNode {
+        final BoolNode exp;
+        BoolReturn(BoolNode exp) { this.exp = exp; }
+
+        boolean execute(Frame frame) {
+            frame.intResult = exp.executeBool(frame) ? 1 : 0;
+            return true;
+        }
+    }
+
+    static final class VoidReturn extends StmNode {
+        final ExpNode exp;
+        VoidReturn(ExpNode exp) { this.exp = exp; }
+
+        boolean execute(Frame frame) {
+            exp.executeVoid(frame);
+            return true;
+        }
+    }
+
+    static final class While extends StmNode {
+        final BoolNode condition;
+        final StmNode body;
+        While(BoolNode condition, StmNode body) { this.condition = condition; this.body = body; }
+
+        boolean execute(Frame frame) {
+            while (condition.executeBool(frame)) {
+                if (body.execute(frame)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    static final class Block extends StmNode {
+        final StmNode[] stms;
+        Block(StmNode[] stms) { this.stms = stms; }
+
+        boolean execute(Frame frame) {
+            for (StmNode stm : stms) {
+                if (stm.execute(frame)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    static final class IfElse extends StmNode {
+        final BoolNode condition;
+        final StmNode then, otherwise;
+        IfElse(BoolNode condition, StmNode then, StmNode otherwise) {
+            this.condition = condition; this.then = then; this.otherwise = otherwise;
+        }
+
+        boolean execute(Frame frame) {
+            return condition.executeBool(frame) ? then.execute(frame) : otherwise.execute(frame);
+        }
+    }
+
+
+    ////////////////////////////// Expression nodes //////////////////////////////
+
+    /**expression nodes are typed by their static type, values are
+     * only passed through the typed execute method of their type*/
+    abstract static class ExpNode {
+        /**evaluates the expression for its side effects only*/
+        abstract void executeVoid(Frame frame);
+
+        /**evaluates the expression and stores the value in a slot of
+         * target, which is the callee's frame for arguments*/
+        void executeInto(Frame frame, Frame target, int slot) {
+            throw new RuntimeException("expression has no value");
+        }
+    }
+
+    abstract static class IntNode extends ExpNode {
+        abstract int executeInt(Frame frame);
+        void executeVoid(Frame frame) { executeInt(frame); }
+        void executeInto(Frame frame, Frame target, int slot) { target.ints[slot] = executeInt(frame); }
+    }
+
+    abstract static class DoubleNode extends ExpNode {
+        abstract double executeDouble(Frame frame);
+        void executeVoid(Frame frame) { executeDouble(frame); }
+        void executeInto(Frame frame, Frame target, int slot) { target.doubles[slot] = executeDouble(frame); }
+    }
+
+    abstract static class BoolNode extends ExpNode {
+        abstract boolean executeBool(Frame frame);
+        void executeVoid(Frame frame) { executeBool(frame); }
+        void executeInto(Frame frame, Frame target, int slot) { target.ints[slot] = executeBool(frame) ? 1 : 0; }
+    }
+
+    abstract static class VoidNode extends ExpNode {
+    }
+
+    // literals
+
+    static final class IntLit extends IntNode {
+        final int value;
+        IntLit(int value) { this.value = value; }
+        int executeInt(Frame frame) { return value; }
+    }
+
+    static final class DoubleLit extends DoubleNode {
+        final double value;
+        DoubleLit(double value) { this.value = value; }
+        double executeDouble(Frame frame) { return value; }
+    }
+
+    static final class BoolLit extends BoolNode {
+        final boolean value;
+        BoolLit(boolean value) { this.value = value; }
+        boolean executeBool(Frame frame) { return value; }
+    }
+
+    // variables
+
+    static final class IntLoad extends IntNode {
+        final int slot;
+        IntLoad(int slot) { this.slot = slot; }
+        int executeInt(Frame frame) { return frame.ints[slot]; }
+    }
+
+    static final class DoubleLoad extends DoubleNode {
+        final int slot;
+        DoubleLoad(int slot) { this.slot = slot; }
+        double executeDouble(Frame frame) { return frame.doubles[slot]; }
+    }
+
+    static final class BoolLoad extends BoolNode {
+        final int slot;
+        BoolLoad(int slot) { this.slot = slot; }
+        boolean executeBool(Frame frame) { return frame.ints[slot] != 0; }
+    }
+
+    static final class IntAssign extends IntNode {
+        final int slot;
+        final IntNode value;
+        IntAssign(int slot, IntNode value) { this.slot = slot; this.value = value; }
+
+        int executeInt(Frame frame) {
+            int v = value.executeInt(frame);
+            frame.ints[slot] = v;
+            return v;
+        }
+    }
+
+    static final class DoubleAssign extends DoubleNode {
+        final int slot;
+        final DoubleNode value;
+        DoubleAssign(int slot, DoubleNode value) { this.slot = slot; this.value = value; }
+
+        double executeDouble(Frame frame) {
+            double v = value.executeDouble(frame);
+            frame.doubles[slot] = v;
+            return v;
+        }
+    }
+
+    static final class BoolAssign extends BoolNode {
+        final int slot;
+        final BoolNode value;
+        BoolAssign(int slot, BoolNode value) { this.slot = slot; this.value = value; }
+
+        boolean executeBool(Frame frame) {
+            boolean v = value.executeBool(frame);
+            frame.ints[slot] = v ? 1 : 0;
+            return v;
+        }
+    }
+
+    // increment and decrement, delta is 1 or -1
+
+    static final class IntPreIncr extends IntNode {
+        final int slot, delta;
+        IntPreIncr(int slot, int delta) { this.slot = slot; this.delta = delta; }
+
+        int executeInt(Frame frame) {
+            return frame.ints[slot] += delta;
+        }
+    }
+
+    static final class IntPostIncr extends IntNode {
+        final int slot, delta;
+        IntPostIncr(int slot, int delta) { this.slot = slot; this.delta = delta; }
+
+        int executeInt(Frame frame) {
+            int v = frame.ints[slot];
+            frame.ints[slot] = v + delta;
+            return v;
+        }
+    }
+
+    static final class DoublePreIncr extends DoubleNode {
+        final int slot, delta;
+        DoublePreIncr(int slot, int delta) { this.slot = slot; this.delta = delta; }
+
+        double executeDouble(Frame frame) {
+            return frame.doubles[slot] += delta;
+        }
+    }
+
+    static final class DoublePostIncr extends DoubleNode {
+        final int slot, delta;
+        DoublePostIncr(int slot, int delta) { this.slot = slot; this.delta = delta; }
+
+        double executeDouble(Frame frame) {
+            double v = frame.doubles[slot];
+            frame.doubles[slot] = v + delta;
+            return v;
+        }
+    }
+
+    // arithmetic
+
+    static final class IntTimes extends IntNode {
+        final IntNode left, right;
+        IntTimes(IntNode left, IntNode right) { this.left = left; this.right = right; }
+        int executeInt(Frame frame) { return left.executeInt(frame) * right.executeInt(frame); }
+    }
+
+    static final class IntDiv extends IntNode {
+        final IntNode left, right;
+        IntDiv(IntNode left, IntNode right) { this.left = left; this.right = right; }
+        int executeInt(Frame frame) { return left.executeInt(frame) / right.executeInt(frame); }
+    }
+
+    // multiplication and division by 2^shift
+
+    static final class IntShiftLeft extends IntNode {
+        final IntNode operand;
+        final int shift;
+        IntShiftLeft(IntNode operand, int shift) { this.operand = operand; this.shift = shift; }
+        int executeInt(Frame frame) { return operand.executeInt(frame) << shift; }
+    }
+
+    // rounds towards zero like the division, a negative
+    // dividend is raised by 2^shift - 1 before the shift
+    static final class IntDivPowerOfTwo extends IntNode {
+        final IntNode operand;
+        final int shift;
+        IntDivPowerOfTwo(IntNode operand, int shift) { this.operand = operand; this.shift = shift; }
+        int executeInt(Frame frame) {
+            int v = operand.executeInt(frame);
+            return (v + ((v >> 31) >>> (32 - shift))) >> shift;
+        }
+    }
+
+    static final class IntPlus extends IntNode {
+        final IntNode left, right;
+        IntPlus(IntNode left, IntNode right) { this.left = left; this.right = right; }
+        int executeInt(Frame frame) { return left.executeInt(frame) + right.executeInt(frame); }
+    }
+
+    static final class IntMinus extends IntNode {
+        final IntNode left, right;
+        IntMinus(IntNode left, IntNode right) { this.left = left; this.right = right; }
+        int executeInt(Frame frame) { return left.executeInt(frame) - right.executeInt(frame); }
+    }
+
+    static final class DoubleTimes extends DoubleNode {
+        final DoubleNode left, right;
+        DoubleTimes(DoubleNode left, DoubleNode right) { this.left = left; this.right = right; }
+        double executeDouble(Frame frame) { return left.executeDouble(frame) * right.executeDouble(frame); }
+    }
+
+    static final class DoubleDiv extends DoubleNode {
+        final DoubleNode left, right;
+        DoubleDiv(DoubleNode left, DoubleNode right) { this.left = left; this.right = right; }
+        double executeDouble(Frame frame) { return left.executeDouble(frame) / right.executeDouble(frame); }
+    }
+
+    static final class DoublePlus extends DoubleNode {
+        final DoubleNode left, right;
+        DoublePlus(DoubleNode left, DoubleNode right) { this.left = left; this.right = right; }
+        double executeDouble(Frame frame) { return left.executeDouble(frame) + right.executeDouble(frame); }
+    }
+
+    static final class DoubleMinus extends DoubleNode {
+        final DoubleNode left, right;
+        DoubleMinus(DoubleNode left, DoubleNode right) { this.left = left; this.right = right; }
+        double executeDouble(Frame frame) { return left.executeDouble(frame) - right.executeDouble(frame); }
+    }
+
+    // comparison
+
+    static final class IntLt extends BoolNode {
+        final IntNode left, right;
+        IntLt(IntNode left, IntNode right) { this.left = left; this.right = right; }
+        boolean executeBool(Frame frame) { return left.executeInt(frame) < right.executeInt(frame); }
+    }
+
+    static final class IntGt extends BoolNode {
+        final IntNode left, right;
+        IntGt(IntNode left, IntNode right) { this.left = left; this.right = right; }
+        boolean executeBool(Frame frame) { return left.executeInt(frame) > right.executeInt(frame); }
+    }
+
+    static final class IntLtEq extends BoolNode {
+        final IntNode left, right;
+        IntLtEq(IntNode left, IntNode right) { this.left = left; this.right = right; }
+        boolean executeBool(Frame frame) { return left.executeInt(frame) <= right.executeInt(frame); }
+    }
+
+    static final class IntGtEq extends BoolNode {
+        final IntNode left, right;
+        IntGtEq(IntNode left, IntNode right) { this.left = left; this.right = right; }
+        boolean executeBool(Frame frame) { return left.executeInt(frame) >= right.executeInt(frame); }
+    }
+
+    static final class IntEq extends BoolNode {
+        final IntNode left, right;
+        IntEq(IntNode left, IntNode right) { this.left = left; this.right = right; }
+        boolean executeBool(Frame frame) { return left.executeInt(frame) == right.executeInt(frame); }
+    }
+
+    static final class DoubleLt extends BoolNode {
+        final DoubleNode left, right;
+        DoubleLt(DoubleNode left, DoubleNode right) { this.left = left; this.right = right; }
+        boolean executeBool(Frame frame) { return left.executeDouble(frame) < right.executeDouble(frame); }
+    }
+
+    static final class DoubleGt extends BoolNode {
+        final DoubleNode left, right;
+        DoubleGt(DoubleNode left, DoubleNode right) { this.left = left; this.right = right; }
+        boolean executeBool(Frame frame) { return left.executeDouble(frame) > right.executeDouble(frame); }
+    }
+
+    static final class DoubleLtEq extends BoolNode {
+        final DoubleNode left, right;
+        DoubleLtEq(DoubleNode left, DoubleNode right) { this.left = left; this.right = right; }
+        boolean executeBool(Frame frame) { return left.executeDouble(frame) <= right.executeDouble(frame); }
+    }
+
+    static final class DoubleGtEq extends BoolNode {
+        final DoubleNode left, right;
+        DoubleGtEq(DoubleNode left, DoubleNode right) { this.left = left; this.right = right; }
+        boolean executeBool(Frame frame) { return left.executeDouble(frame) >= right.executeDouble(frame); }
+    }
+
+    // equality of doubles follows Double.equals like the Interpreter
+    static final class DoubleEq extends BoolNode {
+        final DoubleNode left, right;
+        DoubleEq(DoubleNode left, DoubleNode right) { this.left = left; this.right = right; }
+
+        boolean executeBool(Frame frame) {
+            return Double.doubleToLongBits(left.executeDouble(frame))
+                    == Double.doubleToLongBits(right.executeDouble(frame));
+        }
+    }
+
+    static final class BoolEq extends BoolNode {
+        final BoolNode left, right;
+        BoolEq(BoolNode left, BoolNode right) { this.left = left; this.right = right; }
+        boolean executeBool(Frame frame) { return left.executeBool(frame) == right.executeBool(frame); }
+    }
+
+    static final class Not extends BoolNode {
+        final BoolNode exp;
+        Not(BoolNode exp) { this.exp = exp; }
+        boolean executeBool(Frame frame) { return !exp.executeBool(frame); }
+    }
+
+    static final class And extends BoolNode {
+        final BoolNode left, right;
+        And(BoolNode left, BoolNode right) { this.left = left; this.right = right; }
+        boolean executeBool(Frame frame) { return left.executeBool(frame) && right.executeBool(frame); }
+    }
+
+    static final class Or extends BoolNode {
+        final BoolNode left, right;
+        Or(BoolNode left, BoolNode right) { this.left = left; this.right = right; }
+        boolean executeBool(Frame frame) { return left.executeBool(frame) || right.executeBool(frame); }
+    }
+
+    // builtin functions
+
+    static final class PrintInt extends VoidNode {
+        final ProgramIO io;
+        final IntNode exp;
+        PrintInt(ProgramIO io, IntNode exp) { this.io = io; this.exp = exp; }
+
+        void executeVoid(Frame frame) {
+            io.printInt(exp.executeInt(frame));
+        }
+    }
+
+    static final class PrintDouble extends VoidNode {
+        final ProgramIO io;
+        final DoubleNode exp;
+        PrintDouble(ProgramIO io, DoubleNode exp) { this.io = io; this.exp = exp; }
+
+        void executeVoid(Frame frame) {
+            io.printDouble(exp.executeDouble(frame));
+        }
+    }
+
+    static final class ReadInt extends IntNode {
+        final ProgramIO io;
+        ReadInt(ProgramIO io) { this.io = io; }
+        int executeInt(Frame frame) { return io.readInt(); }
+    }
+
+    static final class ReadDouble extends DoubleNode {
+        final ProgramIO io;
+        ReadDouble(ProgramIO io) { this.io = io; }
+        double executeDouble(Frame frame) { return io.readDouble(); }
+    }
+
+    // calls of functions of the program
+
+    /**runs the target, the result is in the returned callee frame*/
+    static Frame call(Function target, ExpNode[] args, Frame frame) {
+        // arguments are evaluated in the caller's frame,
+        // parameters occupy the first slots of the callee's frame
+        Frame callee = new Frame(target.frameSize);
+        for (int i = 0; i < args.length; i++) {
+            args[i].executeInto(frame, callee, i);
+        }
+        target.invoke(callee);
+        return callee;
+    }
+
+    static final class IntCall extends IntNode {
+        final Function target;
+        final ExpNode[] args;
+        IntCall(Function target, ExpNode[] args) { this.target = target; this.args = args; }
+        int executeInt(Frame frame) { return call(target, args, frame).intResult; }
+    }
+
+    static final class DoubleCall extends DoubleNode {
+        final Function target;
+        final ExpNode[] args;
+        DoubleCall(Function target, ExpNode[] args) { this.target = target; this.args = args; }
+        double executeDouble(Frame frame) { return call(target, args, frame).doubleResult; }
+    }
+
+    static final class BoolCall extends BoolNode {
+        final Function target;
+        final ExpNode[] args;
+        BoolCall(Function target, ExpNode[] args) { this.target = target; this.args = args; }
+        boolean executeBool(Frame frame) { return call(target, args, frame).intResult != 0; }
+    }
+
+    static final class VoidCall extends VoidNode {
+        final Function target;
+        final ExpNode[] args;
+        VoidCall(Function target, ExpNode[] args) { this.target = target; this.args = args; }
+
+        void executeVoid(Frame frame) {
+            call(target, args, frame);
+        }
+    }
+
+
+    ////////////////////////////// Statement compiler //////////////////////////////
+
+    public class StmCompiler implements Stm.Visitor<StmNode, Void> {
+
+        public StmNode visit(SExp p, Void arg) {
+            return new ExpStm(compileExp(p.exp_));
+        }
+
+        public StmNode visit(SDecls p, Void arg) {
+            int slot = resolver.slotOf(p);
+            for (int i = 0; i < p.listid_.size(); i++) {
+                slotTypes[slot + i] = p.type_;
+            }
+            return new Decls(slot, p.listid_.size(), p.type_.equals(DOUBLE));
+        }
+
+        public StmNode visit(SInit p, Void arg) {
+            ExpNode exp = compileExp(p.exp_);
+            int slot = resolver.slotOf(p);
+            slotTypes[slot] = p.type_;
+            return new Init(slot, exp);
+        }
+
+        public StmNode visit(SReturn p, Void arg) {
+            ExpNode exp = compileExp(p.exp_);
+            Type type = current.definition.type_;
+            if (type.equals(INT)) {
+                return new IntReturn((IntNode) exp);
+            } else if (type.equals(DOUBLE)) {
+                return new DoubleReturn((DoubleNode) exp);
+            } else if (type.equals(BOOL)) {
+                return new BoolReturn((BoolNode) exp);
+            } else {
+                return new VoidReturn(exp);
+            }
+        }
+
+        public StmNode visit(SWhile p, Void arg) {
+            StmNode node = new While(compileBool(p.exp_), p.stm_.accept(this, arg));
+            loops.put(p, new Loop(node, current.frameSize, current.definition.type_, resolver.variablesAt(p)));
+            return node;
+        }
+
+        public StmNode visit(SBlock p, Void arg) {
+            return new Block(compileList(p.liststm_));
+        }
+
+        public StmNode visit(SIfElse p, Void arg) {
+            return new IfElse(compileBool(p.exp_), p.stm_1.accept(this, arg), p.stm_2.accept(this, arg));
+        }
+    }
+
+
+    ////////////////////////////// Expression compiler //////////////////////////////
+
+    private ExpNode compileExp(Exp exp) {
+        return exp.accept(expCompiler, null);
+    }
+
+    private BoolNode compileBool(Exp exp) {
+        return (BoolNode) compileExp(exp);
+    }
+
+    public class ExpCompiler implements Exp.Visitor<ExpNode, Void> {
+
+        public ExpNode visit(ETrue p, Void arg) {
+            return new BoolLit(true);
+        }
+
+        public ExpNode visit(EFalse p, Void arg) {
+            return new BoolLit(false);
+        }
+
+        public ExpNode visit(EInt p, Void arg) {
+            return new IntLit(p.integer_);
+        }
+
+        public ExpNode visit(EDouble p, Void arg) {
+            return new DoubleLit(p.double_);
+        }
+
+        public ExpNode visit(EId p, Void arg) {
+            int slot = resolver.slotOf(p);
+            Type type = slotTypes[slot];
+            if (type.equals(INT)) {
+                return new IntLoad(slot);
+            } else if (type.equals(DOUBLE)) {
+                return new DoubleLoad(slot);
+            } else {
+                return new BoolLoad(slot);
+            }
+        }
+
+        public ExpNode visit(EApp p, Void arg) {
+            if(PRINT_INT.equals(p.id_)) {
+                return new PrintInt(io, (IntNode) compileExp(p.listexp_.getFirst()));
+            } else if(PRINT_DOUBLE.equals(p.id_)) {
+                return new PrintDouble(io, (DoubleNode) compileExp(p.listexp_.getFirst()));
+            } else if(READ_INT.equals(p.id_)) {
+                return new ReadInt(io);
+            } else if(READ_DOUBLE.equals(p.id_)) {
+                return new ReadDouble(io);
+            }
+
+            Function target = functions.get(p.id_);
+            ExpNode[] args = new ExpNode[p.listexp_.size()];
+            int i = 0;
+            for (Exp exp : p.listexp_) {
+                args[i++] = compileExp(exp);
+            }
+
+            Type type = target.definition.type_;
+            if (type.equals(INT)) {
+                return new IntCall(target, args);
+            } else if (type.equals(DOUBLE)) {
+                return new DoubleCall(target, args);
+            } else if (type.equals(BOOL)) {
+                return new BoolCall(target, args);
+            } else {
+                return new VoidCall(target, args);
+            }
+        }
+
+        public ExpNode visit(EPostIncr p, Void arg) {
+            return increment(p.exp_, 1, false);
+        }
+
+        public ExpNode visit(EPostDecr p, Void arg) {
+            return increment(p.exp_, -1, false);
+        }
+
+        public ExpNode visit(EPreIncr p, Void arg) {
+            return increment(p.exp_, 1, true);
+        }
+
+        public ExpNode visit(EPreDecr p, Void arg) {
+            return increment(p.exp_, -1, true);
+        }
+
+        private ExpNode increment(Exp variable, int delta, boolean pre) {
+            int slot = resolver.slotOf(variable);
+            if (slotTypes[slot].equals(INT)) {
+                return pre ? new IntPreIncr(slot, delta) : new IntPostIncr(slot, delta);
+            } else {
+                return pre ? new DoublePreIncr(slot, delta) : new DoublePostIncr(slot, delta);
+            }
+        }
+
+        public ExpNode visit(ETimes p, Void arg) {
+            if (StrengthReducer.powerOfTwo(p.exp_2) >= 0) {
+                return shiftLeft((IntNode) compileExp(p.exp_1), StrengthReducer.powerOfTwo(p.exp_2));
+            }
+            if (StrengthReducer.powerOfTwo(p.exp_1) >= 0) {
+                return shiftLeft((IntNode) compileExp(p.exp_2), StrengthReducer.powerOfTwo(p.exp_1));
+            }
+            ExpNode left = compileExp(p.exp_1);
+            ExpNode right = compileExp(p.exp_2);
+            if (left instanceof IntNode) {
+                return new IntTimes((IntNode) left, (IntNode) right);
+            } else {
+                return new DoubleTimes((DoubleNode) left, (DoubleNode) right);
+            }
+        }
+
+        public ExpNode visit(EDiv p, Void arg) {
+            if (StrengthReducer.powerOfTwo(p.exp_2) >= 0) {
+                IntNode left = (IntNode) compileExp(p.exp_1);
+                int shift = StrengthReducer.powerOfTwo(p.exp_2);
+                return shift == 0 ? left : new IntDivPowerOfTwo(left, shift);
+            }
+            ExpNode left = compileExp(p.exp_1);
+            ExpNode right = compileExp(p.exp_2);
+            if (left instanceof IntNode) {
+                return new IntDiv((IntNode) left, (IntNode) right);
+            } else {
+                return new DoubleDiv((DoubleNode) left, (DoubleNode) right);
+            }
+        }
+
+        private IntNode shiftLeft(IntNode operand, int shift) {
+            return shift == 0 ? operand : new IntShiftLeft(operand, shift);
+        }
+
+        public ExpNode visit(EPlus p, Void arg) {
+            ExpNode left = compileExp(p.exp_1);
+            ExpNode right = compileExp(p.exp_2);
+            if (left instanceof IntNode) {
+                return new IntPlus((IntNode) left, (IntNode) right);
+            } else {
+                return new DoublePlus((DoubleNode) left, (DoubleNode) right);
+            }
+        }
+
+        public ExpNode visit(EMinus p, Void arg) {
+            ExpNode left = compileExp(p.exp_1);
+            ExpNode right = compileExp(p.exp_2);
+            if (left instanceof IntNode) {
+                return new IntMinus((IntNode) left, (IntNode) right);
+            } else {
+                return new DoubleMinus((DoubleNode) left, (DoubleNode) right);
+            }
+        }
+
+        public ExpNode visit(ELt p, Void arg) {
+            ExpNode left = compileExp(p.exp_1);
+            ExpNode right = compileExp(p.exp_2);
+            if (left instanceof IntNode) {
+                return new IntLt((IntNode) left, (IntNode) right);
+            } else {
+                return new DoubleLt((DoubleNode) left, (DoubleNode) right);
+            }
+        }
+
+        public ExpNode visit(EGt p, Void arg) {
+            ExpNode left = compileExp(p.exp_1);
+            ExpNode right = compileExp(p.exp_2);
+            if (left instanceof IntNode) {
+                return new IntGt((IntNode) left, (IntNode) right);
+            } else {
+                return new DoubleGt((DoubleNode) left, (DoubleNode) right);
+            }
+        }
+
+        public ExpNode visit(ELtEq p, Void arg) {
+            ExpNode left = compileExp(p.exp_1);
+            ExpNode right = compileExp(p.exp_2);
+            if (left instanceof IntNode) {
+                return new IntLtEq((IntNode) left, (IntNode) right);
+            } else {
+                return new DoubleLtEq((DoubleNode) left, (DoubleNode) right);
+            }
+        }
+
+        public ExpNode visit(EGtEq p, Void arg) {
+            ExpNode left = compileExp(p.exp_1);
+            ExpNode right = compileExp(p.exp_2);
+            if (left instanceof IntNode) {
+                return new IntGtEq((IntNode) left, (IntNode) right);
+            } else {
+                return new DoubleGtEq((DoubleNode) left, (DoubleNode) right);
+            }
+        }
+
+        public ExpNode visit(EEq p, Void arg) {
+            return equality(compileExp(p.exp_1), compileExp(p.exp_2));
+        }
+
+        public ExpNode visit(ENEq p, Void arg) {
+            return new Not(equality(compileExp(p.exp_1), compileExp(p.exp_2)));
+        }
+
+        private BoolNode equality(ExpNode left, ExpNode right) {
+            if (left instanceof IntNode) {
+                return new IntEq((IntNode) left, (IntNode) right);
+            } else if (left instanceof DoubleNode) {
+                return new DoubleEq((DoubleNode) left, (DoubleNode) right);
+            } else {
+                return new BoolEq((BoolNode) left, (BoolNode) right);
+            }
+        }
+
+        public ExpNode visit(EAnd p, Void arg) {
+            return new And(compileBool(p.exp_1), compileBool(p.exp_2));
+        }
+
+        public ExpNode visit(EOr p, Void arg) {
+            return new Or(compileBool(p.exp_1), compileBool(p.exp_2));
+        }
+
+        public ExpNode visit(EAss p, Void arg) {
+            int slot = resolver.slotOf(p.exp_1);
+            ExpNode value = compileExp(p.exp_2);
+            if (value instanceof IntNode) {
+                return new IntAssign(slot, (IntNode) value);
+            } else if (value instanceof DoubleNode) {
+                return new DoubleAssign(slot, (DoubleNode) value);
+            } else {
+                return new BoolAssign(slot, (BoolNode) value);
+            }
+        }
+    }
+}
@@ -0,0 +1,296 @@
+import CPP.Absyn.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Common subexpression elimination, run after the TypeChecker. It
+ * returns a new tree which has to be checked again.
+ * A forward analysis over every function finds the expressions that
+ * were computed on every way to a point, and not changed since by an
+ * assignment, increment or declaration of a variable they read. Such
+ * an expression is replaced by a variable, which the computations of
+ * it before store their value in. Only expressions without assignments
+ * whose calls are of pure functions are considered, a division or a
+ * call that is computed again already succeeded the first time.
+ */
+public class CommonSubexpressionEliminator
+{
+    private final Purity purity = new Purity();
+    private final Summaries summaries = new Summaries();
+
+    // Functions of the program by name
+    private final Map<String,DFun> functions = new TreeMap<>();
+
+    // Expressions replaced in every function
+    private final Map<String,Integer> eliminated = new LinkedHashMap<>();
+
+    // Suffix of the last variable made for an expression
+    private int temps;
+
+    // Entry point
+
+    public Program eliminate(Program p) {
+        purity.analyze(p);
+        for (Def d : ((PDefs) p).listdef_)
+            functions.put(((DFun) d).id_, (DFun) d);
+
+        ListDef listdef = new ListDef();
+        for (Def d : ((PDefs) p).listdef_) {
+            DFun f = (DFun) d;
+            Available available = new Available();
+            available.block(f.liststm_, new HashSet<>());
+
+            Rewriter rewriter = new Rewriter(f, available);
+            ListStm body = rewriter.copyList(f.liststm_);
+            // the variables are declared first, they hold a value
+            // whenever it is read
+            ListStm stms = new ListStm();
+            for (Map.Entry<String,Type> temp : rewriter.declarations.entrySet()) {
+                ListId ids = new ListId();
+                ids.add(temp.getKey());
+                stms.add(new SDecls(temp.getValue(), ids));
+            }
+            stms.addAll(body);
+            if (rewriter.replaced > 0)
+                eliminated.put(f.id_, rewriter.replaced);
+            listdef.add(new DFun(f.type_, f.id_, f.listarg_, stms));
+        }
+        return new PDefs(listdef);
+    }
+
+    public List<String> report() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String,Integer> f : eliminated.entrySet()) {
+            int n = f.getValue();
+            lines.add("eliminated " + n + (n == 1 ? " common subexpression" : " common subexpressions")
+                    + " in " + f.getKey());
+        }
+        return lines;
+    }
+
+    ////////////////////////////// Available //////////////////////////////
+
+    /**
+     * Walks the statements of a function in the order they run. Every
+     * method takes the expressions available before a statement and
+     * changes them into the ones available after it.
+     */
+    private class Available
+    {
+        // Occurrences whose value is already computed
+        final Set<Exp> redundant = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        // Numbers of the expressions with a redundant occurrence
+        final Set<Integer> reused = new HashSet<>();
+
+        // the variables of a block are other ones after it
+        void block(ListStm stms, Set<Integer> available) {
+            for (Stm s : stms)
+                stm(s, available);
+            for (Stm s : stms) {
+                if (s instanceof SInit)
+                    kill(((SInit) s).id_, available);
+                else if (s instanceof SDecls)
+                    for (String id : ((SDecls) s).listid_)
+                        kill(id, available);
+            }
+        }
+
+        // a statement that stands alone is a block of its own
+        void branch(Stm s, Set<Integer> available) {
+            ListStm stms = new ListStm();
+            stms.add(s);
+            block(stms, available);
+        }
+
+        void stm(Stm s, Set<Integer> available) {
+            if (s instanceof SExp) {
+                exp(((SExp) s).exp_, available);
+            } else if (s instanceof SInit) {
+                exp(((SInit) s).exp_, available);
+                kill(((SInit) s).id_, available);
+            } else if (s instanceof SDecls) {
+                for (String id : ((SDecls) s).listid_)
+                    kill(id, available);
+            } else if (s instanceof SReturn) {
+                exp(((SReturn) s).exp_, available);
+            } else if (s instanceof SBlock) {
+                block(((SBlock) s).liststm_, available);
+            } else if (s instanceof SIfElse) {
+                SIfElse p = (SIfElse) s;
+                exp(p.exp_, available);
+                Set<Integer> otherwise = new HashSet<>(available);
+                branch(p.stm_1, available);
+                branch(p.stm_2, otherwise);
+                available.retainAll(otherwise);
+            } else {
+                SWhile p = (SWhile) s;
+                // what the loop changes is not available at its condition,
+                // which is reached again from the end of the body
+                AstCopier loop = new AstCopier(null);
+                loop.copy(p.exp_);
+                loop.copyStm(p.stm_);
+                for (String id : loop.assigned)
+                    kill(id, available);
+                for (String id : loop.declared)
+                    kill(id, available);
+                exp(p.exp_, available);
+                branch(p.stm_, new HashSet<>(available));
+            }
+        }
+
+        void exp(Exp e, Set<Integer> available) {
+            if (e instanceof EId || e instanceof EInt || e instanceof EDouble
+                    || e instanceof ETrue || e instanceof EFalse)
+                return;
+            boolean candidate = candidate(e);
+            int number = summaries.of(e).number;
+            if (candidate && available.contains(number)) {
+                redundant.add(e);
+                reused.add(number);
+                return;
+            }
+
+            if (e instanceof EAss) {
+                exp(((EAss) e).exp_2, available);
+                assigned(((EAss) e).exp_1, available);
+            } else if (e instanceof EPostIncr) {
+                assigned(((EPostIncr) e).exp_, available);
+            } else if (e instanceof EPostDecr) {
+                assigned(((EPostDecr) e).exp_, available);
+            } else if (e instanceof EPreIncr) {
+                assigned(((EPreIncr) e).exp_, available);
+            } else if (e instanceof EPreDecr) {
+                assigned(((EPreDecr) e).exp_, available);
+            } else if (e instanceof EApp) {
+                for (Exp a : ((EApp) e).listexp_)
+                    exp(a, available);
+            } else if (e instanceof EAnd) {
+                exp(((EAnd) e).exp_1, available);
+                conditional(((EAnd) e).exp_2, available);
+            } else if (e instanceof EOr) {
+                exp(((EOr) e).exp_1, available);
+                conditional(((EOr) e).exp_2, available);
+            } else {
+                Exp[] operands = operands(e);
+                exp(operands[0], available);
+                exp(operands[1], available);
+            }
+
+            if (candidate)
+                available.add(number);
+        }
+
+        // an operand that may not be evaluated makes nothing available,
+        // but what it may assign is changed
+        private void conditional(Exp e, Set<Integer> available) {
+            exp(e, new HashSet<>(available));
+            for (String id : summaries.of(e).assigned)
+                kill(id, available);
+        }
+
+        private void assigned(Exp target, Set<Integer> available) {
+            if (target instanceof EId)
+                kill(((EId) target).id_, available);
+        }
+
+        private void kill(String id, Set<Integer> available) {
+            available.removeIf(number -> summaries.withNumber(number).uses.contains(id));
+        }
+
+        // an expression whose value only depends on the variables it reads
+        private boolean candidate(Exp e) {
+            Summaries.Summary summary = summaries.of(e);
+            if (summary.assigns())
+                return false;
+            for (String function : summary.calls) {
+                if (!purity.isPure(function) || functions.get(function).type_ instanceof Type_void)
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    private static Exp[] operands(Exp e) {
+        if (e instanceof ETimes) return new Exp[] { ((ETimes) e).exp_1, ((ETimes) e).exp_2 };
+        if (e instanceof EDiv)   return new Exp[] { ((EDiv) e).exp_1, ((EDiv) e).exp_2 };
+        if (e instanceof EPlus)  return new Exp[] { ((EPlus) e).exp_1, ((EPlus) e).exp_2 };
+        if (e instanceof EMinus) return new Exp[] { ((EMinus) e).exp_1, ((EMinus) e).exp_2 };
+        if (e instanceof ELt)    return new Exp[] { ((ELt) e).exp_1, ((ELt) e).exp_2 };
+        if (e instanceof EGt)    return new Exp[] { ((EGt) e).exp_1, ((EGt) e).exp_2 };
+        if (e instanceof ELtEq)  return new Exp[] { ((ELtEq) e).exp_1, ((ELtEq) e).exp_2 };
+        if (e instanceof EGtEq)  return new Exp[] { ((EGtEq) e).exp_1, ((EGtEq) e).exp_2 };
+        if (e instanceof EEq)    return new Exp[] { ((EEq) e).exp_1, ((EEq) e).exp_2 };
+        return new Exp[] { ((ENEq) e).exp_1, ((ENEq) e).exp_2 };
+    }
+
+    ////////////////////////////// Rewriter //////////////////////////////
+
+    /**
+     * Copies the body of a function, the redundant occurrences become
+     * the variable of their expression and the other occurrences of an
+     * expression that is reused assign it.
+     */
+    private class Rewriter extends ScopedCopier
+    {
+        private final Available available;
+
+        // Variable of every expression, by its type and its number
+        private final Map<List<Object>,String> names = new HashMap<>();
+        final Map<String,Type> declarations = new LinkedHashMap<>();
+
+        // Type of every expression asked for, a type is that of an
+        // operand, so a chain of operands is only walked once
+        private final Map<Exp,Type> types = new IdentityHashMap<>();
+        int replaced;
+
+        Rewriter(DFun f, Available available) {
+            super(f, functions);
+            this.available = available;
+        }
+
+        Exp copy(Exp e) {
+            if (available.redundant.contains(e)) {
+                replaced++;
+                return new EId(temp(e));
+            }
+            Exp copy = super.copy(e);
+            if (available.reused.contains(summaries.of(e).number))
+                return new EAss(new EId(temp(e)), copy);
+            return copy;
+        }
+
+        Type typeOf(Exp e) {
+            Type type = types.get(e);
+            if (type == null) {
+                type = super.typeOf(e);
+                types.put(e, type);
+            }
+            return type;
+        }
+
+        // the same expression may read variables of another type
+        // in another scope, so it has a variable for every type
+        private String temp(Exp e) {
+            Type type = typeOf(e);
+            List<Object> key = Arrays.asList(type, summaries.of(e).number);
+            String name = names.get(key);
+            if (name == null) {
+                name = "cse$" + (++temps);
+                names.put(key, name);
+                declarations.put(name, type);
+            }
+            return name;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+import CPP.Absyn.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Constant folding and propagation, run after the TypeChecker. It
+ * returns a new tree which has to be checked again.
+ * Operations on literals are computed the way the Interpreter computes
+ * them, except integer division by zero which is left to fail when the
+ * program runs. A variable holds a constant from its initialization or
+ * assignment until it may be assigned again, and its uses in between
+ * become the literal. Branches of an if whose condition is a literal,
+ * and loops whose condition is false, are dropped.
+ */
+public class ConstantFolder
+{
+    // Entry point
+
+    public Program fold(Program p) {
+        ListDef listdef = new ListDef();
+        for (Def d : ((PDefs) p).listdef_) {
+            DFun f = (DFun) d;
+            // params are never constant, the folder starts with nothing known
+            listdef.add(new DFun(f.type_, f.id_, f.listarg_, new Folder().copyList(f.liststm_)));
+        }
+        return new PDefs(listdef);
+    }
+
+    ////////////////////////////// Folder //////////////////////////////
+
+    /**
+     * Copies the body of a function, the values of its copier are
+     * the variables known to be constant at the current statement.
+     */
+    private static class Folder extends AstCopier
+    {
+        // Values of the variables hidden by the declarations of every
+        // open block, as they were when the declaration hid them
+        private final LinkedList<Map<String,Exp>> hidden = new LinkedList<>();
+
+        Folder() {
+            super(null);
+        }
+
+        // Statements
+
+        public Stm visit(SDecls p, Void arg) {
+            for (String id : p.listid_) {
+                declare(id);
+                values.remove(id);
+            }
+            return super.visit(p, arg);
+        }
+
+        public Stm visit(SInit p, Void arg) {
+            Exp value = copy(p.exp_);
+            declare(p.id_);
+            known(p.id_, value);
+            return new SInit(p.type_, p.id_, value);
+        }
+
+        public Stm visit(SBlock p, Void arg) {
+            hidden.push(new HashMap<>());
+            ListStm stms = copyList(p.liststm_);
+            closeScope();
+            return new SBlock(stms);
+        }
+
+        public Stm visit(SIfElse p, Void arg) {
+            Exp condition = copy(p.exp_);
+            if (condition instanceof ETrue)
+                return branch(p.stm_1);
+            if (condition instanceof EFalse)
+                return branch(p.stm_2);
+
+            Map<String,Exp> before = new TreeMap<>(values);
+            Stm then = branch(p.stm_1);
+            Map<String,Exp> afterThen = new TreeMap<>(values);
+            values.clear();
+            values.putAll(before);
+            Stm otherwise = branch(p.stm_2);
+            keepCommon(afterThen);
+            return new SIfElse(condition, then, otherwise);
+        }
+
+        public Stm visit(SWhile p, Void arg) {
+            // nothing assigned in the loop is known at its condition,
+            // which is reached again from the end of the body
+            AstCopier loop = new AstCopier(null);
+            loop.copy(p.exp_);
+            loop.copyStm(p.stm_);
+            values.keySet().removeAll(loop.assigned);
+
+            Exp condition = copy(p.exp_);
+            // a loop that never runs is left out
+            if (condition instanceof EFalse)
+                return null;
+            Stm body = branch(p.stm_);
+            // after the loop it is only known what was known before it
+            values.keySet().removeAll(loop.assigned);
+            return new SWhile(condition, body);
+        }
+
+        // a statement that stands alone is a scope of its own
+        private Stm branch(Stm s) {
+            if (!(s instanceof SInit || s instanceof SDecls))
+                return copyStm(s);
+            hidden.push(new HashMap<>());
+            ListStm block = new ListStm();
+            block.add(copyStm(s));
+            closeScope();
+            return new SBlock(block);
+        }
+
+        private void declare(String id) {
+            if (!hidden.isEmpty() && !hidden.peek().containsKey(id))
+                hidden.peek().put(id, values.get(id));
+        }
+
+        private void closeScope() {
+            for (Map.Entry<String,Exp> variable : hidden.pop().entrySet()) {
+                if (variable.getValue() == null)
+                    values.remove(variable.getKey());
+                else
+                    values.put(variable.getKey(), variable.getValue());
+            }
+        }
+
+        // Expressions
+
+        public Exp visit(EAss p, Void arg) {
+            Exp target = copyTarget(p.exp_1);
+            Exp value = copy(p.exp_2);
+            if (target instanceof EId)
+                known(((EId) target).id_, value);
+            return new EAss(target, value);
+        }
+
+        public Exp visit(EPostIncr p, Void arg) {
+            return forget(super.visit(p, arg));
+        }
+
+        public Exp visit(EPostDecr p, Void arg) {
+            return forget(super.visit(p, arg));
+        }
+
+        public Exp visit(EPreIncr p, Void arg) {
+            return forget(super.visit(p, arg));
+        }
+
+        public Exp visit(EPreDecr p, Void arg) {
+            return forget(super.visit(p, arg));
+        }
+
+        public Exp visit(ETimes p, Void arg) {
+            Exp a = copy(p.exp_1);
+            Exp b = copy(p.exp_2);
+            if (a instanceof EInt && b instanceof EInt)
+                return new EInt(intOf(a) * intOf(b));
+            if (a instanceof EDouble && b instanceof EDouble)
+                return new EDouble(doubleOf(a) * doubleOf(b));
+            return new ETimes(a, b);
+        }
+
+        public Exp visit(EDiv p, Void arg) {
+            Exp a = copy(p.exp_1);
+            Exp b = copy(p.exp_2);
+            if (a instanceof EInt && b instanceof EInt && intOf(b) != 0)
+                return new EInt(intOf(a) / intOf(b));
+            if (a instanceof EDouble && b instanceof EDouble)
+                return new EDouble(doubleOf(a) / doubleOf(b));
+            return new EDiv(a, b);
+        }
+
+        public Exp visit(EPlus p, Void arg) {
+            Exp a = copy(p.exp_1);
+            Exp b = copy(p.exp_2);
+            if (a instanceof EInt && b instanceof EInt)
+                return new EInt(intOf(a) + intOf(b));
+            if (a instanceof EDouble && b instanceof EDouble)
+                return new EDouble(doubleOf(a) + doubleOf(b));
+            return new EPlus(a, b);
+        }
+
+        public Exp visit(EMinus p, Void arg) {
+            Exp a = copy(p.exp_1);
+            Exp b = copy(p.exp_2);
+            if (a instanceof EInt && b instanceof EInt)
+                return new EInt(intOf(a) - intOf(b));
+            if (a instanceof EDouble && b instanceof EDouble)
+                return new EDouble(doubleOf(a) - doubleOf(b));
+            return new EMinus(a, b);
+        }
+
+        public Exp visit(ELt p, Void arg) {
+            Exp a = copy(p.exp_1);
+            Exp b = copy(p.exp_2);
+            if (a instanceof EInt && b instanceof EInt)
+                return bool(intOf(a) < intOf(b));
+            if (a instanceof EDouble && b instanceof EDouble)
+                return bool(doubleOf(a) < doubleOf(b));
+            return new ELt(a, b);
+        }
+
+        public Exp visit(EGt p, Void arg) {
+            Exp a = copy(p.exp_1);
+            Exp b = copy(p.exp_2);
+            if (a instanceof EInt && b instanceof EInt)
+                return bool(intOf(a) > intOf(b));
+            if (a instanceof EDouble && b instanceof EDouble)
+                return bool(doubleOf(a) > doubleOf(b));
+            return new EGt(a, b);
+        }
+
+        public Exp visit(ELtEq p, Void arg) {
+            Exp a = copy(p.exp_1);
+            Exp b = copy(p.exp_2);
+            if (a instanceof EInt && b instanceof EInt)
+                return bool(intOf(a) <= intOf(b));
+            if (a instanceof EDouble && b instanceof EDouble)
+                return bool(doubleOf(a) <= doubleOf(b));
+            return new ELtEq(a, b);
+        }
+
+        public Exp visit(EGtEq p, Void arg) {
+            Exp a = copy(p.exp_1);
+            Exp b = copy(p.exp_2);
+            if (a instanceof EInt && b instanceof EInt)
+                return bool(intOf(a) >= intOf(b));
+            if (a instanceof EDouble && b instanceof EDouble)
+                return bool(doubleOf(a) >= doubleOf(b));
+            return new EGtEq(a, b);
+        }
+
+        public Exp visit(EEq p, Void arg) {
+            Exp a = copy(p.exp_1);
+            Exp b = copy(p.exp_2);
+            if (constant(a) && constant(b))
+                return bool(same(a, b));
+            return new EEq(a, b);
+        }
+
+        public Exp visit(ENEq p, Void arg) {
+            Exp a = copy(p.exp_1);
+            Exp b = copy(p.exp_2);
+            if (constant(a) && constant(b))
+                return bool(!same(a, b));
+            return new ENEq(a, b);
+        }
+
+        public Exp visit(EAnd p, Void arg) {
+            Exp a = copy(p.exp_1);
+            if (a instanceof EFalse)
+                return a;
+            if (a instanceof ETrue)
+                return copy(p.exp_2);
+            return new EAnd(a, conditional(p.exp_2));
+        }
+
+        public Exp visit(EOr p, Void arg) {
+            Exp a = copy(p.exp_1);
+            if (a instanceof ETrue)
+                return a;
+            if (a instanceof EFalse)
+                return copy(p.exp_2);
+            return new EOr(a, conditional(p.exp_2));
+        }
+
+        // an operand that may not be evaluated
+        private Exp conditional(Exp e) {
+            Map<String,Exp> before = new TreeMap<>(values);
+            Exp copy = copy(e);
+            keepCommon(before);
+            return copy;
+        }
+
+        private void known(String id, Exp value) {
+            if (constant(value))
+                values.put(id, value);
+            else
+                values.remove(id);
+        }
+
+        private Exp forget(Exp e) {
+            Exp target = AstCopier.incremented(e);
+            if (target instanceof EId)
+                values.remove(((EId) target).id_);
+            return e;
+        }
+
+        // keeps what is known on both ways that joined here
+        private void keepCommon(Map<String,Exp> other) {
+            for (String id : new ArrayList<>(values.keySet())) {
+                Exp value = other.get(id);
+                if (value == null || !same(value, values.get(id)))
+                    values.remove(id);
+            }
+        }
+    }
+
+    private static boolean constant(Exp e) {
+        return e instanceof EInt || e instanceof EDouble || e instanceof ETrue || e instanceof EFalse;
+    }
+
+    private static int intOf(Exp e) {
+        return ((EInt) e).integer_;
+    }
+
+    private static double doubleOf(Exp e) {
+        return ((EDouble) e).double_;
+    }
+
+    private static Exp bool(boolean b) {
+        return b ? new ETrue() : new EFalse();
+    }
+
+    // equality of two literals of the same type, doubles
+    // are equal the way Double.equals has them like in the Interpreter
+    private static boolean same(Exp a, Exp b) {
+        if (a instanceof EInt && b instanceof EInt)
+            return intOf(a) == intOf(b);
+        if (a instanceof EDouble && b instanceof EDouble)
+            return ((EDouble) a).double_.equals(((EDouble) b).double_);
+        return a.getClass() == b.getClass();
+    }
+}
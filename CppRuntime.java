@@ -0,0 +1,37 @@
+/**
+ * Runtime support for programs compiled to JVM bytecode by the
+ * JvmCompiler. Compiled code calls the builtin functions here. The
+ * streams belong to the thread that runs the program, so programs
+ * can run side by side.
+ */
+public class CppRuntime {
+
+    private static final ThreadLocal<ProgramIO> io = ThreadLocal.withInitial(ProgramIO::new);
+
+    /**the streams of the programs run by this thread*/
+    public static void setIO(ProgramIO programIO) {
+        io.set(programIO);
+    }
+
+    /**forgets the streams once the program ended, so a thread that
+     * lives on does not keep them*/
+    public static void clearIO() {
+        io.remove();
+    }
+
+    public static void printInt(int value) {
+        io.get().printInt(value);
+    }
+
+    public static void printDouble(double value) {
+        io.get().printDouble(value);
+    }
+
+    public static int readInt() {
+        return io.get().readInt();
+    }
+
+    public static double readDouble() {
+        return io.get().readDouble();
+    }
+}
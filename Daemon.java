@@ -0,0 +1,84 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Keeps lab2 running on a Unix domain socket, so a program runs in a
+ * JVM that has loaded and compiled the front end and the engines
+ * already. A request is the working directory of the client, the
+ * arguments of lab2 and the whole of its standard input. The answer
+ * is the standard output, the standard error and the exit status of
+ * the run, which has streams of its own. Requests run one at a time
+ * in the order they come.
+ */
+public class Daemon {
+
+    private final Path socket;
+
+    public Daemon(Path socket) {
+        this.socket = socket;
+    }
+
+    /**answers requests until the process is stopped*/
+    public void serve() throws IOException {
+        Files.deleteIfExists(socket);
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            socket.toFile().deleteOnExit();
+            System.err.println("lab2 daemon listening on " + socket);
+            for (;;) {
+                try (SocketChannel client = server.accept()) {
+                    answer(client);
+                } catch (IOException e) {
+                    // the client went away, the next one may not
+                    System.err.println("lab2 daemon: " + e);
+                }
+            }
+        }
+    }
+
+    private void answer(SocketChannel client) throws IOException {
+        DataInputStream request = new DataInputStream(Channels.newInputStream(client));
+        File dir = new File(request.readUTF());
+        String[] args = new String[request.readInt()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = request.readUTF();
+        }
+        byte[] input = new byte[request.readInt()];
+        request.readFully(input);
+
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(stdout, true);
+        PrintStream err = new PrintStream(stderr, true);
+        int status;
+        try {
+            status = lab2.run(args, dir, new ByteArrayInputStream(input), out, err);
+        } catch (RuntimeException | Error e) {
+            // what would have ended the JVM of the run ends only the run
+            e.printStackTrace(err);
+            status = 1;
+        }
+        out.flush();
+        err.flush();
+
+        DataOutputStream answer = new DataOutputStream(Channels.newOutputStream(client));
+        answer.writeInt(stdout.size());
+        stdout.writeTo(answer);
+        answer.writeInt(stderr.size());
+        stderr.writeTo(answer);
+        answer.writeInt(status);
+        answer.flush();
+    }
+}
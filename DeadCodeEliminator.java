@@ -0,0 +1,308 @@
+import CPP.Absyn.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Dead code elimination, run after the TypeChecker. It returns a new
+ * tree which has to be checked again.
+ * A backward liveness analysis over every function finds the variables
+ * that may still be read after each statement. Assignments and
+ * initializations of variables that are not, expression statements
+ * without effects, and statements after a return are removed. An
+ * assigned expression that has effects stays as a statement of its
+ * own, and a declaration goes once its variable is never mentioned.
+ */
+public class DeadCodeEliminator
+{
+    // Entry point
+
+    public Program eliminate(Program p) {
+        ListDef listdef = new ListDef();
+        for (Def d : ((PDefs) p).listdef_) {
+            DFun f = (DFun) d;
+            ListStm body = new ListStm();
+            new Liveness(!(f.type_ instanceof Type_void)).list(f.liststm_, new HashSet<>(), body);
+
+            AstCopier mentions = new AstCopier(null);
+            mentions.copyList(body);
+            body = new Declarations(mentions.uses.keySet()).copyList(body);
+            listdef.add(new DFun(f.type_, f.id_, f.listarg_, body));
+        }
+        return new PDefs(listdef);
+    }
+
+    ////////////////////////////// Liveness //////////////////////////////
+
+    /**
+     * Walks the statements of a function from the end. Every method
+     * takes the variables live after a statement and returns the ones
+     * live before it, and adds what is left of the statement to the
+     * result list unless that is null.
+     */
+    private static class Liveness
+    {
+        // A return of a void function does not end it in the
+        // Interpreter, the function goes on after it. Any other
+        // function ends there, main included
+        private final boolean returnsValue;
+
+        Liveness(boolean returnsValue) {
+            this.returnsValue = returnsValue;
+        }
+
+        Set<String> list(ListStm stms, Set<String> out, ListStm result) {
+            return list(stms, out, result, new HashSet<>());
+        }
+
+        // hidden are the variables declared in the list that
+        // are live after it in the enclosing scope
+        private Set<String> list(ListStm stms, Set<String> out, ListStm result, Set<String> hidden) {
+            List<Stm> reached = new ArrayList<>();
+            for (Stm s : stms) {
+                reached.add(s);
+                if (alwaysReturns(s))
+                    break;
+            }
+
+            Set<String> live = out;
+            LinkedList<Stm> kept = new LinkedList<>();
+            for (int i = reached.size() - 1; i >= 0; i--) {
+                ListStm one = result == null ? null : new ListStm();
+                Stm s = reached.get(i);
+                live = new HashSet<>(stm(s, live, one));
+                // before its declaration a name is the hidden variable
+                for (String id : declared(s)) {
+                    if (hidden.contains(id))
+                        live.add(id);
+                }
+                if (one != null)
+                    kept.addAll(0, one);
+            }
+            if (result != null)
+                result.addAll(kept);
+            return live;
+        }
+
+        // the variables of a block are dead at its end
+        Set<String> block(ListStm stms, Set<String> out, ListStm result) {
+            Set<String> inner = new HashSet<>(out);
+            Set<String> hidden = new HashSet<>();
+            for (Stm s : stms) {
+                for (String id : declared(s)) {
+                    if (inner.remove(id))
+                        hidden.add(id);
+                }
+            }
+            return list(stms, inner, result, hidden);
+        }
+
+        // a statement that stands alone is a block of its own
+        Set<String> branch(Stm s, Set<String> out, ListStm result) {
+            ListStm stms = new ListStm();
+            stms.add(s);
+            return block(stms, out, result);
+        }
+
+        Set<String> stm(Stm s, Set<String> out, ListStm result) {
+            if (s instanceof SExp)
+                return expression((SExp) s, out, result);
+
+            if (s instanceof SInit) {
+                SInit init = (SInit) s;
+                Set<String> in = without(out, init.id_);
+                if (out.contains(init.id_)) {
+                    emit(result, s);
+                    in.addAll(reads(init.exp_));
+                } else if (effects(init.exp_)) {
+                    // the value is still computed, before the declaration
+                    // so that it reads the variables it read before
+                    emit(result, new SExp(init.exp_));
+                    emit(result, declaration(init.type_, init.id_));
+                    in.addAll(reads(init.exp_));
+                } else {
+                    emit(result, declaration(init.type_, init.id_));
+                }
+                return in;
+            }
+
+            if (s instanceof SDecls) {
+                Set<String> in = new HashSet<>(out);
+                in.removeAll(((SDecls) s).listid_);
+                emit(result, s);
+                return in;
+            }
+
+            if (s instanceof SReturn) {
+                Set<String> in = returnsValue ? new HashSet<>() : new HashSet<>(out);
+                in.addAll(reads(((SReturn) s).exp_));
+                emit(result, s);
+                return in;
+            }
+
+            if (s instanceof SBlock) {
+                ListStm stms = result == null ? null : new ListStm();
+                Set<String> in = block(((SBlock) s).liststm_, out, stms);
+                if (stms != null && !stms.isEmpty())
+                    emit(result, new SBlock(stms));
+                return in;
+            }
+
+            if (s instanceof SIfElse) {
+                SIfElse p = (SIfElse) s;
+                ListStm then = result == null ? null : new ListStm();
+                ListStm otherwise = result == null ? null : new ListStm();
+                Set<String> in = new HashSet<>(branch(p.stm_1, out, then));
+                in.addAll(branch(p.stm_2, out, otherwise));
+                if (result != null && then.isEmpty() && otherwise.isEmpty() && !effects(p.exp_))
+                    return in;
+                in.addAll(reads(p.exp_));
+                emit(result, new SIfElse(p.exp_, single(then), single(otherwise)));
+                return in;
+            }
+
+            SWhile p = (SWhile) s;
+            // the variables live at the condition are the fixed point of
+            // what is live after the loop and what the body needs
+            Set<String> head = new HashSet<>(out);
+            head.addAll(reads(p.exp_));
+            for (;;) {
+                Set<String> next = new HashSet<>(out);
+                next.addAll(reads(p.exp_));
+                next.addAll(branch(p.stm_, head, null));
+                if (next.equals(head))
+                    break;
+                head = next;
+            }
+            ListStm body = result == null ? null : new ListStm();
+            branch(p.stm_, head, body);
+            emit(result, new SWhile(p.exp_, single(body)));
+            return head;
+        }
+
+        private Set<String> expression(SExp s, Set<String> out, ListStm result) {
+            Exp e = s.exp_;
+            if (e instanceof EAss && ((EAss) e).exp_1 instanceof EId) {
+                String id = ((EId) ((EAss) e).exp_1).id_;
+                Exp value = ((EAss) e).exp_2;
+                if (!out.contains(id))
+                    return stm(new SExp(value), out, result);
+                Set<String> in = without(out, id);
+                in.addAll(reads(value));
+                emit(result, s);
+                return in;
+            }
+
+            Exp target = AstCopier.incremented(e);
+            if (target instanceof EId && !out.contains(((EId) target).id_))
+                return out;
+
+            if (!effects(e))
+                return out;
+            Set<String> in = new HashSet<>(out);
+            in.addAll(reads(e));
+            emit(result, s);
+            return in;
+        }
+
+        private boolean alwaysReturns(Stm s) {
+            if (s instanceof SReturn)
+                return returnsValue;
+            if (s instanceof SBlock) {
+                for (Stm inner : ((SBlock) s).liststm_)
+                    if (alwaysReturns(inner))
+                        return true;
+                return false;
+            }
+            if (s instanceof SIfElse)
+                return alwaysReturns(((SIfElse) s).stm_1) && alwaysReturns(((SIfElse) s).stm_2);
+            return false;
+        }
+    }
+
+    private static List<String> declared(Stm s) {
+        List<String> ids = new ArrayList<>();
+        if (s instanceof SInit)
+            ids.add(((SInit) s).id_);
+        else if (s instanceof SDecls)
+            ids.addAll(((SDecls) s).listid_);
+        return ids;
+    }
+
+    private static void emit(ListStm result, Stm s) {
+        if (result != null)
+            result.add(s);
+    }
+
+    private static Stm single(ListStm stms) {
+        if (stms == null || stms.size() != 1)
+            return new SBlock(stms == null ? new ListStm() : stms);
+        Stm s = stms.getFirst();
+        // a declaration on its own stays in a block
+        if (s instanceof SInit || s instanceof SDecls)
+            return new SBlock(stms);
+        return s;
+    }
+
+    private static SDecls declaration(Type type, String id) {
+        ListId ids = new ListId();
+        ids.add(id);
+        return new SDecls(type, ids);
+    }
+
+    private static Set<String> without(Set<String> live, String id) {
+        Set<String> in = new HashSet<>(live);
+        in.remove(id);
+        return in;
+    }
+
+    // variables an expression may read, assigned ones included
+    private static Set<String> reads(Exp e) {
+        AstCopier copier = new AstCopier(null);
+        copier.copy(e);
+        return copier.uses.keySet();
+    }
+
+    private static boolean effects(Exp e) {
+        AstCopier copier = new AstCopier(null);
+        copier.copy(e);
+        return copier.effects;
+    }
+
+    ////////////////////////////// Declarations //////////////////////////////
+
+    /**
+     * Copies a body without the declarations of variables it never
+     * mentions, and without blocks that only declare variables.
+     */
+    private static class Declarations extends AstCopier
+    {
+        private final Set<String> mentioned;
+
+        Declarations(Set<String> mentioned) {
+            super(null);
+            this.mentioned = mentioned;
+        }
+
+        public Stm visit(SDecls p, Void arg) {
+            ListId ids = new ListId();
+            for (String id : p.listid_)
+                if (mentioned.contains(id))
+                    ids.add(id);
+            return ids.isEmpty() ? null : new SDecls(p.type_, ids);
+        }
+
+        // a block left with nothing but declarations does nothing
+        public Stm visit(SBlock p, Void arg) {
+            ListStm stms = copyList(p.liststm_);
+            for (Stm s : stms) {
+                if (!(s instanceof SDecls))
+                    return new SBlock(stms);
+            }
+            return null;
+        }
+    }
+}
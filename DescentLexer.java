@@ -0,0 +1,244 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Hand written lexer for the DescentParser, it reads the same tokens as
+ * the generated Yylex. The whole source is read into one array first,
+ * a token is its kind and its position in that array, the text of an
+ * identifier or literal is only made into a string when it is asked for.
+ * Comments run from // or # to the end of the line, or between the
+ * markers of a C block comment.
+ */
+public class DescentLexer implements TokenStream {
+
+    // token kinds
+    public static final int EOF        = 0;
+    public static final int IDENT      = 1;
+    public static final int INTEGER    = 2;
+    public static final int DOUBLE_LIT = 3;
+    public static final int LPAREN     = 4;   // (
+    public static final int RPAREN     = 5;   // )
+    public static final int LBRACE     = 6;   // {
+    public static final int RBRACE     = 7;   // }
+    public static final int COMMA      = 8;   // ,
+    public static final int SEMI       = 9;   // ;
+    public static final int ASSIGN     = 10;  // =
+    public static final int INCR       = 11;  // ++
+    public static final int DECR       = 12;  // --
+    public static final int TIMES      = 13;  // *
+    public static final int DIV        = 14;  // /
+    public static final int PLUS       = 15;  // +
+    public static final int MINUS      = 16;  // -
+    public static final int LT         = 17;  // <
+    public static final int GT         = 18;  // >
+    public static final int LTEQ       = 19;  // <=
+    public static final int GTEQ       = 20;  // >=
+    public static final int EQ         = 21;  // ==
+    public static final int NEQ        = 22;  // !=
+    public static final int AND        = 23;  // &&
+    public static final int OR         = 24;  // ||
+    public static final int BOOL       = 25;  // keywords
+    public static final int DOUBLE     = 26;
+    public static final int ELSE       = 27;
+    public static final int FALSE      = 28;
+    public static final int IF         = 29;
+    public static final int INT        = 30;
+    public static final int RETURN     = 31;
+    public static final int TRUE       = 32;
+    public static final int VOID       = 33;
+    public static final int WHILE      = 34;
+
+    private static final String[] KEYWORDS = {
+        "bool", "double", "else", "false", "if", "int", "return", "true", "void", "while"
+    };
+
+    private final char[] text;
+    private final int length;
+    private int pos;
+    private int line = 1;
+
+    // the token last read
+    private int kind;
+    private int start;
+    private int end;
+
+    public DescentLexer(Reader in) throws IOException {
+        char[] buffer = new char[8192];
+        int n = 0;
+        for (int read; (read = in.read(buffer, n, buffer.length - n)) > 0; ) {
+            n += read;
+            if (n == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+        in.close();
+        this.text = buffer;
+        this.length = n;
+    }
+
+    public int next() throws SyntaxException {
+        skipBlanks();
+        start = pos;
+        if (pos >= length) {
+            end = pos;
+            return kind = EOF;
+        }
+        char c = text[pos];
+        if (isLetter(c)) {
+            while (pos < length && isIdentChar(text[pos])) {
+                pos++;
+            }
+            end = pos;
+            return kind = keyword();
+        }
+        if (isDigit(c)) {
+            return kind = number();
+        }
+        pos++;
+        end = pos;
+        switch (c) {
+            case '(': return kind = LPAREN;
+            case ')': return kind = RPAREN;
+            case '{': return kind = LBRACE;
+            case '}': return kind = RBRACE;
+            case ',': return kind = COMMA;
+            case ';': return kind = SEMI;
+            case '*': return kind = TIMES;
+            case '/': return kind = DIV;
+            case '=': return kind = twoChar('=', EQ, ASSIGN);
+            case '+': return kind = twoChar('+', INCR, PLUS);
+            case '-': return kind = twoChar('-', DECR, MINUS);
+            case '<': return kind = twoChar('=', LTEQ, LT);
+            case '>': return kind = twoChar('=', GTEQ, GT);
+            case '!': return kind = twoChar('=', NEQ, -1);
+            case '&': return kind = twoChar('&', AND, -1);
+            case '|': return kind = twoChar('|', OR, -1);
+            default:
+                throw new SyntaxException("unexpected character '" + c + "'");
+        }
+    }
+
+    public int kind() {
+        return kind;
+    }
+
+    public String text() {
+        return new String(text, start, end - start);
+    }
+
+    public int intValue() {
+        return Integer.parseInt(text());
+    }
+
+    public int line() {
+        return line;
+    }
+
+    private int twoChar(char second, int ifTwo, int ifOne) throws SyntaxException {
+        if (pos < length && text[pos] == second) {
+            pos++;
+            end = pos;
+            return ifTwo;
+        }
+        if (ifOne < 0) {
+            throw new SyntaxException("unexpected character '" + text[start] + "'");
+        }
+        return ifOne;
+    }
+
+    // digits, then for a double a dot, digits and maybe an exponent
+    private int number() {
+        while (pos < length && isDigit(text[pos])) {
+            pos++;
+        }
+        int kind = INTEGER;
+        if (pos + 1 < length && text[pos] == '.' && isDigit(text[pos + 1])) {
+            pos++;
+            while (pos < length && isDigit(text[pos])) {
+                pos++;
+            }
+            kind = DOUBLE_LIT;
+            int mark = pos;
+            if (pos < length && text[pos] == 'e') {
+                pos++;
+                if (pos < length && text[pos] == '-') {
+                    pos++;
+                }
+                if (pos < length && isDigit(text[pos])) {
+                    while (pos < length && isDigit(text[pos])) {
+                        pos++;
+                    }
+                } else {
+                    pos = mark;
+                }
+            }
+        }
+        end = pos;
+        return kind;
+    }
+
+    private int keyword() {
+        int n = end - start;
+        search:
+        for (int k = 0; k < KEYWORDS.length; k++) {
+            String keyword = KEYWORDS[k];
+            if (keyword.length() != n) {
+                continue;
+            }
+            for (int i = 0; i < n; i++) {
+                if (keyword.charAt(i) != text[start + i]) {
+                    continue search;
+                }
+            }
+            return BOOL + k;
+        }
+        return IDENT;
+    }
+
+    private void skipBlanks() throws SyntaxException {
+        while (pos < length) {
+            char c = text[pos];
+            if (c == '\n') {
+                line++;
+                pos++;
+            } else if (c == ' ' || c == '\t' || c == '\r' || c == '\f') {
+                pos++;
+            } else if (c == '#' || c == '/' && pos + 1 < length && text[pos + 1] == '/') {
+                while (pos < length && text[pos] != '\n') {
+                    pos++;
+                }
+            } else if (c == '/' && pos + 1 < length && text[pos + 1] == '*') {
+                int open = pos;
+                pos += 2;
+                while (pos + 1 < length && !(text[pos] == '*' && text[pos + 1] == '/')) {
+                    if (text[pos] == '\n') {
+                        line++;
+                    }
+                    pos++;
+                }
+                if (pos + 1 >= length) {
+                    pos = open;
+                    throw new SyntaxException("unterminated comment");
+                }
+                pos += 2;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // the letters of Latin-1 like the generated lexer
+    private static boolean isLetter(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z'
+                || c >= '\u00c0' && c <= '\u00ff' && c != '\u00d7' && c != '\u00f7';
+    }
+
+    private static boolean isIdentChar(char c) {
+        return isLetter(c) || isDigit(c) || c == '_' || c == '\'';
+    }
+}
@@ -0,0 +1,313 @@
+import CPP.Absyn.*;
+
+/**
+ * Hand written parser for the grammar of the generated CUP parser, it
+ * builds the same tree from the tokens of a DescentLexer or a
+ * MappedLexer. Every level of
+ * the grammar's expressions is a method, the binary operators of a level
+ * are parsed in a loop where they associate to the left, once where they
+ * do not associate, and by recursion for the assignment which associates
+ * to the right. Like the generated parser it stops at the first error.
+ */
+public class DescentParser {
+
+    private final TokenStream lexer;
+
+    // kind of the current token
+    private int token;
+
+    public DescentParser(TokenStream lexer) throws SyntaxException {
+        this.lexer = lexer;
+        this.token = lexer.next();
+    }
+
+    public Program pProgram() throws SyntaxException {
+        ListDef defs = new ListDef();
+        while (token != DescentLexer.EOF) {
+            defs.add(def());
+        }
+        return new PDefs(defs);
+    }
+
+    ////////////////////////////// Tokens //////////////////////////////
+
+    private void advance() throws SyntaxException {
+        token = lexer.next();
+    }
+
+    private void expect(int kind) throws SyntaxException {
+        if (token != kind) {
+            throw error();
+        }
+        advance();
+    }
+
+    private boolean accept(int kind) throws SyntaxException {
+        if (token != kind) {
+            return false;
+        }
+        advance();
+        return true;
+    }
+
+    private String ident() throws SyntaxException {
+        if (token != DescentLexer.IDENT) {
+            throw error();
+        }
+        String id = lexer.text();
+        advance();
+        return id;
+    }
+
+    private SyntaxException error() {
+        return new SyntaxException("unexpected " + (token == DescentLexer.EOF ? "end of file" : "\"" + lexer.text() + "\""));
+    }
+
+    ////////////////////////////// Definitions //////////////////////////////
+
+    private Def def() throws SyntaxException {
+        Type type = type();
+        String id = ident();
+        expect(DescentLexer.LPAREN);
+        ListArg args = new ListArg();
+        if (token != DescentLexer.RPAREN) {
+            do {
+                Type argType = type();
+                args.add(new ADecl(argType, ident()));
+            } while (accept(DescentLexer.COMMA));
+        }
+        expect(DescentLexer.RPAREN);
+        expect(DescentLexer.LBRACE);
+        ListStm body = stms();
+        expect(DescentLexer.RBRACE);
+        return new DFun(type, id, args, body);
+    }
+
+    private boolean isType() {
+        return token == DescentLexer.BOOL || token == DescentLexer.DOUBLE
+                || token == DescentLexer.INT || token == DescentLexer.VOID;
+    }
+
+    private Type type() throws SyntaxException {
+        Type type;
+        switch (token) {
+            case DescentLexer.BOOL:   type = new Type_bool(); break;
+            case DescentLexer.DOUBLE: type = new Type_double(); break;
+            case DescentLexer.INT:    type = new Type_int(); break;
+            case DescentLexer.VOID:   type = new Type_void(); break;
+            default: throw error();
+        }
+        advance();
+        return type;
+    }
+
+    ////////////////////////////// Statements //////////////////////////////
+
+    // the statements up to the closing brace
+    private ListStm stms() throws SyntaxException {
+        ListStm stms = new ListStm();
+        while (token != DescentLexer.RBRACE && token != DescentLexer.EOF) {
+            stms.add(stm());
+        }
+        return stms;
+    }
+
+    private Stm stm() throws SyntaxException {
+        if (isType()) {
+            Type type = type();
+            String id = ident();
+            if (accept(DescentLexer.ASSIGN)) {
+                Exp e = exp();
+                expect(DescentLexer.SEMI);
+                return new SInit(type, id, e);
+            }
+            ListId ids = new ListId();
+            ids.add(id);
+            while (accept(DescentLexer.COMMA)) {
+                ids.add(ident());
+            }
+            expect(DescentLexer.SEMI);
+            return new SDecls(type, ids);
+        }
+        switch (token) {
+            case DescentLexer.RETURN: {
+                advance();
+                Exp e = exp();
+                expect(DescentLexer.SEMI);
+                return new SReturn(e);
+            }
+            case DescentLexer.WHILE: {
+                advance();
+                expect(DescentLexer.LPAREN);
+                Exp condition = exp();
+                expect(DescentLexer.RPAREN);
+                return new SWhile(condition, stm());
+            }
+            case DescentLexer.LBRACE: {
+                advance();
+                ListStm stms = stms();
+                expect(DescentLexer.RBRACE);
+                return new SBlock(stms);
+            }
+            case DescentLexer.IF: {
+                advance();
+                expect(DescentLexer.LPAREN);
+                Exp condition = exp();
+                expect(DescentLexer.RPAREN);
+                Stm then = stm();
+                expect(DescentLexer.ELSE);
+                return new SIfElse(condition, then, stm());
+            }
+            default: {
+                Exp e = exp();
+                expect(DescentLexer.SEMI);
+                return new SExp(e);
+            }
+        }
+    }
+
+    ////////////////////////////// Expressions //////////////////////////////
+
+    private Exp exp() throws SyntaxException {
+        return assignment();
+    }
+
+    // Exp3 = Exp2, to the right
+    private Exp assignment() throws SyntaxException {
+        Exp left = or();
+        if (accept(DescentLexer.ASSIGN)) {
+            return new EAss(left, assignment());
+        }
+        return left;
+    }
+
+    private Exp or() throws SyntaxException {
+        Exp e = and();
+        while (accept(DescentLexer.OR)) {
+            e = new EOr(e, and());
+        }
+        return e;
+    }
+
+    private Exp and() throws SyntaxException {
+        Exp e = equality();
+        while (accept(DescentLexer.AND)) {
+            e = new EAnd(e, equality());
+        }
+        return e;
+    }
+
+    // the comparisons do not associate, a == b == c is an error
+    private Exp equality() throws SyntaxException {
+        Exp e = relation();
+        if (accept(DescentLexer.EQ)) {
+            return new EEq(e, relation());
+        }
+        if (accept(DescentLexer.NEQ)) {
+            return new ENEq(e, relation());
+        }
+        return e;
+    }
+
+    private Exp relation() throws SyntaxException {
+        Exp e = additive();
+        switch (token) {
+            case DescentLexer.LT:   advance(); return new ELt(e, additive());
+            case DescentLexer.GT:   advance(); return new EGt(e, additive());
+            case DescentLexer.LTEQ: advance(); return new ELtEq(e, additive());
+            case DescentLexer.GTEQ: advance(); return new EGtEq(e, additive());
+            default: return e;
+        }
+    }
+
+    private Exp additive() throws SyntaxException {
+        Exp e = multiplicative();
+        for (;;) {
+            if (accept(DescentLexer.PLUS)) {
+                e = new EPlus(e, multiplicative());
+            } else if (accept(DescentLexer.MINUS)) {
+                e = new EMinus(e, multiplicative());
+            } else {
+                return e;
+            }
+        }
+    }
+
+    private Exp multiplicative() throws SyntaxException {
+        Exp e = prefix();
+        for (;;) {
+            if (accept(DescentLexer.TIMES)) {
+                e = new ETimes(e, prefix());
+            } else if (accept(DescentLexer.DIV)) {
+                e = new EDiv(e, prefix());
+            } else {
+                return e;
+            }
+        }
+    }
+
+    // ++ and -- apply once, before or after an operand
+    private Exp prefix() throws SyntaxException {
+        if (accept(DescentLexer.INCR)) {
+            return new EPreIncr(postfix());
+        }
+        if (accept(DescentLexer.DECR)) {
+            return new EPreDecr(postfix());
+        }
+        return postfix();
+    }
+
+    private Exp postfix() throws SyntaxException {
+        Exp e = atom();
+        if (accept(DescentLexer.INCR)) {
+            return new EPostIncr(e);
+        }
+        if (accept(DescentLexer.DECR)) {
+            return new EPostDecr(e);
+        }
+        return e;
+    }
+
+    private Exp atom() throws SyntaxException {
+        switch (token) {
+            case DescentLexer.TRUE:
+                advance();
+                return new ETrue();
+            case DescentLexer.FALSE:
+                advance();
+                return new EFalse();
+            case DescentLexer.INTEGER: {
+                Integer value = lexer.intValue();
+                advance();
+                return new EInt(value);
+            }
+            case DescentLexer.DOUBLE_LIT: {
+                Double value = Double.parseDouble(lexer.text());
+                advance();
+                return new EDouble(value);
+            }
+            case DescentLexer.LPAREN: {
+                advance();
+                Exp e = exp();
+                expect(DescentLexer.RPAREN);
+                return e;
+            }
+            case DescentLexer.IDENT: {
+                String id = ident();
+                if (!accept(DescentLexer.LPAREN)) {
+                    return new EId(id);
+                }
+                ListExp args = new ListExp();
+                if (token != DescentLexer.RPAREN) {
+                    do {
+                        args.add(exp());
+                    } while (accept(DescentLexer.COMMA));
+                }
+                expect(DescentLexer.RPAREN);
+                return new EApp(id, args);
+            }
+            default:
+                throw error();
+        }
+    }
+}
@@ -1,6 +1,8 @@
 import CPP.Absyn.DFun;
 
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.TreeMap;
 
 /**
@@ -8,16 +10,24 @@ import java.util.TreeMap;
  */
 public class Environment {
 
-    public Environment() {}
+    public Environment() {
+        this(new TreeMap<>());
+    }
+
+    // shares the table, it is not copied
+    public Environment(Map<String, DFun> functions) {
+        this.functions = functions;
+    }
 
-    // map of function objects
-    private TreeMap<String, DFun> functions = new TreeMap<>();
+    // map of function objects, one frozen table is shared by all environments
+    private Map<String, DFun> functions;
 
     // table of variables <var name, variable data>
     private LinkedHashMap<String, Variable> variables = new LinkedHashMap<>();
 
-    public void setFunctions(TreeMap<String, DFun> inits) {
-        this.functions = new TreeMap<>(inits);
+    // no function can be added once the table is frozen
+    public void freezeFunctions() {
+        functions = Collections.unmodifiableMap(functions);
     }
 
     public void addFunction(DFun dFun) {
@@ -28,7 +38,7 @@ public class Environment {
         return functions.get(id);
     }
 
-    public TreeMap<String, DFun> getFunctions() {
+    public Map<String, DFun> getFunctions() {
         return functions;
     }
 
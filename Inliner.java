@@ -0,0 +1,256 @@
+import CPP.Absyn.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Inlining pass, run after the TypeChecker. It returns a new tree
+ * which has to be checked again, the tree it was given is not changed.
+ * Calls of small functions that are not recursive are replaced by the
+ * body of the function. A function whose body is a single return
+ * becomes an expression at the call site if its arguments can take
+ * the place of the params without changing when they are evaluated.
+ * Otherwise a call that is a whole statement, the right hand side of
+ * an assignment or initialization, or the value of a return becomes
+ * a block that initializes the params with the arguments in order and
+ * then runs the body. The variables of an inlined body are renamed,
+ * so they cannot clash with the variables of the caller.
+ */
+public class Inliner
+{
+    // Largest body that is inlined, counted in statements and expressions
+    public static final int BUDGET = 40;
+
+    private static final String MAIN_FUNC = "main";
+
+    // Functions of the program as they were written
+    private final Map<String,DFun> definitions = new TreeMap<>();
+
+    // Functions of the program called by every function
+    private final Map<String,Set<String>> calls = new TreeMap<>();
+
+    // Functions that can reach themselves in the call graph
+    private final Set<String> recursive = new HashSet<>();
+
+    // Functions whose calls were already inlined
+    private final Map<String,DFun> inlined = new TreeMap<>();
+
+    // Number of call sites inlined, by "callee into caller"
+    private final Map<String,Integer> sites = new LinkedHashMap<>();
+
+    // Suffix of the variables of the last inlined body
+    private int renamings;
+
+    // Entry point
+
+    public Program inline(Program p) {
+        PDefs defs = (PDefs) p;
+        for (Def d : defs.listdef_) {
+            DFun f = (DFun) d;
+            AstCopier copier = new AstCopier(null);
+            copier.copyList(f.liststm_);
+            definitions.put(f.id_, f);
+            calls.put(f.id_, copier.calls);
+        }
+        for (String f : definitions.keySet()) {
+            if (reaches(f, f, new HashSet<>()))
+                recursive.add(f);
+        }
+
+        // callees are done before their callers, so a body is
+        // inlined with the calls inside it already inlined
+        Set<String> visited = new HashSet<>();
+        ListDef listdef = new ListDef();
+        for (Def d : defs.listdef_) {
+            inlineCalls(((DFun) d).id_, visited);
+            listdef.add(inlined.get(((DFun) d).id_));
+        }
+        return new PDefs(listdef);
+    }
+
+    /**one line for every function inlined into another one*/
+    public List<String> report() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String,Integer> site : sites.entrySet()) {
+            int n = site.getValue();
+            lines.add("inlined " + site.getKey() + " at " + n + (n == 1 ? " call site" : " call sites"));
+        }
+        return lines;
+    }
+
+    private boolean reaches(String from, String to, Set<String> seen) {
+        for (String callee : calls.get(from)) {
+            if (callee.equals(to))
+                return true;
+            if (definitions.containsKey(callee) && seen.add(callee) && reaches(callee, to, seen))
+                return true;
+        }
+        return false;
+    }
+
+    private void inlineCalls(String name, Set<String> visited) {
+        if (!visited.add(name))
+            return;
+        for (String callee : calls.get(name)) {
+            if (definitions.containsKey(callee))
+                inlineCalls(callee, visited);
+        }
+        DFun f = definitions.get(name);
+        ListStm body = new Inline(name).copyList(f.liststm_);
+        inlined.put(name, new DFun(f.type_, f.id_, f.listarg_, body));
+    }
+
+    /**the function called, if it may be inlined at all*/
+    private DFun candidate(EApp call) {
+        DFun f = inlined.get(call.id_);
+        if (f == null || recursive.contains(call.id_) || call.id_.equals(MAIN_FUNC))
+            return null;
+        AstCopier copier = new AstCopier(null);
+        copier.copyList(f.liststm_);
+        return copier.size <= BUDGET ? f : null;
+    }
+
+    /**the returned expression of a function that is a single
+     * return, if the arguments can replace the params in it*/
+    private Exp substitutable(DFun f, ListExp args) {
+        if (f.liststm_.size() != 1 || !(f.liststm_.getFirst() instanceof SReturn))
+            return null;
+        Exp value = ((SReturn) f.liststm_.getFirst()).exp_;
+        AstCopier body = new AstCopier(null);
+        value.accept(body, null);
+        if (body.assigns)
+            return null;
+
+        int i = 0;
+        for (Exp arg : args) {
+            String param = ((ADecl) f.listarg_.get(i++)).id_;
+            if (simple(arg))
+                continue;
+            // an argument that is computed is moved to where the param
+            // is used, which is only the same if it has no effects
+            AstCopier computed = new AstCopier(null);
+            arg.accept(computed, null);
+            if (computed.effects || body.uses.getOrDefault(param, 0) > 1)
+                return null;
+        }
+        return value;
+    }
+
+    private static boolean simple(Exp e) {
+        return e instanceof EId || e instanceof EInt || e instanceof EDouble
+                || e instanceof ETrue || e instanceof EFalse;
+    }
+
+    /**a body of statements without a return except at its end*/
+    private static boolean straight(DFun f) {
+        AstCopier copier = new AstCopier(null);
+        copier.copyList(f.liststm_);
+        if (copier.returns == 0)
+            return f.type_ instanceof Type_void;
+        return copier.returns == 1 && f.liststm_.getLast() instanceof SReturn;
+    }
+
+    ////////////////////////////// Inline //////////////////////////////
+
+    /**
+     * Copies the body of a function with the calls it makes inlined.
+     */
+    private class Inline extends AstCopier
+    {
+        private final String caller;
+
+        Inline(String caller) {
+            super(null);
+            this.caller = caller;
+        }
+
+        void copyInto(Stm s, ListStm out) {
+            if (s instanceof SExp) {
+                Exp e = ((SExp) s).exp_;
+                if (e instanceof EApp && inlineStatement((EApp) e, SExp::new, out))
+                    return;
+                if (e instanceof EAss && ((EAss) e).exp_2 instanceof EApp) {
+                    Exp target = ((EAss) e).exp_1;
+                    EApp call = (EApp) ((EAss) e).exp_2;
+                    if (inlineStatement(call, v -> new SExp(new EAss(copy(target), v)), out))
+                        return;
+                }
+            } else if (s instanceof SInit && ((SInit) s).exp_ instanceof EApp) {
+                SInit init = (SInit) s;
+                EApp call = (EApp) init.exp_;
+                // the arguments must not see the variable before it is declared
+                AstCopier args = new AstCopier(null);
+                args.copyArgs(call.listexp_);
+                if (!args.uses.containsKey(init.id_)) {
+                    ListStm block = new ListStm();
+                    if (inlineStatement(call, v -> new SExp(new EAss(new EId(init.id_), v)), block)) {
+                        ListId ids = new ListId();
+                        ids.add(init.id_);
+                        out.add(new SDecls(init.type_, ids));
+                        out.addAll(block);
+                        return;
+                    }
+                }
+            } else if (s instanceof SReturn && ((SReturn) s).exp_ instanceof EApp) {
+                // returning a void call is left alone, a void function
+                // goes on after it in the Interpreter but not in the
+                // compiled engines
+                EApp call = (EApp) ((SReturn) s).exp_;
+                DFun f = inlined.get(call.id_);
+                if (f != null && !(f.type_ instanceof Type_void) && inlineStatement(call, SReturn::new, out))
+                    return;
+            }
+            super.copyInto(s, out);
+        }
+
+        /**replaces a call by a block that ends with the
+         * given statement made of the returned value*/
+        private boolean inlineStatement(EApp call, Function<Exp,Stm> last, ListStm out) {
+            DFun f = candidate(call);
+            if (f == null || substitutable(f, call.listexp_) != null || !straight(f))
+                return false;
+
+            AstCopier body = new AstCopier(String.valueOf(++renamings));
+            ListStm block = new ListStm();
+            int i = 0;
+            for (Exp arg : call.listexp_) {
+                ADecl param = (ADecl) f.listarg_.get(i++);
+                block.add(new SInit(param.type_, body.name(param.id_), copy(arg)));
+            }
+            for (Stm s : f.liststm_) {
+                if (s instanceof SReturn)
+                    block.add(last.apply(body.copy(((SReturn) s).exp_)));
+                else
+                    body.copyInto(s, block);
+            }
+            out.add(new SBlock(block));
+            inlined(call);
+            return true;
+        }
+
+        public Exp visit(EApp p, Void arg) {
+            DFun f = candidate(p);
+            Exp value = f == null ? null : substitutable(f, p.listexp_);
+            if (value == null)
+                return super.visit(p, arg);
+
+            AstCopier body = new AstCopier(null);
+            int i = 0;
+            for (Exp e : p.listexp_) {
+                body.values.put(((ADecl) f.listarg_.get(i++)).id_, copy(e));
+            }
+            inlined(p);
+            return value.accept(body, null);
+        }
+
+        private void inlined(EApp call) {
+            sites.merge(call.id_ + " into " + caller, 1, Integer::sum);
+        }
+    }
+}
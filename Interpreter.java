@@ -1,9 +1,12 @@
 import CPP.Absyn.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.Scanner;
+import java.util.List;
+import java.util.Map;
 
 
 public class Interpreter {
@@ -24,12 +27,73 @@ public class Interpreter {
 
     // declare an environment for the whole program
     Environment environment = new Environment();
-    ArrayList<Object> inputLine = new ArrayList<>();
-    int readerIndex = 0;
+    ProgramIO io;
 
+    // back edges taken by every loop so far, hot loops
+    // continue on the program compiled by the ClosureCompiler
+    private final Map<SWhile, Integer> backEdges = new IdentityHashMap<>();
+    private Program program;
+    private ClosureCompiler compiler;
+
+    // static types of the program computed by the TypeChecker, and the
+    // operator of every arithmetic and comparison expression selected
+    // from them before the program runs
+    private TypeChecker types;
+    private final Map<Exp, Operator> operators = new IdentityHashMap<>();
+
+    // target of every call, linked before the program runs
+    private final Map<EApp, CallTarget> callTargets = new IdentityHashMap<>();
+    private final Map<DFun, LinkedFunction> linked = new LinkedHashMap<>();
+
+    // results of pure functions are kept when this is above 0
+    public static final int MEMO_CAPACITY = 1 << 16;
+    private int memoCapacity;
+
+
+    public Interpreter() {
+        this(new ProgramIO());
+    }
+
+    public Interpreter(ProgramIO io) {
+        this.io = io;
+    }
+
+    /**types is the TypeChecker that checked the program*/
+    public Interpreter(ProgramIO io, TypeChecker types) {
+        this.io = io;
+        this.types = types;
+    }
+
+
+    /**keep up to capacity results of every pure function, and
+     * answer calls with arguments seen before from them*/
+    public void memoize(int capacity) {
+        this.memoCapacity = capacity;
+    }
+
+    /**hits and misses of every function whose results were kept*/
+    public List<String> memoStatistics() {
+        List<String> lines = new ArrayList<>();
+        for (LinkedFunction function : linked.values()) {
+            Memo memo = function.memo;
+            if (memo != null) {
+                lines.add("memo " + function.definition.id_ + ": " + memo.hits + " hits, "
+                        + memo.misses + " misses, " + memo.size() + " kept");
+            }
+        }
+        return lines;
+    }
 
 
     public void interpret(Program p) {
+        program = p;
+        if (types == null) {
+            types = new TypeChecker();
+            types.typeCheck(p);
+        }
+        selectOperators();
+        linkCalls();
+
         // define a visitor for the program
         ProgramVisitor programVisitor = new ProgramVisitor();
         // accepting visitor to the program
@@ -52,6 +116,8 @@ public class Interpreter {
                 // this visit is just to gather all functions info
                 def.accept(definitionVisitor, null);
             }
+            // from now on all environments share the same table
+            environment.freezeFunctions();
 
             DFun funMain = environment.getFunction(MAIN_FUNC);
             executeMain(funMain);
@@ -62,7 +128,8 @@ public class Interpreter {
 
 
     /**this is the execution method
-     * for the top-level function main()*/
+     * for the top-level function main(),
+     * which ends at its first return like in the compiled engines*/
     private void executeMain(DFun dFun) {
         // define a new statement visitor for main()
         StatementVisitor statementVisitor = new StatementVisitor();
@@ -70,42 +137,62 @@ public class Interpreter {
         // function main() doesn't have params
         // so just iterate over all statements
         for (Stm stm: dFun.liststm_) {
-            stm.accept(statementVisitor, environment);
+            Object value = stm.accept(statementVisitor, environment);
+            if (value instanceof TailCall) {
+                // the returned call still has to run
+                TailCall call = (TailCall) value;
+                executeOtherFunction(call.function, call.args);
+            }
+            if (value != null) {
+                return;
+            }
         }
     }
 
 
     /**this is the execution method
      * for functions other than main*/
-    private Object executeOtherFunction(DFun dFun, ListExp listexp, Environment env) {
+    private Object executeOtherFunction(LinkedFunction function, Object[] args) {
+        Memo memo = function.memo;
+        List<Object> key = null;
+        if (memo != null) {
+            key = Arrays.asList(args);
+            Object value = memo.get(key);
+            if (value != null) {
+                memo.hits++;
+                return value;
+            }
+            memo.misses++;
+        }
+
+        // a call in tail position comes back as a TailCall and runs
+        // here, after the frame of the function that made it is gone
+        Object returnValue = executeBody(function, args);
+        while (returnValue instanceof TailCall) {
+            TailCall call = (TailCall) returnValue;
+            returnValue = executeBody(call.function, call.args);
+        }
+
+        if (memo != null) {
+            memo.put(key, returnValue);
+        }
+        return returnValue;
+    }
+
+    private Object executeBody(LinkedFunction function, Object[] args) {
         Object returnValue = null;
+        DFun dFun = function.definition;
 
         // declare new environment for this function scope
-        Environment envLocal = new Environment();
-        envLocal.setFunctions(env.getFunctions());
+        Environment envLocal = new Environment(environment.getFunctions());
 
         // define a new statement visitor for this function
         StatementVisitor statementVisitor = new StatementVisitor();
 
-        // first, inspect function params
-        int i = 0;
-        for(Arg arg : dFun.listarg_) {
-            Object id = arg.accept(new ArgsVisitor(), envLocal);
-
-            // next, push value to the params variable
-            Object exp = listexp.get(i).accept(new ExpressionVisitor(), env);
-
-            if(exp instanceof Integer) {
-                envLocal.updateVariable(String.valueOf(id), Integer.valueOf(String.valueOf(exp)));
-            } else if(exp instanceof Double) {
-                envLocal.updateVariable(String.valueOf(id), Double.valueOf(String.valueOf(exp)));
-            } else if(exp instanceof Boolean) {
-                envLocal.updateVariable(String.valueOf(id), Boolean.valueOf(String.valueOf(exp)));
-            } else {
-                envLocal.updateVariable(String.valueOf(id), null);
-            }
-
-            i++;
+        // params get the values of the arguments
+        for (int i = 0; i < args.length; i++) {
+            String id = function.params[i];
+            envLocal.addVariable(id, new Variable(id, function.paramTypes[i], args[i]));
         }
 
         // visit all statements
@@ -128,6 +215,165 @@ public class Interpreter {
 
 
 
+    /**on-stack replacement of a hot loop: the variables in scope are
+     * copied into a frame, the compiled loop continues from its
+     * condition and the variables are copied back when it is left*/
+    private Object replaceLoop(SWhile loop, Environment env) {
+        if (compiler == null) {
+            compiler = new ClosureCompiler(io);
+            compiler.compile(program);
+        }
+        ClosureCompiler.Loop compiled = compiler.loop(loop);
+
+        Object[] frame = new Object[compiled.frameSize];
+        for (Map.Entry<String, Integer> variable : compiled.variables.entrySet()) {
+            frame[variable.getValue()] = env.getVariable(variable.getKey()).getVariableValue();
+        }
+        Object value = compiled.execute(frame);
+        for (Map.Entry<String, Integer> variable : compiled.variables.entrySet()) {
+            env.updateVariable(variable.getKey(), frame[variable.getValue()]);
+        }
+        return value == ClosureCompiler.NO_VALUE ? null : value;
+    }
+
+
+
+
+    /**target of a call: a builtin function, or a function of the
+     * program that was linked to the call site*/
+    private interface CallTarget {
+        Object call(ListExp args, Environment env);
+    }
+
+    /**a function of the program with the names and type
+     * names of its params, shared by all its call sites*/
+    private final class LinkedFunction implements CallTarget {
+        final DFun definition;
+        final String[] params;
+        final String[] paramTypes;
+        // void functions are not called from return statements,
+        // execution goes on after them
+        final boolean returnsValue;
+        // kept results if the function is pure and memoization is on
+        Memo memo;
+
+        LinkedFunction(DFun definition) {
+            this.definition = definition;
+            this.params = new String[definition.listarg_.size()];
+            this.paramTypes = new String[params.length];
+
+            int i = 0;
+            for (Arg arg : definition.listarg_) {
+                ADecl decl = (ADecl) arg;
+                params[i] = decl.id_;
+                paramTypes[i] = decl.type_.accept(new TypeVisitor(), null);
+                i++;
+            }
+            returnsValue = !(definition.type_ instanceof Type_void);
+        }
+
+        public Object call(ListExp args, Environment env) {
+            // the arguments are evaluated in the caller's environment
+            return executeOtherFunction(this, evaluateArguments(args, env));
+        }
+    }
+
+    /**results of a pure function by its arguments, the least
+     * recently used one is dropped when there are too many*/
+    private static final class Memo extends LinkedHashMap<List<Object>, Object> {
+        private static final long serialVersionUID = 1L;
+
+        final int capacity;
+        long hits;
+        long misses;
+
+        Memo(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, Object> eldest) {
+            return size() > capacity;
+        }
+    }
+
+    /**a call in tail position, returned by the return statement
+     * instead of its value so the caller does not have to wait
+     * for it on the Java stack*/
+    private static final class TailCall {
+        final LinkedFunction function;
+        final Object[] args;
+
+        TailCall(LinkedFunction function, Object[] args) {
+            this.function = function;
+            this.args = args;
+        }
+    }
+
+    private Object[] evaluateArguments(ListExp listexp, Environment env) {
+        ExpressionVisitor expressionVisitor = new ExpressionVisitor();
+        Object[] args = new Object[listexp.size()];
+        int i = 0;
+        for (Exp exp : listexp) {
+            args[i++] = exp.accept(expressionVisitor, env);
+        }
+        return args;
+    }
+
+    /**resolves every call once, the builtin functions
+     * become intrinsics that do not look up anything*/
+    private void linkCalls() {
+        Purity purity = null;
+        if (memoCapacity > 0) {
+            purity = new Purity();
+            purity.analyze(program);
+        }
+
+        for (Exp exp : types.expTypes().keySet()) {
+            if (!(exp instanceof EApp)) {
+                continue;
+            }
+            EApp p = (EApp) exp;
+            CallTarget target;
+            if(PRINT_INT.equals(p.id_) || PRINT_DOUBLE.equals(p.id_)) {
+                target = (args, env) -> {
+                    printOperation(args.getFirst(), env);
+                    return true;
+                };
+            } else if(READ_INT.equals(p.id_)) {
+                target = (args, env) -> io.readInt();
+            } else if(READ_DOUBLE.equals(p.id_)) {
+                target = (args, env) -> io.readDouble();
+            } else {
+                DFun dFun = types.calleeOf(p);
+                LinkedFunction function = linked.get(dFun);
+                if (function == null) {
+                    function = new LinkedFunction(dFun);
+                    if (purity != null && purity.isPure(dFun) && function.returnsValue) {
+                        function.memo = new Memo(memoCapacity);
+                    }
+                    linked.put(dFun, function);
+                }
+                target = function;
+            }
+            callTargets.put(p, target);
+        }
+    }
+
+    private void printOperation(Exp exp, Environment env) {
+        Object eval = evaluation(exp, env);
+        if(eval instanceof Integer) {
+            io.printInt((Integer) eval);
+        } else if(eval instanceof Double) {
+            io.printDouble((Double) eval);
+        } else {
+            throw new RuntimeException("Invalid parameter for print method");
+        }
+    }
+
+
+
+
     /**Collecting all external definitions into the environment*/
     public class DefinitionVisitor<R,A> implements Def.Visitor<R,A> {
 
@@ -192,36 +438,49 @@ public class Interpreter {
 
         public Object visit(SReturn p, Environment env) {
             Exp returnExp = p.exp_;
+            if (returnExp instanceof EApp) {
+                CallTarget target = callTargets.get(returnExp);
+                if (target instanceof LinkedFunction && ((LinkedFunction) target).returnsValue) {
+                    EApp call = (EApp) returnExp;
+                    return new TailCall((LinkedFunction) target, evaluateArguments(call.listexp_, env));
+                }
+            }
             Object returnVal = returnExp.accept(new ExpressionVisitor(), env);
 
             return returnVal;
         }
 
         public Object visit(SWhile p, Environment env) {
-            Exp expCondition = p.exp_;
-            Stm stm = p.stm_; // can be block statement
-
-            whileStatementOps(expCondition, stm, env);
-            return null;
+            return whileStatementOps(p, env);
         }
 
-        private void whileStatementOps(Exp expCondition, Stm stm, Environment env) {
-            String boolString = String.valueOf(expCondition.accept(new ExpressionVisitor(), env));
-
-            boolean state = Boolean.valueOf(boolString);
+        /**runs the loop iteratively, once the loop took HOT_LOOP
+         * back edges the rest of it runs compiled*/
+        private Object whileStatementOps(SWhile loop, Environment env) {
+            ExpressionVisitor expressionVisitor = new ExpressionVisitor();
+            int count = backEdges.getOrDefault(loop, 0);
 
-            if(state) {
-                stm.accept(new StatementVisitor(), env);
-                whileStatementOps(expCondition, stm, env);
+            while (count < ClosureCompiler.HOT_LOOP) {
+                if (!(Boolean) loop.exp_.accept(expressionVisitor, env)) {
+                    backEdges.put(loop, count);
+                    return null;
+                }
+                Object value = loop.stm_.accept(this, env);
+                if (value != null) {
+                    backEdges.put(loop, count);
+                    return value;
+                }
+                count++;
             }
+            backEdges.put(loop, count);
+            return replaceLoop(loop, env);
         }
 
         public Object visit(SBlock p, Environment env) {
             ListStm listStm = p.liststm_;
             Object value = null;
 
-            Environment envBlock = new Environment();
-            envBlock.setFunctions(env.getFunctions());
+            Environment envBlock = new Environment(env.getFunctions());
 
             LinkedHashMap<String,Variable> importVars = env.getVariables();
 
@@ -256,7 +515,7 @@ public class Interpreter {
 
             Object eval = expCondition.accept(new ExpressionVisitor(), env);
             if(eval instanceof Boolean) {
-                Boolean condition = Boolean.valueOf(String.valueOf(eval));
+                Boolean condition = (Boolean) eval;
                 if(condition) {
                     value = stmIf.accept(new StatementVisitor(), env);
                 } else {
@@ -300,53 +559,10 @@ public class Interpreter {
 
 
 
-        /** handles all function call expressions inside statement */
+        /** handles all function call expressions inside statement,
+         * the target of the call was linked before the program ran */
         public Object visit(EApp p, Environment env) {
-            // get all the argument params
-            ListExp listExp = p.listexp_;
-
-            if(PRINT_INT.equals(p.id_) || PRINT_DOUBLE.equals(p.id_)) {
-                printOperation(listExp.getFirst(), env);
-                return true;
-            } else if(READ_INT.equals(p.id_)) {
-                return readOperation(TYPE_INTEGER);
-            } else if(READ_DOUBLE.equals(p.id_)) {
-                return readOperation(TYPE_DOUBLE);
-            } else {
-                // other custom functions
-                Object funcRetValue = executeOtherFunction(env.getFunction(p.id_), p.listexp_, env);
-                return funcRetValue;
-            }
-        }
-
-        private Object readOperation(String flag) {
-            Object echo = null;
-
-            if(inputLine.isEmpty()) {
-                Scanner scanner = new Scanner(System.in);
-                scanner.useDelimiter("[;\r\n]+");
-                while(scanner.hasNext()) {
-                    inputLine.add(scanner.next());
-                }
-            }
-
-            if(flag.equals(TYPE_INTEGER)) {
-                echo = Integer.valueOf(String.valueOf(inputLine.get(readerIndex)));
-            } else if(flag.equals(TYPE_DOUBLE)) {
-                echo = Double.valueOf(String.valueOf(inputLine.get(readerIndex)));
-            }
-
-            readerIndex++;
-            return echo;
-        }
-
-        private void printOperation(Exp exp, Environment env) {
-            Object eval = evaluation(exp, env);
-            if(eval instanceof Integer || eval instanceof Double) {
-                System.out.println(String.valueOf(eval));
-            } else {
-                throw new RuntimeException("Invalid parameter for print method");
-            }
+            return callTargets.get(p).call(p.listexp_, env);
         }
 
 
@@ -356,12 +572,12 @@ public class Interpreter {
             Object object = evaluation(p.exp_, env);
 
             if(object instanceof Integer) {
-                Integer exp = Integer.valueOf(String.valueOf(object));
+                Integer exp = (Integer) object;
                 ++exp;
                 String variable = ((EId) (p.exp_)).id_;
                 env.updateVariable(variable, exp);
             } else if(object instanceof Double) {
-                Double exp = Double.valueOf(String.valueOf(object));
+                Double exp = (Double) object;
                 ++exp;
                 String variable = ((EId) (p.exp_)).id_;
                 env.updateVariable(variable, exp);
@@ -374,12 +590,12 @@ public class Interpreter {
             Object object = evaluation(p.exp_, env);
 
             if(object instanceof Integer) {
-                Integer exp = Integer.valueOf(String.valueOf(object));
+                Integer exp = (Integer) object;
                 --exp;
                 String variable = ((EId) (p.exp_)).id_;
                 env.updateVariable(variable, exp);
             } else if(object instanceof Double) {
-                Double exp = Double.valueOf(String.valueOf(object));
+                Double exp = (Double) object;
                 --exp;
                 String variable = ((EId) (p.exp_)).id_;
                 env.updateVariable(variable, exp);
@@ -392,11 +608,11 @@ public class Interpreter {
             Object number = evaluation(p.exp_, env);
 
             if(number instanceof Integer) {
-                Integer exp = Integer.valueOf(String.valueOf(number));
+                Integer exp = (Integer) number;
                 ++exp;// do pre-increment
                 number = exp;
             } else if(number instanceof Double) {
-                Double exp = Double.valueOf(String.valueOf(number));
+                Double exp = (Double) number;
                 ++exp;// do pre-increment
                 number = exp;
             }
@@ -411,11 +627,11 @@ public class Interpreter {
             Object number = evaluation(p.exp_, env);
 
             if(number instanceof Integer) {
-                Integer exp = Integer.valueOf(String.valueOf(number));
+                Integer exp = (Integer) number;
                 --exp;// do pre-decrement
                 number = exp;
             } else if(number instanceof Double) {
-                Double exp = Double.valueOf(String.valueOf(number));
+                Double exp = (Double) number;
                 --exp;// do pre-decrement
                 number = exp;
             }
@@ -428,142 +644,53 @@ public class Interpreter {
 
 
 
-        /**Arithmetic expression operations*/
+        /**Arithmetic and comparison operations, the operator
+         * was selected by the static type of the operands*/
         public Object visit(ETimes p, Environment env) {
-            Object exp1 = evaluation(p.exp_1, env);
-            Object exp2 = evaluation(p.exp_2, env);
-
-            if(exp1 instanceof Double && exp2 instanceof Double) {
-                return Double.valueOf(String.valueOf(exp1)) * Double.valueOf(String.valueOf(exp2));
-            } else if(exp1 instanceof Integer && exp2 instanceof Integer) {
-                return (Integer) exp1 * (Integer) exp2;
-            } else {
-                throw new RuntimeException("Arithmetic operation requires Numbers");
-            }
+            return binaryOperation(p, p.exp_1, p.exp_2, env);
         }
 
         public Object visit(EDiv p, Environment env) {
-            Object exp1 = evaluation(p.exp_1, env);
-            Object exp2 = evaluation(p.exp_2, env);
-
-            if(exp1 instanceof Double && exp2 instanceof Double) {
-                return Double.valueOf(String.valueOf(exp1)) / Double.valueOf(String.valueOf(exp2));
-            } else if(exp1 instanceof Integer && exp2 instanceof Integer) {
-                return (Integer) exp1 / (Integer) exp2;
-            } else {
-                throw new RuntimeException("Arithmetic operation requires Numbers");
-            }
+            return binaryOperation(p, p.exp_1, p.exp_2, env);
         }
 
         public Object visit(EPlus p, Environment env) {
-            Object exp1 = evaluation(p.exp_1, env);
-            Object exp2 = evaluation(p.exp_2, env);
-
-            if(exp1 instanceof Double && exp2 instanceof Double) {
-                return Double.valueOf(String.valueOf(exp1)) + Double.valueOf(String.valueOf(exp2));
-            } else if(exp1 instanceof Integer && exp2 instanceof Integer) {
-                return (Integer) exp1 + (Integer) exp2;
-            } else {
-                throw new RuntimeException("Arithmetic operation requires Numbers");
-            }
+            return binaryOperation(p, p.exp_1, p.exp_2, env);
         }
 
         public Object visit(EMinus p, Environment env) {
-            Object exp1 = evaluation(p.exp_1, env);
-            Object exp2 = evaluation(p.exp_2, env);
-
-            if(exp1 instanceof Double && exp2 instanceof Double) {
-                return Double.valueOf(String.valueOf(exp1)) - Double.valueOf(String.valueOf(exp2));
-            } else if(exp1 instanceof Integer && exp2 instanceof Integer) {
-                return (Integer) exp1 - (Integer) exp2;
-            } else {
-                throw new RuntimeException("Arithmetic operation requires Numbers");
-            }
+            return binaryOperation(p, p.exp_1, p.exp_2, env);
         }
 
-
-
-        /**boolean operator expressions*/
         public Object visit(ELt p, Environment env) {
-            Object exp1 = evaluation(p.exp_1, env);
-            Object exp2 = evaluation(p.exp_2, env);
-
-            if(exp1 instanceof Double && exp2 instanceof Double) {
-                return Double.valueOf(String.valueOf(exp1)) < Double.valueOf(String.valueOf(exp2));
-            } else if(exp1 instanceof Integer && exp2 instanceof Integer) {
-                return Integer.valueOf(String.valueOf(exp1)) < Integer.valueOf(String.valueOf(exp2));
-            } else {
-                throw new RuntimeException("< operator requires Numbers");
-            }
+            return binaryOperation(p, p.exp_1, p.exp_2, env);
         }
 
         public Object visit(EGt p, Environment env) {
-            Object exp1 = evaluation(p.exp_1, env);
-            Object exp2 = evaluation(p.exp_2, env);
-
-            if(exp1 instanceof Double && exp2 instanceof Double) {
-                return Double.valueOf(String.valueOf(exp1)) > Double.valueOf(String.valueOf(exp2));
-            } else if(exp1 instanceof Integer && exp2 instanceof Integer) {
-                return Integer.valueOf(String.valueOf(exp1)) > Integer.valueOf(String.valueOf(exp2));
-            } else {
-                throw new RuntimeException("> operator requires Numbers");
-            }
+            return binaryOperation(p, p.exp_1, p.exp_2, env);
         }
 
         public Object visit(ELtEq p, Environment env) {
-            Object exp1 = evaluation(p.exp_1, env);
-            Object exp2 = evaluation(p.exp_2, env);
-
-            if(exp1 instanceof Double && exp2 instanceof Double) {
-                return Double.valueOf(String.valueOf(exp1)) <= Double.valueOf(String.valueOf(exp2));
-            } else if(exp1 instanceof Integer && exp2 instanceof Integer) {
-                return Integer.valueOf(String.valueOf(exp1)) <= Integer.valueOf(String.valueOf(exp2));
-            } else {
-                throw new RuntimeException("<= operator requires Numbers");
-            }
+            return binaryOperation(p, p.exp_1, p.exp_2, env);
         }
 
         public Object visit(EGtEq p, Environment env) {
-            Object exp1 = evaluation(p.exp_1, env);
-            Object exp2 = evaluation(p.exp_2, env);
-
-            if(exp1 instanceof Double && exp2 instanceof Double) {
-                return Double.valueOf(String.valueOf(exp1)) >= Double.valueOf(String.valueOf(exp2));
-            } else if(exp1 instanceof Integer && exp2 instanceof Integer) {
-                return Integer.valueOf(String.valueOf(exp1)) >= Integer.valueOf(String.valueOf(exp2));
-            } else {
-                throw new RuntimeException(">= operator requires Numbers");
-            }
+            return binaryOperation(p, p.exp_1, p.exp_2, env);
         }
 
         public Object visit(EEq p, Environment env) {
-            Object exp1 = evaluation(p.exp_1, env);
-            Object exp2 = evaluation(p.exp_2, env);
-
-            if(exp1 instanceof Double && exp2 instanceof Double) {
-                return Double.valueOf(String.valueOf(exp1)).equals(Double.valueOf(String.valueOf(exp2)));
-            } else if(exp1 instanceof Integer && exp2 instanceof Integer) {
-                return Integer.valueOf(String.valueOf(exp1)).equals(Integer.valueOf(String.valueOf(exp2)));
-            } else if(exp1 instanceof Boolean && exp2 instanceof Boolean) {
-                return Boolean.valueOf(String.valueOf(exp1)) == Boolean.valueOf(String.valueOf(exp2));
-            } else {
-                throw new RuntimeException("== operator requires Numbers or Boolean");
-            }
+            return binaryOperation(p, p.exp_1, p.exp_2, env);
         }
 
         public Object visit(ENEq p, Environment env) {
-            Object exp1 = evaluation(p.exp_1, env);
-            Object exp2 = evaluation(p.exp_2, env);
+            return binaryOperation(p, p.exp_1, p.exp_2, env);
+        }
 
-            if(exp1 instanceof Double && exp2 instanceof Double) {
-                return !Double.valueOf(String.valueOf(exp1)).equals(Double.valueOf(String.valueOf(exp2)));
-            } else if(exp1 instanceof Integer && exp2 instanceof Integer) {
-                return !Integer.valueOf(String.valueOf(exp1)).equals(Integer.valueOf(String.valueOf(exp2)));
-            } else if(exp1 instanceof Boolean && exp2 instanceof Boolean) {
-                return Boolean.valueOf(String.valueOf(exp1)) != Boolean.valueOf(String.valueOf(exp2));
-            } else {
-                throw new RuntimeException("!= operator requires Numbers or Boolean");
-            }
+        private Object binaryOperation(Exp p, Exp e1, Exp e2, Environment env) {
+            Object exp1 = evaluation(e1, env);
+            Object exp2 = evaluation(e2, env);
+
+            return operators.get(p).apply(exp1, exp2);
         }
 
         public Object visit(EAnd p, Environment env) {
@@ -576,10 +703,10 @@ public class Interpreter {
             // but if exp1 is false, whatever value of exp2 will make entire statement false
             // thus, no need to evaluate exp2
             if(exp1 instanceof Boolean) {
-                if(Boolean.valueOf(String.valueOf(exp1))) {
+                if((Boolean) exp1) {
                     Object exp2 = evaluation(p.exp_2, env);
                     if(exp2 instanceof Boolean) {
-                        return Boolean.valueOf(String.valueOf(exp1)) && Boolean.valueOf(String.valueOf(exp2));
+                        return (Boolean) exp1 && (Boolean) exp2;
                     } else {
                         throw new RuntimeException("&& operator requires Boolean");
                     }
@@ -599,10 +726,10 @@ public class Interpreter {
 
             if(exp1 instanceof Boolean) {
                 // if exp1 true then continue evaluate exp2
-                if(!Boolean.valueOf(String.valueOf(exp1))) {
+                if(!(Boolean) exp1) {
                     Object exp2 = evaluation(p.exp_2, env);
                     if(exp2 instanceof Boolean) {
-                        return Boolean.valueOf(String.valueOf(exp1)) || Boolean.valueOf(String.valueOf(exp2));
+                        return (Boolean) exp1 || (Boolean) exp2;
                     } else {
                         throw new RuntimeException("|| operator requires Boolean");
                     }
@@ -631,6 +758,84 @@ public class Interpreter {
 
 
 
+    /**an arithmetic or comparison operator
+     * for one type of operands*/
+    private interface Operator {
+        Object apply(Object exp1, Object exp2);
+    }
+
+    private static final Operator INT_TIMES    = (a, b) -> (Integer) a * (Integer) b;
+    private static final Operator INT_DIV      = (a, b) -> (Integer) a / (Integer) b;
+    private static final Operator INT_PLUS     = (a, b) -> (Integer) a + (Integer) b;
+    private static final Operator INT_MINUS    = (a, b) -> (Integer) a - (Integer) b;
+    private static final Operator INT_LT       = (a, b) -> (Integer) a < (Integer) b;
+    private static final Operator INT_GT       = (a, b) -> (Integer) a > (Integer) b;
+    private static final Operator INT_LTEQ     = (a, b) -> (Integer) a <= (Integer) b;
+    private static final Operator INT_GTEQ     = (a, b) -> (Integer) a >= (Integer) b;
+    private static final Operator INT_EQ       = (a, b) -> (int) (Integer) a == (Integer) b;
+    private static final Operator INT_NEQ      = (a, b) -> (int) (Integer) a != (Integer) b;
+
+    private static final Operator DOUBLE_TIMES = (a, b) -> (Double) a * (Double) b;
+    private static final Operator DOUBLE_DIV   = (a, b) -> (Double) a / (Double) b;
+    private static final Operator DOUBLE_PLUS  = (a, b) -> (Double) a + (Double) b;
+    private static final Operator DOUBLE_MINUS = (a, b) -> (Double) a - (Double) b;
+    private static final Operator DOUBLE_LT    = (a, b) -> (Double) a < (Double) b;
+    private static final Operator DOUBLE_GT    = (a, b) -> (Double) a > (Double) b;
+    private static final Operator DOUBLE_LTEQ  = (a, b) -> (Double) a <= (Double) b;
+    private static final Operator DOUBLE_GTEQ  = (a, b) -> (Double) a >= (Double) b;
+    // equality of doubles is Double.equals
+    private static final Operator DOUBLE_EQ    = (a, b) -> a.equals(b);
+    private static final Operator DOUBLE_NEQ   = (a, b) -> !a.equals(b);
+
+    private static final Operator BOOL_EQ      = (a, b) -> (boolean) (Boolean) a == (Boolean) b;
+    private static final Operator BOOL_NEQ     = (a, b) -> (boolean) (Boolean) a != (Boolean) b;
+
+    /**selects the operator of every arithmetic and comparison
+     * expression once, from the types found by the TypeChecker*/
+    private void selectOperators() {
+        for (Exp exp : types.expTypes().keySet()) {
+            Operator operator = null;
+            if (exp instanceof ETimes) {
+                operator = isInt(((ETimes) exp).exp_1) ? INT_TIMES : DOUBLE_TIMES;
+            } else if (exp instanceof EDiv) {
+                operator = isInt(((EDiv) exp).exp_1) ? INT_DIV : DOUBLE_DIV;
+            } else if (exp instanceof EPlus) {
+                operator = isInt(((EPlus) exp).exp_1) ? INT_PLUS : DOUBLE_PLUS;
+            } else if (exp instanceof EMinus) {
+                operator = isInt(((EMinus) exp).exp_1) ? INT_MINUS : DOUBLE_MINUS;
+            } else if (exp instanceof ELt) {
+                operator = isInt(((ELt) exp).exp_1) ? INT_LT : DOUBLE_LT;
+            } else if (exp instanceof EGt) {
+                operator = isInt(((EGt) exp).exp_1) ? INT_GT : DOUBLE_GT;
+            } else if (exp instanceof ELtEq) {
+                operator = isInt(((ELtEq) exp).exp_1) ? INT_LTEQ : DOUBLE_LTEQ;
+            } else if (exp instanceof EGtEq) {
+                operator = isInt(((EGtEq) exp).exp_1) ? INT_GTEQ : DOUBLE_GTEQ;
+            } else if (exp instanceof EEq) {
+                Exp operand = ((EEq) exp).exp_1;
+                operator = isInt(operand) ? INT_EQ : isDouble(operand) ? DOUBLE_EQ : BOOL_EQ;
+            } else if (exp instanceof ENEq) {
+                Exp operand = ((ENEq) exp).exp_1;
+                operator = isInt(operand) ? INT_NEQ : isDouble(operand) ? DOUBLE_NEQ : BOOL_NEQ;
+            }
+
+            if (operator != null) {
+                operators.put(exp, operator);
+            }
+        }
+    }
+
+    private boolean isInt(Exp exp) {
+        return types.typeOf(exp).equals(types.INT);
+    }
+
+    private boolean isDouble(Exp exp) {
+        return types.typeOf(exp).equals(types.DOUBLE);
+    }
+
+
+
+
     /**evaluation method to evaluate expression*/
     public Object evaluation(Exp exp, Environment env) {
         return exp.accept(new ExpressionVisitor(), env);
@@ -664,21 +869,4 @@ public class Interpreter {
         }
     }
 
-
-
-
-    public class ArgsVisitor implements Arg.Visitor<Object, Environment> {
-
-        @Override
-        public Object visit(ADecl p, Environment env) {
-
-            String variable = p.id_;
-            Type varType = p.type_;
-            String varTypeString = varType.accept(new TypeVisitor(), null);
-            env.addVariable(variable, new Variable(variable, varTypeString, null));
-
-            return variable;
-        }
-    }
-
 }
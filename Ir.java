@@ -0,0 +1,322 @@
+import CPP.Absyn.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Intermediate representation built by the IrBuilder from a type checked
+ * program. A function is a control flow graph of basic blocks, and every
+ * value is defined by exactly one instruction (static single assignment).
+ * Where ways join, the values that depend on the way taken are phi
+ * instructions at the start of the block, one argument per predecessor
+ * in the order of the preds list. Values are typed with the types of
+ * the TypeChecker, the last instruction of a block is its terminator.
+ */
+public class Ir {
+
+    public static final Type BOOL   = new Type_bool();
+    public static final Type INT    = new Type_int();
+    public static final Type DOUBLE = new Type_double();
+    public static final Type VOID   = new Type_void();
+
+    public enum Op {
+        CONST,                  // constant
+        PARAM,                  // constant is the index of the parameter
+        ADD, SUB, MUL, DIV,     // args a, b
+        LT, GT, LE, GE, EQ, NE, // args a, b, the type is bool
+        CALL,                   // callee, args
+        PHI,                    // one arg per predecessor
+        JUMP,                   // targets next
+        BRANCH,                 // args condition, targets then, else
+        RETURN                  // args the value, none in a void function
+    }
+
+    /**the functions of a program by name*/
+    public static final class Program {
+        public final Map<String, Function> functions = new TreeMap<>();
+    }
+
+    public static final class Function {
+        public final String name;
+        public final Type type;
+        public final List<Instr> params = new ArrayList<>();
+        public final List<Block> blocks = new ArrayList<>();
+        int nextValue;
+        int nextBlock;
+
+        Function(String name, Type type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        public Block entry() {
+            return blocks.get(0);
+        }
+
+        public Block newBlock() {
+            Block b = new Block(nextBlock++);
+            blocks.add(b);
+            return b;
+        }
+
+        /**values are numbered from 0, the interpreter keeps them in arrays*/
+        public int values() {
+            return nextValue;
+        }
+    }
+
+    public static final class Block {
+        public final int id;
+        public final List<Block> preds = new ArrayList<>();
+        public final List<Instr> phis = new ArrayList<>();
+        public final List<Instr> instrs = new ArrayList<>();
+
+        Block(int id) {
+            this.id = id;
+        }
+
+        public Instr terminator() {
+            Instr last = instrs.isEmpty() ? null : instrs.get(instrs.size() - 1);
+            return last != null && last.isTerminator() ? last : null;
+        }
+
+        public List<Block> successors() {
+            Instr t = terminator();
+            List<Block> succs = new ArrayList<>();
+            if (t != null) {
+                for (Block b : t.targets) {
+                    succs.add(b);
+                }
+            }
+            return succs;
+        }
+
+        public String toString() {
+            return "b" + id;
+        }
+    }
+
+    public static final class Instr {
+        public final int id;
+        public Op op;
+        public final Type type;
+        public Instr[] args;
+        public Object constant;
+        public String callee;
+        public Block[] targets = new Block[0];
+        public Block block;
+
+        Instr(int id, Op op, Type type, Instr... args) {
+            this.id = id;
+            this.op = op;
+            this.type = type;
+            this.args = args;
+        }
+
+        public boolean isTerminator() {
+            return op == Op.JUMP || op == Op.BRANCH || op == Op.RETURN;
+        }
+
+        /**whether running it can be seen or can fail, which
+         * keeps it even when nothing uses its value*/
+        public boolean hasEffects() {
+            if (isTerminator() || op == Op.CALL) {
+                return true;
+            }
+            // integer division by zero throws
+            return op == Op.DIV && type.equals(INT)
+                    && !(args[1].op == Op.CONST && (Integer) args[1].constant != 0);
+        }
+
+        public String toString() {
+            return "v" + id;
+        }
+    }
+
+    ////////////////////////////// Making instructions //////////////////////////////
+
+    public static Instr constant(Function f, Type type, Object value) {
+        Instr i = new Instr(f.nextValue++, Op.CONST, type);
+        i.constant = value;
+        return i;
+    }
+
+    public static Instr instr(Function f, Op op, Type type, Instr... args) {
+        return new Instr(f.nextValue++, op, type, args);
+    }
+
+    /**the constant a variable of the type holds before it is assigned*/
+    public static Object zero(Type type) {
+        if (type.equals(DOUBLE)) {
+            return 0.0;
+        }
+        return type.equals(BOOL) ? (Object) Boolean.FALSE : (Object) 0;
+    }
+
+    ////////////////////////////// Editing the graph //////////////////////////////
+
+    /**replaces every use of a value by another value*/
+    public static void replaceUses(Function f, Instr old, Instr replacement) {
+        for (Block b : f.blocks) {
+            for (Instr i : b.phis) {
+                replaceArgs(i, old, replacement);
+            }
+            for (Instr i : b.instrs) {
+                replaceArgs(i, old, replacement);
+            }
+        }
+    }
+
+    private static void replaceArgs(Instr i, Instr old, Instr replacement) {
+        for (int k = 0; k < i.args.length; k++) {
+            if (i.args[k] == old) {
+                i.args[k] = replacement;
+            }
+        }
+    }
+
+    /**removes the edge from a block to one of its successors,
+     * together with the arguments of the phis for that edge*/
+    public static void removeEdge(Block from, Block to) {
+        int index = to.preds.indexOf(from);
+        to.preds.remove(index);
+        for (Instr phi : to.phis) {
+            Instr[] args = new Instr[phi.args.length - 1];
+            for (int k = 0, n = 0; k < phi.args.length; k++) {
+                if (k != index) {
+                    args[n++] = phi.args[k];
+                }
+            }
+            phi.args = args;
+        }
+    }
+
+    /**drops the blocks the entry block does not reach,
+     * returns whether there were any*/
+    public static boolean removeUnreachable(Function f) {
+        Set<Block> reached = new HashSet<>();
+        LinkedList<Block> work = new LinkedList<>();
+        work.add(f.entry());
+        reached.add(f.entry());
+        while (!work.isEmpty()) {
+            for (Block s : work.removeFirst().successors()) {
+                if (reached.add(s)) {
+                    work.add(s);
+                }
+            }
+        }
+        if (reached.size() == f.blocks.size()) {
+            return false;
+        }
+        for (Block b : new ArrayList<>(f.blocks)) {
+            if (!reached.contains(b)) {
+                for (Block s : b.successors()) {
+                    if (reached.contains(s)) {
+                        removeEdge(b, s);
+                    }
+                }
+            }
+        }
+        f.blocks.retainAll(reached);
+        return true;
+    }
+
+    ////////////////////////////// Checking //////////////////////////////
+
+    /**checks the shape of a function after a pass: every block ends
+     * with its only terminator, phis have an argument per predecessor,
+     * edges are recorded on both ends and arguments are defined*/
+    public static void verify(Function f) {
+        Set<Instr> defined = new HashSet<>(f.params);
+        for (Block b : f.blocks) {
+            defined.addAll(b.phis);
+            defined.addAll(b.instrs);
+        }
+        for (Block b : f.blocks) {
+            if (b.terminator() == null) {
+                throw new RuntimeException("ir: " + f.name + " " + b + " has no terminator");
+            }
+            for (Block s : b.successors()) {
+                if (!s.preds.contains(b) || !f.blocks.contains(s)) {
+                    throw new RuntimeException("ir: " + f.name + " edge " + b + " -> " + s + " is broken");
+                }
+            }
+            for (Block p : b.preds) {
+                if (!p.successors().contains(b)) {
+                    throw new RuntimeException("ir: " + f.name + " edge " + p + " -> " + b + " is broken");
+                }
+            }
+            for (Instr phi : b.phis) {
+                if (phi.op != Op.PHI || phi.args.length != b.preds.size()) {
+                    throw new RuntimeException("ir: " + f.name + " phi " + phi + " does not match " + b);
+                }
+            }
+            for (int k = 0; k < b.instrs.size(); k++) {
+                Instr i = b.instrs.get(k);
+                if (i.isTerminator() != (k == b.instrs.size() - 1) || i.op == Op.PHI) {
+                    throw new RuntimeException("ir: " + f.name + " " + i + " is out of place in " + b);
+                }
+            }
+            List<Instr> all = new ArrayList<>(b.phis);
+            all.addAll(b.instrs);
+            for (Instr i : all) {
+                for (Instr arg : i.args) {
+                    if (!defined.contains(arg)) {
+                        throw new RuntimeException("ir: " + f.name + " " + i + " uses the undefined " + arg);
+                    }
+                }
+            }
+        }
+    }
+
+    ////////////////////////////// Printing //////////////////////////////
+
+    public static String print(Program p) {
+        StringBuilder s = new StringBuilder();
+        for (Function f : p.functions.values()) {
+            s.append(print(f));
+        }
+        return s.toString();
+    }
+
+    public static String print(Function f) {
+        StringBuilder s = new StringBuilder();
+        s.append(f.name).append(f.params).append(":\n");
+        for (Block b : f.blocks) {
+            s.append("  ").append(b).append(" <- ").append(b.preds).append('\n');
+            for (Instr i : b.phis) {
+                s.append("    ").append(print(i)).append('\n');
+            }
+            for (Instr i : b.instrs) {
+                s.append("    ").append(print(i)).append('\n');
+            }
+        }
+        return s.toString();
+    }
+
+    private static String print(Instr i) {
+        StringBuilder s = new StringBuilder();
+        if (!i.type.equals(VOID) && !i.isTerminator()) {
+            s.append(i).append(" = ");
+        }
+        s.append(i.op.name().toLowerCase());
+        if (i.op == Op.CONST || i.op == Op.PARAM) {
+            s.append(' ').append(i.constant);
+        }
+        if (i.callee != null) {
+            s.append(' ').append(i.callee);
+        }
+        for (Instr arg : i.args) {
+            s.append(' ').append(arg);
+        }
+        for (Block b : i.targets) {
+            s.append(' ').append(b);
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,50 @@
+import java.util.ArrayList;
+
+/**
+ * Merges a block into the block before it when that one jumps to it
+ * and nothing else does, so a chain of blocks left by folding branches
+ * runs without the jumps in between. The phis of the merged block have
+ * one argument, which takes their place.
+ */
+public class IrBlockMerger implements IrPass {
+
+    public String name() {
+        return "merge";
+    }
+
+    public boolean run(Ir.Function f) {
+        boolean changed = false;
+        for (boolean progress = true; progress; ) {
+            progress = false;
+            for (Ir.Block b : new ArrayList<>(f.blocks)) {
+                Ir.Instr jump = b.terminator();
+                if (jump.op != Ir.Op.JUMP) {
+                    continue;
+                }
+                Ir.Block next = jump.targets[0];
+                if (next == b || next == f.entry() || next.preds.size() != 1) {
+                    continue;
+                }
+
+                for (Ir.Instr phi : next.phis) {
+                    Ir.replaceUses(f, phi, phi.args[0]);
+                }
+                b.instrs.remove(jump);
+                for (Ir.Instr i : next.instrs) {
+                    i.block = b;
+                    b.instrs.add(i);
+                }
+                // the successors keep the position of the edge,
+                // so the arguments of their phis stay in place
+                for (Ir.Block s : next.successors()) {
+                    s.preds.set(s.preds.indexOf(next), b);
+                }
+                f.blocks.remove(next);
+                progress = true;
+                break;
+            }
+            changed |= progress;
+        }
+        return changed;
+    }
+}
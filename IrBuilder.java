@@ -0,0 +1,484 @@
+import CPP.Absyn.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Builds the SSA form of a type checked program, run after the
+ * TypeChecker. Variables are numbered by scope so that a name hidden
+ * by an inner block is another variable. The value of a variable in
+ * a block is looked up through the predecessors the first time it is
+ * read there, a block whose predecessors are not all known yet gets a
+ * phi that is completed once they are (Braun et al., simple and
+ * efficient construction of SSA form). A phi whose arguments are all
+ * one value besides itself is replaced by that value.
+ */
+public class IrBuilder {
+
+    private final String PRINT_INT = "printInt";
+    private final String PRINT_DOUBLE = "printDouble";
+    private final String READ_INT = "readInt";
+    private final String READ_DOUBLE = "readDouble";
+
+    private final Map<String, DFun> definitions = new TreeMap<>();
+
+    // state of the function being built
+    private Ir.Function function;
+    private Ir.Block current;
+    private final LinkedList<Map<String, Integer>> scopes = new LinkedList<>();
+    private final List<Type> variableTypes = new ArrayList<>();
+    private final List<Map<Ir.Block, Ir.Instr>> definition = new ArrayList<>();
+    private final Set<Ir.Block> sealed = new HashSet<>();
+    private final Map<Ir.Block, Map<Integer, Ir.Instr>> incompletePhis = new HashMap<>();
+    // phis that were replaced, by what they were replaced with
+    private final Map<Ir.Instr, Ir.Instr> replaced = new HashMap<>();
+
+    private final StmBuilder stmBuilder = new StmBuilder();
+    private final ExpBuilder expBuilder = new ExpBuilder();
+
+
+    public Ir.Program build(Program p) {
+        for (Def def : ((PDefs) p).listdef_) {
+            definitions.put(((DFun) def).id_, (DFun) def);
+        }
+        Ir.Program program = new Ir.Program();
+        for (DFun dFun : definitions.values()) {
+            program.functions.put(dFun.id_, buildFunction(dFun));
+        }
+        return program;
+    }
+
+
+    ////////////////////////////// Functions //////////////////////////////
+
+    private Ir.Function buildFunction(DFun dFun) {
+        function = new Ir.Function(dFun.id_, dFun.type_);
+        scopes.clear();
+        variableTypes.clear();
+        definition.clear();
+        sealed.clear();
+        incompletePhis.clear();
+        replaced.clear();
+
+        current = function.newBlock();
+        sealed.add(current);
+        scopes.push(new HashMap<>());
+        for (Arg arg : dFun.listarg_) {
+            ADecl decl = (ADecl) arg;
+            Ir.Instr param = Ir.instr(function, Ir.Op.PARAM, decl.type_);
+            param.constant = function.params.size();
+            function.params.add(param);
+            write(declare(decl.id_, decl.type_), param);
+        }
+
+        for (Stm stm : dFun.liststm_) {
+            stm.accept(stmBuilder, null);
+        }
+
+        // a function may run off its end, return the default value
+        if (dFun.type_.equals(Ir.VOID)) {
+            emit(Ir.instr(function, Ir.Op.RETURN, Ir.VOID));
+        } else {
+            emit(Ir.instr(function, Ir.Op.RETURN, Ir.VOID, constant(dFun.type_, Ir.zero(dFun.type_))));
+        }
+
+        // arguments that were read before a phi was replaced
+        for (Ir.Block b : function.blocks) {
+            for (Ir.Instr i : b.phis) {
+                resolveArgs(i);
+            }
+            for (Ir.Instr i : b.instrs) {
+                resolveArgs(i);
+            }
+        }
+        Ir.removeUnreachable(function);
+        return function;
+    }
+
+    private void resolveArgs(Ir.Instr i) {
+        for (int k = 0; k < i.args.length; k++) {
+            i.args[k] = resolve(i.args[k]);
+        }
+    }
+
+    private Ir.Instr resolve(Ir.Instr value) {
+        while (replaced.containsKey(value)) {
+            value = replaced.get(value);
+        }
+        return value;
+    }
+
+    ////////////////////////////// Blocks //////////////////////////////
+
+    private Ir.Instr emit(Ir.Instr i) {
+        i.block = current;
+        current.instrs.add(i);
+        return i;
+    }
+
+    private Ir.Instr constant(Type type, Object value) {
+        return emit(Ir.constant(function, type, value));
+    }
+
+    private void jump(Ir.Block target) {
+        Ir.Instr jump = emit(Ir.instr(function, Ir.Op.JUMP, Ir.VOID));
+        jump.targets = new Ir.Block[] { target };
+        target.preds.add(current);
+    }
+
+    private void branch(Ir.Instr condition, Ir.Block then, Ir.Block otherwise) {
+        Ir.Instr branch = emit(Ir.instr(function, Ir.Op.BRANCH, Ir.VOID, condition));
+        branch.targets = new Ir.Block[] { then, otherwise };
+        then.preds.add(current);
+        otherwise.preds.add(current);
+    }
+
+    // code after a return goes to a block nothing jumps to,
+    // it is removed when the function is done
+    private void terminated() {
+        current = function.newBlock();
+        sealed.add(current);
+    }
+
+    /**all predecessors of the block are known now, the phis
+     * that waited for them get their arguments*/
+    private void seal(Ir.Block block) {
+        Map<Integer, Ir.Instr> phis = incompletePhis.remove(block);
+        if (phis != null) {
+            for (Map.Entry<Integer, Ir.Instr> phi : phis.entrySet()) {
+                addPhiArgs(phi.getKey(), phi.getValue());
+            }
+        }
+        sealed.add(block);
+    }
+
+    ////////////////////////////// Variables //////////////////////////////
+
+    private int declare(String id, Type type) {
+        int v = variableTypes.size();
+        variableTypes.add(type);
+        definition.add(new HashMap<>());
+        scopes.peek().put(id, v);
+        return v;
+    }
+
+    private int lookup(String id) {
+        for (Map<String, Integer> scope : scopes) {
+            Integer v = scope.get(id);
+            if (v != null) {
+                return v;
+            }
+        }
+        throw new RuntimeException("ir: unknown variable " + id);
+    }
+
+    private void write(int variable, Ir.Instr value) {
+        definition.get(variable).put(current, value);
+    }
+
+    private Ir.Instr read(int variable, Ir.Block block) {
+        Ir.Instr value = definition.get(variable).get(block);
+        if (value != null) {
+            return resolve(value);
+        }
+
+        Type type = variableTypes.get(variable);
+        if (!sealed.contains(block)) {
+            value = phi(block, type);
+            incompletePhis.computeIfAbsent(block, b -> new TreeMap<>()).put(variable, value);
+        } else if (block.preds.isEmpty()) {
+            // only in code that never runs
+            value = Ir.constant(function, type, Ir.zero(type));
+            value.block = block;
+            block.instrs.add(0, value);
+        } else if (block.preds.size() == 1) {
+            value = read(variable, block.preds.get(0));
+        } else {
+            // the phi breaks cycles through loops
+            Ir.Instr phi = phi(block, type);
+            definition.get(variable).put(block, phi);
+            value = addPhiArgs(variable, phi);
+        }
+        definition.get(variable).put(block, value);
+        return value;
+    }
+
+    private Ir.Instr phi(Ir.Block block, Type type) {
+        Ir.Instr phi = Ir.instr(function, Ir.Op.PHI, type);
+        phi.block = block;
+        block.phis.add(phi);
+        return phi;
+    }
+
+    private Ir.Instr addPhiArgs(int variable, Ir.Instr phi) {
+        Ir.Block block = phi.block;
+        Ir.Instr[] args = new Ir.Instr[block.preds.size()];
+        for (int k = 0; k < args.length; k++) {
+            args[k] = read(variable, block.preds.get(k));
+        }
+        phi.args = args;
+        return removeTrivial(block, phi);
+    }
+
+    private Ir.Instr removeTrivial(Ir.Block block, Ir.Instr phi) {
+        Ir.Instr same = null;
+        for (Ir.Instr arg : phi.args) {
+            arg = resolve(arg);
+            if (arg == same || arg == phi) {
+                continue;
+            }
+            if (same != null) {
+                return phi;
+            }
+            same = arg;
+        }
+        if (same == null) {
+            // a variable that is read where it was never written
+            // can only be in a loop that never runs
+            same = Ir.constant(function, phi.type, Ir.zero(phi.type));
+            same.block = function.entry();
+            function.entry().instrs.add(0, same);
+        }
+        block.phis.remove(phi);
+        replaced.put(phi, same);
+        return same;
+    }
+
+    ////////////////////////////// Statements //////////////////////////////
+
+    public class StmBuilder implements Stm.Visitor<Void, Void> {
+
+        public Void visit(SExp p, Void arg) {
+            build(p.exp_);
+            return null;
+        }
+
+        public Void visit(SDecls p, Void arg) {
+            for (String id : p.listid_) {
+                write(declare(id, p.type_), constant(p.type_, Ir.zero(p.type_)));
+            }
+            return null;
+        }
+
+        public Void visit(SInit p, Void arg) {
+            Ir.Instr value = build(p.exp_);
+            write(declare(p.id_, p.type_), value);
+            return null;
+        }
+
+        public Void visit(SReturn p, Void arg) {
+            Ir.Instr value = build(p.exp_);
+            if (function.type.equals(Ir.VOID)) {
+                emit(Ir.instr(function, Ir.Op.RETURN, Ir.VOID));
+            } else {
+                emit(Ir.instr(function, Ir.Op.RETURN, Ir.VOID, value));
+            }
+            terminated();
+            return null;
+        }
+
+        public Void visit(SWhile p, Void arg) {
+            Ir.Block header = function.newBlock();
+            Ir.Block body = function.newBlock();
+            Ir.Block exit = function.newBlock();
+            jump(header);
+
+            // the header is sealed once the body jumped back to it
+            current = header;
+            branch(build(p.exp_), body, exit);
+            seal(body);
+            current = body;
+            scoped(p.stm_);
+            jump(header);
+            seal(header);
+            seal(exit);
+            current = exit;
+            return null;
+        }
+
+        public Void visit(SBlock p, Void arg) {
+            scopes.push(new HashMap<>());
+            for (Stm stm : p.liststm_) {
+                stm.accept(this, arg);
+            }
+            scopes.pop();
+            return null;
+        }
+
+        public Void visit(SIfElse p, Void arg) {
+            Ir.Block then = function.newBlock();
+            Ir.Block otherwise = function.newBlock();
+            Ir.Block join = function.newBlock();
+            branch(build(p.exp_), then, otherwise);
+            seal(then);
+            seal(otherwise);
+
+            current = then;
+            scoped(p.stm_1);
+            jump(join);
+            current = otherwise;
+            scoped(p.stm_2);
+            jump(join);
+            seal(join);
+            current = join;
+            return null;
+        }
+
+        // a statement that stands alone is a scope of its own
+        private void scoped(Stm s) {
+            scopes.push(new HashMap<>());
+            s.accept(this, null);
+            scopes.pop();
+        }
+    }
+
+    ////////////////////////////// Expressions //////////////////////////////
+
+    private Ir.Instr build(Exp exp) {
+        return exp.accept(expBuilder, null);
+    }
+
+    public class ExpBuilder implements Exp.Visitor<Ir.Instr, Void> {
+
+        public Ir.Instr visit(ETrue p, Void arg) {
+            return constant(Ir.BOOL, Boolean.TRUE);
+        }
+
+        public Ir.Instr visit(EFalse p, Void arg) {
+            return constant(Ir.BOOL, Boolean.FALSE);
+        }
+
+        public Ir.Instr visit(EInt p, Void arg) {
+            return constant(Ir.INT, p.integer_);
+        }
+
+        public Ir.Instr visit(EDouble p, Void arg) {
+            return constant(Ir.DOUBLE, p.double_);
+        }
+
+        public Ir.Instr visit(EId p, Void arg) {
+            return read(lookup(p.id_), current);
+        }
+
+        public Ir.Instr visit(EApp p, Void arg) {
+            Ir.Instr[] args = new Ir.Instr[p.listexp_.size()];
+            int k = 0;
+            for (Exp e : p.listexp_) {
+                args[k++] = build(e);
+            }
+            Ir.Instr call = emit(Ir.instr(function, Ir.Op.CALL, returnType(p.id_), args));
+            call.callee = p.id_;
+            return call;
+        }
+
+        private Type returnType(String id) {
+            if (id.equals(PRINT_INT) || id.equals(PRINT_DOUBLE)) {
+                return Ir.VOID;
+            }
+            if (id.equals(READ_INT)) {
+                return Ir.INT;
+            }
+            if (id.equals(READ_DOUBLE)) {
+                return Ir.DOUBLE;
+            }
+            return definitions.get(id).type_;
+        }
+
+        public Ir.Instr visit(EPostIncr p, Void arg) {
+            return increment(p.exp_, 1, false);
+        }
+
+        public Ir.Instr visit(EPostDecr p, Void arg) {
+            return increment(p.exp_, -1, false);
+        }
+
+        public Ir.Instr visit(EPreIncr p, Void arg) {
+            return increment(p.exp_, 1, true);
+        }
+
+        public Ir.Instr visit(EPreDecr p, Void arg) {
+            return increment(p.exp_, -1, true);
+        }
+
+        private Ir.Instr increment(Exp target, int delta, boolean pre) {
+            int variable = lookup(((EId) target).id_);
+            Ir.Instr old = read(variable, current);
+            Ir.Instr step = old.type.equals(Ir.DOUBLE)
+                    ? constant(Ir.DOUBLE, (double) delta)
+                    : constant(Ir.INT, delta);
+            Ir.Instr updated = emit(Ir.instr(function, Ir.Op.ADD, old.type, old, step));
+            write(variable, updated);
+            return pre ? updated : old;
+        }
+
+        public Ir.Instr visit(EAss p, Void arg) {
+            Ir.Instr value = build(p.exp_2);
+            write(lookup(((EId) p.exp_1).id_), value);
+            return value;
+        }
+
+        public Ir.Instr visit(ETimes p, Void arg) { return arithmetic(Ir.Op.MUL, p.exp_1, p.exp_2); }
+        public Ir.Instr visit(EDiv p, Void arg)   { return arithmetic(Ir.Op.DIV, p.exp_1, p.exp_2); }
+        public Ir.Instr visit(EPlus p, Void arg)  { return arithmetic(Ir.Op.ADD, p.exp_1, p.exp_2); }
+        public Ir.Instr visit(EMinus p, Void arg) { return arithmetic(Ir.Op.SUB, p.exp_1, p.exp_2); }
+        public Ir.Instr visit(ELt p, Void arg)    { return comparison(Ir.Op.LT, p.exp_1, p.exp_2); }
+        public Ir.Instr visit(EGt p, Void arg)    { return comparison(Ir.Op.GT, p.exp_1, p.exp_2); }
+        public Ir.Instr visit(ELtEq p, Void arg)  { return comparison(Ir.Op.LE, p.exp_1, p.exp_2); }
+        public Ir.Instr visit(EGtEq p, Void arg)  { return comparison(Ir.Op.GE, p.exp_1, p.exp_2); }
+        public Ir.Instr visit(EEq p, Void arg)    { return comparison(Ir.Op.EQ, p.exp_1, p.exp_2); }
+        public Ir.Instr visit(ENEq p, Void arg)   { return comparison(Ir.Op.NE, p.exp_1, p.exp_2); }
+
+        private Ir.Instr arithmetic(Ir.Op op, Exp e1, Exp e2) {
+            Ir.Instr a = build(e1);
+            Ir.Instr b = build(e2);
+            return emit(Ir.instr(function, op, a.type, a, b));
+        }
+
+        private Ir.Instr comparison(Ir.Op op, Exp e1, Exp e2) {
+            Ir.Instr a = build(e1);
+            Ir.Instr b = build(e2);
+            return emit(Ir.instr(function, op, Ir.BOOL, a, b));
+        }
+
+        public Ir.Instr visit(EAnd p, Void arg) {
+            return shortCircuit(p.exp_1, p.exp_2, false);
+        }
+
+        public Ir.Instr visit(EOr p, Void arg) {
+            return shortCircuit(p.exp_1, p.exp_2, true);
+        }
+
+        // the right operand runs in a block of its own, the value
+        // is a phi of the left operand's decision and the right operand
+        private Ir.Instr shortCircuit(Exp e1, Exp e2, boolean decidesOn) {
+            Ir.Block right = function.newBlock();
+            Ir.Block join = function.newBlock();
+            Ir.Instr a = build(e1);
+            Ir.Block left = current;
+            if (decidesOn) {
+                branch(a, join, right);
+            } else {
+                branch(a, right, join);
+            }
+            seal(right);
+            current = right;
+            Ir.Instr b = build(e2);
+            Ir.Block rightEnd = current;
+            jump(join);
+            seal(join);
+
+            current = join;
+            Ir.Instr phi = phi(join, Ir.BOOL);
+            phi.args = new Ir.Instr[2];
+            phi.args[join.preds.indexOf(left)] = a;
+            phi.args[join.preds.indexOf(rightEnd)] = b;
+            return phi;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Constant folding on the SSA form. An instruction whose arguments are
+ * all constants becomes the constant it computes, the way the
+ * Interpreter computes it, except integer division by zero which is
+ * left to fail when the program runs. A phi whose arguments are one
+ * value is that value, and a branch on a constant becomes a jump, the
+ * blocks no longer reached are dropped. This repeats until nothing
+ * changes, since every step may give the others more to do.
+ */
+public class IrConstantFolder implements IrPass {
+
+    public String name() {
+        return "fold";
+    }
+
+    public boolean run(Ir.Function f) {
+        boolean changed = false;
+        for (boolean progress = true; progress; ) {
+            progress = false;
+            for (Ir.Block b : f.blocks) {
+                for (Ir.Instr phi : new ArrayList<>(b.phis)) {
+                    Ir.Instr same = sameArgs(phi);
+                    if (same != null) {
+                        Ir.replaceUses(f, phi, same);
+                        b.phis.remove(phi);
+                        progress = true;
+                    }
+                }
+                for (Ir.Instr i : b.instrs) {
+                    Object value = fold(i);
+                    if (value != null) {
+                        i.op = Ir.Op.CONST;
+                        i.constant = value;
+                        i.args = new Ir.Instr[0];
+                        progress = true;
+                    }
+                }
+                Ir.Instr t = b.terminator();
+                if (t.op == Ir.Op.BRANCH && t.args[0].op == Ir.Op.CONST && t.targets[0] != t.targets[1]) {
+                    boolean taken = (Boolean) t.args[0].constant;
+                    Ir.removeEdge(b, t.targets[taken ? 1 : 0]);
+                    t.op = Ir.Op.JUMP;
+                    t.targets = new Ir.Block[] { t.targets[taken ? 0 : 1] };
+                    t.args = new Ir.Instr[0];
+                    progress = true;
+                }
+            }
+            progress |= Ir.removeUnreachable(f);
+            changed |= progress;
+        }
+        return changed;
+    }
+
+    // the one value the arguments of a phi are besides itself
+    private static Ir.Instr sameArgs(Ir.Instr phi) {
+        Ir.Instr same = null;
+        for (Ir.Instr arg : phi.args) {
+            if (arg == phi || arg == same) {
+                continue;
+            }
+            if (same != null) {
+                return null;
+            }
+            same = arg;
+        }
+        return same;
+    }
+
+    // the constant an instruction computes, or null
+    private static Object fold(Ir.Instr i) {
+        if (i.args.length != 2 || i.op == Ir.Op.CALL || i.op == Ir.Op.PHI) {
+            return null;
+        }
+        Ir.Instr a = i.args[0];
+        Ir.Instr b = i.args[1];
+        if (a.op != Ir.Op.CONST || b.op != Ir.Op.CONST) {
+            return null;
+        }
+        if (a.constant instanceof Integer) {
+            int x = (Integer) a.constant;
+            int y = (Integer) b.constant;
+            switch (i.op) {
+                case ADD: return x + y;
+                case SUB: return x - y;
+                case MUL: return x * y;
+                case DIV: return y == 0 ? null : (Object) (x / y);
+                case LT:  return x < y;
+                case GT:  return x > y;
+                case LE:  return x <= y;
+                case GE:  return x >= y;
+                case EQ:  return x == y;
+                case NE:  return x != y;
+                default:  return null;
+            }
+        }
+        if (a.constant instanceof Double) {
+            double x = (Double) a.constant;
+            double y = (Double) b.constant;
+            switch (i.op) {
+                case ADD: return x + y;
+                case SUB: return x - y;
+                case MUL: return x * y;
+                case DIV: return x / y;
+                case LT:  return x < y;
+                case GT:  return x > y;
+                case LE:  return x <= y;
+                case GE:  return x >= y;
+                // equality of doubles follows Double.equals like the Interpreter
+                case EQ:  return a.constant.equals(b.constant);
+                case NE:  return !a.constant.equals(b.constant);
+                default:  return null;
+            }
+        }
+        switch (i.op) {
+            case EQ: return a.constant.equals(b.constant);
+            case NE: return !a.constant.equals(b.constant);
+            default: return null;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+
+/**
+ * Removes the instructions whose values are never used. The
+ * instructions with effects are live, and so is every value a live
+ * instruction uses, the rest goes. Phis that only use each other
+ * around a loop are removed together.
+ */
+public class IrDeadValueEliminator implements IrPass {
+
+    public String name() {
+        return "dce";
+    }
+
+    public boolean run(Ir.Function f) {
+        Set<Ir.Instr> live = new HashSet<>();
+        LinkedList<Ir.Instr> work = new LinkedList<>();
+        for (Ir.Block b : f.blocks) {
+            for (Ir.Instr i : b.instrs) {
+                if (i.hasEffects() && live.add(i)) {
+                    work.add(i);
+                }
+            }
+        }
+        while (!work.isEmpty()) {
+            for (Ir.Instr arg : work.removeFirst().args) {
+                if (live.add(arg)) {
+                    work.add(arg);
+                }
+            }
+        }
+
+        boolean changed = false;
+        for (Ir.Block b : f.blocks) {
+            changed |= b.phis.retainAll(live);
+            changed |= b.instrs.retainAll(live);
+        }
+        return changed;
+    }
+}
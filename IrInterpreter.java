@@ -0,0 +1,181 @@
+import java.util.List;
+
+/**
+ * Runs a program in the SSA form of the IrBuilder. Every value of a
+ * function has a fixed index, a frame keeps the ints and booleans in
+ * one array and the doubles in another, so values are never boxed.
+ * The phis of a block take their arguments for the edge the block was
+ * entered by, all at once before any of them is written.
+ */
+public class IrInterpreter {
+
+    private final String MAIN_FUNC = "main";
+
+    private final String PRINT_INT = "printInt";
+    private final String PRINT_DOUBLE = "printDouble";
+    private final String READ_INT = "readInt";
+    private final String READ_DOUBLE = "readDouble";
+
+    private final Ir.Program program;
+    private final ProgramIO io;
+
+    // result of the last call, by its type
+    private int intResult;
+    private double doubleResult;
+
+    public IrInterpreter(Ir.Program program) {
+        this(program, new ProgramIO());
+    }
+
+    public IrInterpreter(Ir.Program program, ProgramIO io) {
+        this.program = program;
+        this.io = io;
+    }
+
+    public void run() {
+        Ir.Function main = program.functions.get(MAIN_FUNC);
+        execute(main, new int[main.values()], new double[main.values()]);
+    }
+
+    /**runs the function on a frame whose parameters are set,
+     * the result is left in intResult or doubleResult*/
+    private void execute(Ir.Function f, int[] ints, double[] doubles) {
+        Ir.Block block = f.entry();
+        Ir.Block from = null;
+        int[] phiInts = new int[0];
+        double[] phiDoubles = new double[0];
+
+        for (;;) {
+            List<Ir.Instr> phis = block.phis;
+            if (!phis.isEmpty()) {
+                int edge = block.preds.indexOf(from);
+                if (phiInts.length < phis.size()) {
+                    phiInts = new int[phis.size()];
+                    phiDoubles = new double[phis.size()];
+                }
+                for (int k = 0; k < phis.size(); k++) {
+                    Ir.Instr arg = phis.get(k).args[edge];
+                    phiInts[k] = ints[arg.id];
+                    phiDoubles[k] = doubles[arg.id];
+                }
+                for (int k = 0; k < phis.size(); k++) {
+                    Ir.Instr phi = phis.get(k);
+                    ints[phi.id] = phiInts[k];
+                    doubles[phi.id] = phiDoubles[k];
+                }
+            }
+
+            for (Ir.Instr i : block.instrs) {
+                Ir.Instr[] a = i.args;
+                boolean isDouble = i.type.equals(Ir.DOUBLE);
+                switch (i.op) {
+                    case CONST:
+                        if (isDouble) {
+                            doubles[i.id] = (Double) i.constant;
+                        } else if (i.type.equals(Ir.BOOL)) {
+                            ints[i.id] = (Boolean) i.constant ? 1 : 0;
+                        } else {
+                            ints[i.id] = (Integer) i.constant;
+                        }
+                        break;
+                    case PARAM:
+                        break;
+                    case ADD:
+                        if (isDouble) doubles[i.id] = doubles[a[0].id] + doubles[a[1].id];
+                        else ints[i.id] = ints[a[0].id] + ints[a[1].id];
+                        break;
+                    case SUB:
+                        if (isDouble) doubles[i.id] = doubles[a[0].id] - doubles[a[1].id];
+                        else ints[i.id] = ints[a[0].id] - ints[a[1].id];
+                        break;
+                    case MUL:
+                        if (isDouble) doubles[i.id] = doubles[a[0].id] * doubles[a[1].id];
+                        else ints[i.id] = ints[a[0].id] * ints[a[1].id];
+                        break;
+                    case DIV:
+                        if (isDouble) doubles[i.id] = doubles[a[0].id] / doubles[a[1].id];
+                        else ints[i.id] = ints[a[0].id] / ints[a[1].id];
+                        break;
+                    case LT:
+                    case GT:
+                    case LE:
+                    case GE:
+                    case EQ:
+                    case NE:
+                        ints[i.id] = compare(i.op, a[0], ints, doubles, a[1]) ? 1 : 0;
+                        break;
+                    case CALL:
+                        call(i, ints, doubles);
+                        break;
+                    case JUMP:
+                        from = block;
+                        block = i.targets[0];
+                        break;
+                    case BRANCH:
+                        from = block;
+                        block = ints[a[0].id] != 0 ? i.targets[0] : i.targets[1];
+                        break;
+                    case RETURN:
+                        if (a.length > 0) {
+                            intResult = ints[a[0].id];
+                            doubleResult = doubles[a[0].id];
+                        }
+                        return;
+                    default:
+                        throw new RuntimeException("ir: cannot run " + i.op + " in " + f.name);
+                }
+            }
+        }
+    }
+
+    private static boolean compare(Ir.Op op, Ir.Instr left, int[] ints, double[] doubles, Ir.Instr right) {
+        if (left.type.equals(Ir.DOUBLE)) {
+            double x = doubles[left.id];
+            double y = doubles[right.id];
+            switch (op) {
+                case LT: return x < y;
+                case GT: return x > y;
+                case LE: return x <= y;
+                case GE: return x >= y;
+                // equality of doubles follows Double.equals like the Interpreter
+                case EQ: return Double.doubleToLongBits(x) == Double.doubleToLongBits(y);
+                default: return Double.doubleToLongBits(x) != Double.doubleToLongBits(y);
+            }
+        }
+        int x = ints[left.id];
+        int y = ints[right.id];
+        switch (op) {
+            case LT: return x < y;
+            case GT: return x > y;
+            case LE: return x <= y;
+            case GE: return x >= y;
+            case EQ: return x == y;
+            default: return x != y;
+        }
+    }
+
+    private void call(Ir.Instr i, int[] ints, double[] doubles) {
+        Ir.Instr[] a = i.args;
+        if (i.callee.equals(PRINT_INT)) {
+            io.printInt(ints[a[0].id]);
+        } else if (i.callee.equals(PRINT_DOUBLE)) {
+            io.printDouble(doubles[a[0].id]);
+        } else if (i.callee.equals(READ_INT)) {
+            ints[i.id] = io.readInt();
+        } else if (i.callee.equals(READ_DOUBLE)) {
+            doubles[i.id] = io.readDouble();
+        } else {
+            Ir.Function callee = program.functions.get(i.callee);
+            int[] calleeInts = new int[callee.values()];
+            double[] calleeDoubles = new double[callee.values()];
+            for (int k = 0; k < a.length; k++) {
+                Ir.Instr param = callee.params.get(k);
+                calleeInts[param.id] = ints[a[k].id];
+                calleeDoubles[param.id] = doubles[a[k].id];
+            }
+            execute(callee, calleeInts, calleeDoubles);
+            ints[i.id] = intResult;
+            doubles[i.id] = doubleResult;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+/**
+ * An optimization of functions in the SSA form of the IrBuilder, run
+ * by the IrPassManager. A pass changes the function it is given in
+ * place and leaves it in a shape Ir.verify accepts.
+ */
+public interface IrPass {
+
+    /**the name the pass is registered and asked for by*/
+    String name();
+
+    /**returns whether the function was changed*/
+    boolean run(Ir.Function f);
+}
@@ -0,0 +1,72 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs optimization passes over a program in SSA form. Passes are
+ * registered by name, and the pipeline is the passes asked for in the
+ * order they were asked for, every function goes through all of them.
+ * After each pass the function is checked with Ir.verify, so a broken
+ * pass fails at once instead of making the program compute nonsense.
+ */
+public class IrPassManager {
+
+    private final Map<String, IrPass> registered = new LinkedHashMap<>();
+    private final List<IrPass> pipeline = new ArrayList<>();
+
+    // functions every pass changed
+    private final Map<String, Integer> changed = new LinkedHashMap<>();
+
+    /**a manager that knows the passes that come with the IR*/
+    public static IrPassManager standard() {
+        IrPassManager manager = new IrPassManager();
+        manager.register(new IrConstantFolder());
+        manager.register(new IrBlockMerger());
+        manager.register(new IrDeadValueEliminator());
+        return manager;
+    }
+
+    public void register(IrPass pass) {
+        registered.put(pass.name(), pass);
+    }
+
+    public List<String> registered() {
+        return new ArrayList<>(registered.keySet());
+    }
+
+    /**appends a registered pass to the pipeline, a pass may run more than once*/
+    public void add(String name) {
+        IrPass pass = registered.get(name);
+        if (pass == null) {
+            throw new RuntimeException("unknown ir pass " + name + ", there are " + registered.keySet());
+        }
+        pipeline.add(pass);
+    }
+
+    /**appends every registered pass in the order they were registered*/
+    public void addAll() {
+        pipeline.addAll(registered.values());
+    }
+
+    public void run(Ir.Program p) {
+        for (Ir.Function f : p.functions.values()) {
+            Ir.verify(f);
+            for (IrPass pass : pipeline) {
+                if (pass.run(f)) {
+                    changed.merge(pass.name(), 1, Integer::sum);
+                }
+                Ir.verify(f);
+            }
+        }
+    }
+
+    public List<String> report() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Integer> pass : changed.entrySet()) {
+            int n = pass.getValue();
+            lines.add("ir pass " + pass.getKey() + " changed " + n + (n == 1 ? " function" : " functions"));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,612 @@
+import CPP.Absyn.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+
+/**
+ * Compiles a type checked program to one JVM class with a static
+ * method per function. Variables become JVM locals of primitive
+ * type, calls become invokestatic, and the builtin functions call
+ * CppRuntime. The class can be written to a runnable jar together
+ * with the runtime classes, or loaded and run directly.
+ */
+public class JvmCompiler {
+
+    private final String MAIN_FUNC = "main";
+
+    private final String PRINT_INT = "printInt";
+    private final String PRINT_DOUBLE = "printDouble";
+    private final String READ_INT = "readInt";
+    private final String READ_DOUBLE = "readDouble";
+
+    private final String RUNTIME = "CppRuntime";
+
+    // classes a compiled program needs at run time
+    private static final String[] RUNTIME_CLASSES = { "CppRuntime", "ProgramIO" };
+
+    public final Type BOOL   = new Type_bool();
+    public final Type INT    = new Type_int();
+    public final Type DOUBLE = new Type_double();
+    public final Type VOID   = new Type_void();
+
+    private final Resolver resolver = new Resolver();
+    private final Map<String, DFun> functions = new TreeMap<>();
+    private ClassWriter cw;
+
+    // state of the method being compiled: the JVM local
+    // and the type of every slot assigned by the Resolver
+    private ClassWriter.MethodWriter mw;
+    private int[] slotLocals;
+    private Type[] slotTypes;
+    private int nextLocal;
+
+    private final StmCompiler stmCompiler = new StmCompiler();
+    private final ExpCompiler expCompiler = new ExpCompiler();
+
+
+    /**the class name used for a source file*/
+    public static String className(String sourceFile) {
+        String name = new File(sourceFile).getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+
+        StringBuilder b = new StringBuilder();
+        for (char c : name.toCharArray()) {
+            b.append(Character.isJavaIdentifierPart(c) ? c : '_');
+        }
+        if (b.length() == 0 || !Character.isJavaIdentifierStart(b.charAt(0))) {
+            b.insert(0, '_');
+        }
+        for (String runtimeClass : RUNTIME_CLASSES) {
+            if (runtimeClass.equals(b.toString())) {
+                b.append("Program");
+            }
+        }
+        return b.toString();
+    }
+
+    /**compiles the program into the bytes of a class file*/
+    public byte[] compile(Program p, String className) {
+        resolver.resolve(p);
+        cw = new ClassWriter(className);
+
+        for (Def def : ((PDefs) p).listdef_) {
+            DFun dFun = (DFun) def;
+            functions.put(dFun.id_, dFun);
+        }
+        for (DFun dFun : functions.values()) {
+            compileFunction(dFun);
+        }
+
+        // the JVM entry point runs the program's main
+        mw = cw.newMethod("main", "([Ljava/lang/String;)V");
+        mw.setMaxLocals(1);
+        mw.invokestatic(className, MAIN_FUNC, descriptor(functions.get(MAIN_FUNC)), 1);
+        mw.op(ClassWriter.POP, -1);
+        mw.op(ClassWriter.RETURN, 0);
+
+        return cw.toByteArray();
+    }
+
+    /**writes a runnable jar with the compiled program and the runtime*/
+    public void writeJar(Program p, String className, File jarFile) throws IOException {
+        byte[] program = compile(p, className);
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, className);
+
+        try (JarOutputStream jar = new JarOutputStream(new FileOutputStream(jarFile), manifest)) {
+            addEntry(jar, className + ".class", program);
+            for (String runtimeClass : RUNTIME_CLASSES) {
+                addEntry(jar, runtimeClass + ".class", readClass(runtimeClass));
+            }
+        }
+    }
+
+    /**compiles the program, loads it and runs its main*/
+    public void run(Program p, String className) {
+        byte[] program = compile(p, className);
+        try {
+            Class<?> c = new Loader().define(className, program);
+            Method main = c.getMethod(MAIN_FUNC);
+            main.invoke(null);
+        } catch (java.lang.reflect.InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException(cause);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static class Loader extends ClassLoader {
+        Loader() {
+            super(JvmCompiler.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    private void addEntry(JarOutputStream jar, String name, byte[] bytes) throws IOException {
+        jar.putNextEntry(new JarEntry(name));
+        jar.write(bytes);
+        jar.closeEntry();
+    }
+
+    private byte[] readClass(String name) throws IOException {
+        try (InputStream in = JvmCompiler.class.getResourceAsStream("/" + name + ".class")) {
+            if (in == null)
+                throw new IOException("runtime class " + name + " not found");
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, n);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+
+    ////////////////////////////// Functions //////////////////////////////
+
+    private String descriptor(Type t) {
+        if (t.equals(INT)) return "I";
+        if (t.equals(DOUBLE)) return "D";
+        if (t.equals(BOOL)) return "Z";
+        return "V";
+    }
+
+    private String descriptor(DFun dFun) {
+        StringBuilder b = new StringBuilder("(");
+        for (Arg arg : dFun.listarg_) {
+            b.append(descriptor(((ADecl) arg).type_));
+        }
+        return b.append(")").append(descriptor(dFun.type_)).toString();
+    }
+
+    private void compileFunction(DFun dFun) {
+        mw = cw.newMethod(dFun.id_, descriptor(dFun));
+        int frameSize = resolver.frameSize(dFun);
+        slotLocals = new int[frameSize];
+        slotTypes = new Type[frameSize];
+        nextLocal = 0;
+
+        // parameters are the first locals of the method
+        for (Arg arg : dFun.listarg_) {
+            ADecl decl = (ADecl) arg;
+            newLocal(resolver.slotOf(decl), decl.type_);
+        }
+
+        for (Stm stm : dFun.liststm_) {
+            stm.accept(stmCompiler, null);
+        }
+
+        // a function may run off its end, return the default value
+        if (dFun.type_.equals(INT) || dFun.type_.equals(BOOL)) {
+            mw.iconst(0);
+            mw.op(ClassWriter.IRETURN, -1);
+        } else if (dFun.type_.equals(DOUBLE)) {
+            mw.dconst(0.0);
+            mw.op(ClassWriter.DRETURN, -2);
+        } else {
+            mw.op(ClassWriter.RETURN, 0);
+        }
+        mw.setMaxLocals(nextLocal);
+    }
+
+    /**every declaration gets a fresh JVM local so that
+     * a local never holds values of different types*/
+    private int newLocal(int slot, Type type) {
+        slotLocals[slot] = nextLocal;
+        slotTypes[slot] = type;
+        nextLocal += type.equals(DOUBLE) ? 2 : 1;
+        return slotLocals[slot];
+    }
+
+    private void load(int slot) {
+        if (slotTypes[slot].equals(DOUBLE)) {
+            mw.local(ClassWriter.DLOAD, slotLocals[slot], 2);
+        } else {
+            mw.local(ClassWriter.ILOAD, slotLocals[slot], 1);
+        }
+    }
+
+    private void store(int slot) {
+        if (slotTypes[slot].equals(DOUBLE)) {
+            mw.local(ClassWriter.DSTORE, slotLocals[slot], -2);
+        } else {
+            mw.local(ClassWriter.ISTORE, slotLocals[slot], -1);
+        }
+    }
+
+    private Exp incrementedVariable(Exp exp) {
+        if (exp instanceof EPostIncr) return ((EPostIncr) exp).exp_;
+        if (exp instanceof EPostDecr) return ((EPostDecr) exp).exp_;
+        if (exp instanceof EPreIncr)  return ((EPreIncr) exp).exp_;
+        if (exp instanceof EPreDecr)  return ((EPreDecr) exp).exp_;
+        return null;
+    }
+
+    private boolean isIntIncrement(Exp exp) {
+        Exp variable = incrementedVariable(exp);
+        return variable != null && slotTypes[resolver.slotOf(variable)].equals(INT);
+    }
+
+    private void pop(Type t) {
+        if (t.equals(DOUBLE)) {
+            mw.op(ClassWriter.POP2, -2);
+        } else if (!t.equals(VOID)) {
+            mw.op(ClassWriter.POP, -1);
+        }
+    }
+
+
+    ////////////////////////////// Statement //////////////////////////////
+
+    public class StmCompiler implements Stm.Visitor<Void,Void> {
+
+        public Void visit(SExp p, Void arg) {
+            Exp exp = p.exp_;
+            // assignments and increments of ints need no result here
+            if (exp instanceof EAss) {
+                int slot = resolver.slotOf(((EAss) exp).exp_1);
+                compileExp(((EAss) exp).exp_2);
+                store(slot);
+            } else if (isIntIncrement(exp)) {
+                int delta = exp instanceof EPostIncr || exp instanceof EPreIncr ? 1 : -1;
+                mw.iinc(slotLocals[resolver.slotOf(incrementedVariable(exp))], delta);
+            } else {
+                pop(compileExp(exp));
+            }
+            return null;
+        }
+
+        public Void visit(SDecls p, Void arg) {
+            int slot = resolver.slotOf(p);
+            for (int i = 0; i < p.listid_.size(); i++) {
+                newLocal(slot + i, p.type_);
+                if (p.type_.equals(DOUBLE)) {
+                    mw.dconst(0.0);
+                } else {
+                    mw.iconst(0);
+                }
+                store(slot + i);
+            }
+            return null;
+        }
+
+        public Void visit(SInit p, Void arg) {
+            compileExp(p.exp_);
+            int slot = resolver.slotOf(p);
+            newLocal(slot, p.type_);
+            store(slot);
+            return null;
+        }
+
+        public Void visit(SReturn p, Void arg) {
+            Type t = compileExp(p.exp_);
+            if (t.equals(DOUBLE)) {
+                mw.op(ClassWriter.DRETURN, -2);
+            } else if (t.equals(VOID)) {
+                mw.op(ClassWriter.RETURN, 0);
+            } else {
+                mw.op(ClassWriter.IRETURN, -1);
+            }
+            return null;
+        }
+
+        public Void visit(SWhile p, Void arg) {
+            ClassWriter.Label test = mw.newLabel();
+            ClassWriter.Label end = mw.newLabel();
+
+            mw.place(test);
+            branch(p.exp_, end, false);
+            p.stm_.accept(this, arg);
+            mw.jump(ClassWriter.GOTO, test, 0);
+            mw.place(end);
+            return null;
+        }
+
+        public Void visit(SBlock p, Void arg) {
+            for (Stm stm : p.liststm_) {
+                stm.accept(this, arg);
+            }
+            return null;
+        }
+
+        public Void visit(SIfElse p, Void arg) {
+            ClassWriter.Label otherwise = mw.newLabel();
+            ClassWriter.Label end = mw.newLabel();
+
+            branch(p.exp_, otherwise, false);
+            p.stm_1.accept(this, arg);
+            mw.jump(ClassWriter.GOTO, end, 0);
+            mw.place(otherwise);
+            p.stm_2.accept(this, arg);
+            mw.place(end);
+            return null;
+        }
+    }
+
+
+    ////////////////////////////// Conditions //////////////////////////////
+
+    /**jumps to target if the boolean expression evaluates
+     * to the given value, falls through otherwise*/
+    private void branch(Exp exp, ClassWriter.Label target, boolean when) {
+        if (exp instanceof ETrue || exp instanceof EFalse) {
+            if ((exp instanceof ETrue) == when) {
+                mw.jump(ClassWriter.GOTO, target, 0);
+            }
+        } else if (exp instanceof EAnd) {
+            EAnd e = (EAnd) exp;
+            if (when) {
+                ClassWriter.Label skip = mw.newLabel();
+                branch(e.exp_1, skip, false);
+                branch(e.exp_2, target, true);
+                mw.place(skip);
+            } else {
+                branch(e.exp_1, target, false);
+                branch(e.exp_2, target, false);
+            }
+        } else if (exp instanceof EOr) {
+            EOr e = (EOr) exp;
+            if (when) {
+                branch(e.exp_1, target, true);
+                branch(e.exp_2, target, true);
+            } else {
+                ClassWriter.Label skip = mw.newLabel();
+                branch(e.exp_1, skip, true);
+                branch(e.exp_2, target, false);
+                mw.place(skip);
+            }
+        } else if (exp instanceof ELt) {
+            compare(((ELt) exp).exp_1, ((ELt) exp).exp_2, ClassWriter.IFLT, ClassWriter.DCMPG, target, when);
+        } else if (exp instanceof ELtEq) {
+            compare(((ELtEq) exp).exp_1, ((ELtEq) exp).exp_2, ClassWriter.IFLE, ClassWriter.DCMPG, target, when);
+        } else if (exp instanceof EGt) {
+            compare(((EGt) exp).exp_1, ((EGt) exp).exp_2, ClassWriter.IFGT, ClassWriter.DCMPL, target, when);
+        } else if (exp instanceof EGtEq) {
+            compare(((EGtEq) exp).exp_1, ((EGtEq) exp).exp_2, ClassWriter.IFGE, ClassWriter.DCMPL, target, when);
+        } else if (exp instanceof EEq) {
+            equality(((EEq) exp).exp_1, ((EEq) exp).exp_2, target, when);
+        } else if (exp instanceof ENEq) {
+            equality(((ENEq) exp).exp_1, ((ENEq) exp).exp_2, target, !when);
+        } else {
+            compileExp(exp);
+            mw.jump(when ? ClassWriter.IFNE : ClassWriter.IFEQ, target, -1);
+        }
+    }
+
+    // opposite conditions of IFEQ .. IFLE
+    private int negate(int ifOpcode) {
+        switch (ifOpcode) {
+            case ClassWriter.IFEQ: return ClassWriter.IFNE;
+            case ClassWriter.IFNE: return ClassWriter.IFEQ;
+            case ClassWriter.IFLT: return ClassWriter.IFGE;
+            case ClassWriter.IFGE: return ClassWriter.IFLT;
+            case ClassWriter.IFGT: return ClassWriter.IFLE;
+            default:               return ClassWriter.IFGT;
+        }
+    }
+
+    /**ordering comparison, ifOpcode is the IFxx opcode of the
+     * comparison, doubles are compared with dcmpOpcode chosen
+     * so that a comparison with NaN is false*/
+    private void compare(Exp e1, Exp e2, int ifOpcode, int dcmpOpcode, ClassWriter.Label target, boolean when) {
+        Type t = compileExp(e1);
+        compileExp(e2);
+        int opcode = when ? ifOpcode : negate(ifOpcode);
+        if (t.equals(DOUBLE)) {
+            mw.op(dcmpOpcode, -3);
+            mw.jump(opcode, target, -1);
+        } else {
+            // IF_ICMPxx is IFxx + 6
+            mw.jump(opcode + 6, target, -2);
+        }
+    }
+
+    /**equality of doubles follows Double.equals like the Interpreter*/
+    private void equality(Exp e1, Exp e2, ClassWriter.Label target, boolean when) {
+        Type t = compileExp(e1);
+        if (t.equals(DOUBLE)) {
+            mw.invokestatic("java/lang/Double", "doubleToLongBits", "(D)J", 0);
+            compileExp(e2);
+            mw.invokestatic("java/lang/Double", "doubleToLongBits", "(D)J", 0);
+            mw.op(ClassWriter.LCMP, -3);
+            mw.jump(when ? ClassWriter.IFEQ : ClassWriter.IFNE, target, -1);
+        } else {
+            compileExp(e2);
+            mw.jump(when ? ClassWriter.IF_ICMPEQ : ClassWriter.IF_ICMPNE, target, -2);
+        }
+    }
+
+    /**pushes the value 0 or 1 of a condition*/
+    private Type boolValue(Exp exp) {
+        ClassWriter.Label isTrue = mw.newLabel();
+        ClassWriter.Label end = mw.newLabel();
+        int depth = mw.getStack();
+
+        branch(exp, isTrue, true);
+        mw.iconst(0);
+        mw.jump(ClassWriter.GOTO, end, 0);
+        mw.setStack(depth);
+        mw.place(isTrue);
+        mw.iconst(1);
+        mw.place(end);
+        return BOOL;
+    }
+
+
+    ////////////////////////////// Expression //////////////////////////////
+
+    /**pushes the value of the expression, returns its type*/
+    private Type compileExp(Exp exp) {
+        return exp.accept(expCompiler, null);
+    }
+
+    public class ExpCompiler implements Exp.Visitor<Type,Void> {
+
+        public Type visit(ETrue p, Void arg) {
+            mw.iconst(1);
+            return BOOL;
+        }
+
+        public Type visit(EFalse p, Void arg) {
+            mw.iconst(0);
+            return BOOL;
+        }
+
+        public Type visit(EInt p, Void arg) {
+            mw.iconst(p.integer_);
+            return INT;
+        }
+
+        public Type visit(EDouble p, Void arg) {
+            mw.dconst(p.double_);
+            return DOUBLE;
+        }
+
+        public Type visit(EId p, Void arg) {
+            int slot = resolver.slotOf(p);
+            load(slot);
+            return slotTypes[slot];
+        }
+
+        public Type visit(EApp p, Void arg) {
+            if(PRINT_INT.equals(p.id_)) {
+                compileExp(p.listexp_.getFirst());
+                mw.invokestatic(RUNTIME, PRINT_INT, "(I)V", -1);
+                return VOID;
+            } else if(PRINT_DOUBLE.equals(p.id_)) {
+                compileExp(p.listexp_.getFirst());
+                mw.invokestatic(RUNTIME, PRINT_DOUBLE, "(D)V", -2);
+                return VOID;
+            } else if(READ_INT.equals(p.id_)) {
+                mw.invokestatic(RUNTIME, READ_INT, "()I", 1);
+                return INT;
+            } else if(READ_DOUBLE.equals(p.id_)) {
+                mw.invokestatic(RUNTIME, READ_DOUBLE, "()D", 2);
+                return DOUBLE;
+            }
+
+            DFun dFun = functions.get(p.id_);
+            int argSize = 0;
+            for (Exp exp : p.listexp_) {
+                argSize += compileExp(exp).equals(DOUBLE) ? 2 : 1;
+            }
+            Type t = dFun.type_;
+            int resultSize = t.equals(DOUBLE) ? 2 : t.equals(VOID) ? 0 : 1;
+            mw.invokestatic(cw.getClassName(), dFun.id_, descriptor(dFun), resultSize - argSize);
+            return t;
+        }
+
+        public Type visit(EPostIncr p, Void arg) {
+            return increment(p.exp_, 1, false);
+        }
+
+        public Type visit(EPostDecr p, Void arg) {
+            return increment(p.exp_, -1, false);
+        }
+
+        public Type visit(EPreIncr p, Void arg) {
+            return increment(p.exp_, 1, true);
+        }
+
+        public Type visit(EPreDecr p, Void arg) {
+            return increment(p.exp_, -1, true);
+        }
+
+        private Type increment(Exp variable, int delta, boolean pre) {
+            int slot = resolver.slotOf(variable);
+            if (slotTypes[slot].equals(INT)) {
+                if (pre) {
+                    mw.iinc(slotLocals[slot], delta);
+                    load(slot);
+                } else {
+                    load(slot);
+                    mw.iinc(slotLocals[slot], delta);
+                }
+                return INT;
+            }
+
+            load(slot);
+            if (!pre) {
+                mw.op(ClassWriter.DUP2, 2);
+            }
+            mw.dconst(delta);
+            mw.op(ClassWriter.DADD, -2);
+            if (pre) {
+                mw.op(ClassWriter.DUP2, 2);
+            }
+            store(slot);
+            return DOUBLE;
+        }
+
+        private Type arithmetic(Exp e1, Exp e2, int intOpcode, int doubleOpcode) {
+            Type t = compileExp(e1);
+            compileExp(e2);
+            if (t.equals(DOUBLE)) {
+                mw.op(doubleOpcode, -2);
+            } else {
+                mw.op(intOpcode, -1);
+            }
+            return t;
+        }
+
+        public Type visit(ETimes p, Void arg) {
+            return arithmetic(p.exp_1, p.exp_2, ClassWriter.IMUL, ClassWriter.DMUL);
+        }
+
+        public Type visit(EDiv p, Void arg) {
+            return arithmetic(p.exp_1, p.exp_2, ClassWriter.IDIV, ClassWriter.DDIV);
+        }
+
+        public Type visit(EPlus p, Void arg) {
+            return arithmetic(p.exp_1, p.exp_2, ClassWriter.IADD, ClassWriter.DADD);
+        }
+
+        public Type visit(EMinus p, Void arg) {
+            return arithmetic(p.exp_1, p.exp_2, ClassWriter.ISUB, ClassWriter.DSUB);
+        }
+
+        public Type visit(ELt p, Void arg)   { return boolValue(p); }
+        public Type visit(EGt p, Void arg)   { return boolValue(p); }
+        public Type visit(ELtEq p, Void arg) { return boolValue(p); }
+        public Type visit(EGtEq p, Void arg) { return boolValue(p); }
+        public Type visit(EEq p, Void arg)   { return boolValue(p); }
+        public Type visit(ENEq p, Void arg)  { return boolValue(p); }
+        public Type visit(EAnd p, Void arg)  { return boolValue(p); }
+        public Type visit(EOr p, Void arg)   { return boolValue(p); }
+
+        public Type visit(EAss p, Void arg) {
+            int slot = resolver.slotOf(p.exp_1);
+            Type t = compileExp(p.exp_2);
+            if (t.equals(DOUBLE)) {
+                mw.op(ClassWriter.DUP2, 2);
+            } else {
+                mw.op(ClassWriter.DUP, 1);
+            }
+            store(slot);
+            return t;
+        }
+    }
+}
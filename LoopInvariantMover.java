@@ -0,0 +1,238 @@
+import CPP.Absyn.*;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Loop invariant code motion, run after the TypeChecker. It returns a
+ * new tree which has to be checked again.
+ * An expression inside a while loop whose variables are neither
+ * assigned nor declared in the loop is computed once before the loop
+ * into a new variable. Arithmetic and comparisons can neither fail nor
+ * be seen, so they are moved from anywhere in the loop. A division or
+ * a call of a pure function may fail or never return, so it is only
+ * moved when the loop would compute it before anything else it does:
+ * from the condition, or from the body when the condition has no
+ * effects, and then only if the condition holds before the loop.
+ * Inner loops are done first, so what they moved out can move further.
+ */
+public class LoopInvariantMover
+{
+    private final Purity purity = new Purity();
+    private final Summaries summaries = new Summaries();
+
+    // Functions of the program by name
+    private final Map<String,DFun> functions = new TreeMap<>();
+
+    // Suffix of the last variable made for an invariant
+    private int temps;
+
+    // Entry point
+
+    public Program move(Program p) {
+        purity.analyze(p);
+        for (Def d : ((PDefs) p).listdef_)
+            functions.put(((DFun) d).id_, (DFun) d);
+
+        ListDef listdef = new ListDef();
+        for (Def d : ((PDefs) p).listdef_) {
+            DFun f = (DFun) d;
+            listdef.add(new DFun(f.type_, f.id_, f.listarg_, new Mover(f).copyList(f.liststm_)));
+        }
+        return new PDefs(listdef);
+    }
+
+    ////////////////////////////// Mover //////////////////////////////
+
+    /**
+     * Copies the body of a function with the invariants of its loops
+     * moved out, keeping track of the types of the variables in scope.
+     */
+    private class Mover extends ScopedCopier
+    {
+        Mover(DFun f) {
+            super(f, functions);
+        }
+
+        void copyInto(Stm s, ListStm out) {
+            if (s instanceof SWhile)
+                moveInvariants((SWhile) s, out);
+            else
+                super.copyInto(s, out);
+        }
+
+        private void moveInvariants(SWhile p, ListStm out) {
+            Exp condition = copy(p.exp_);
+            Stm body = copyStm(p.stm_);
+
+            AstCopier loop = new AstCopier(null);
+            loop.copy(condition);
+            loop.copyStm(body);
+            Set<String> variant = new HashSet<>(loop.assigned);
+            variant.addAll(loop.declared);
+
+            Hoist hoist = new Hoist(variant);
+            hoist.anticipated = true;
+            condition = hoist.copy(condition);
+            // the body runs right after the condition,
+            // which has to be without effects of its own
+            boolean pureCondition = !hoist.effects;
+            hoist.effects = false;
+            hoist.anticipated = pureCondition;
+            hoist.inBody = true;
+            body = hoist.copyStm(body);
+
+            for (Map.Entry<Exp,String> temp : hoist.unguarded.entrySet()) {
+                Type type = typeOf(temp.getKey());
+                out.add(new SInit(type, temp.getValue(), temp.getKey()));
+                declare(temp.getValue(), type);
+            }
+            if (!hoist.guarded.isEmpty()) {
+                ListStm assignments = new ListStm();
+                for (Map.Entry<Exp,String> temp : hoist.guarded.entrySet()) {
+                    Type type = typeOf(temp.getKey());
+                    ListId ids = new ListId();
+                    ids.add(temp.getValue());
+                    out.add(new SDecls(type, ids));
+                    declare(temp.getValue(), type);
+                    assignments.add(new SExp(new EAss(new EId(temp.getValue()), temp.getKey())));
+                }
+                Exp guard = new AstCopier(null).copy(condition);
+                out.add(new SIfElse(guard, new SBlock(assignments), new SBlock(new ListStm())));
+            }
+            out.add(new SWhile(condition, body));
+        }
+    }
+
+    ////////////////////////////// Hoist //////////////////////////////
+
+    /**
+     * Copies the condition and then the body of a loop, replacing the
+     * invariant expressions by the variables they are moved to.
+     */
+    private class Hoist extends AstCopier
+    {
+        private final Set<String> variant;
+
+        // Invariants computed before the loop, and those
+        // computed only if the condition holds before it
+        final Map<Exp,String> unguarded = new LinkedHashMap<>();
+        final Map<Exp,String> guarded = new LinkedHashMap<>();
+
+        // Whether the expression copied is computed every time the
+        // loop comes to it, which is when it is not behind a branch
+        // and nothing with an effect was computed before it
+        boolean anticipated;
+        boolean inBody;
+
+        Hoist(Set<String> variant) {
+            super(null);
+            this.variant = variant;
+        }
+
+        Exp copy(Exp e) {
+            if (e instanceof EId || e instanceof EInt || e instanceof EDouble
+                    || e instanceof ETrue || e instanceof EFalse)
+                return super.copy(e);
+
+            Summaries.Summary summary = summaries.of(e);
+            boolean invariant = !summary.assigns();
+            for (String id : summary.uses)
+                invariant &= !variant.contains(id);
+            for (String function : summary.calls)
+                invariant &= purity.isPure(function);
+            if (!invariant)
+                return super.copy(e);
+
+            if (!summary.effects)
+                return new EId(temp(e, unguarded));
+            if (anticipated && !effects)
+                return new EId(temp(e, inBody ? guarded : unguarded));
+            return super.copy(e);
+        }
+
+        // equal expressions share one variable
+        private String temp(Exp e, Map<Exp,String> into) {
+            String name = unguarded.get(e);
+            if (name == null)
+                name = guarded.get(e);
+            if (name == null) {
+                name = "inv$" + (++temps);
+                into.put(new AstCopier(null).copy(e), name);
+            }
+            return name;
+        }
+
+        // effects are counted after the operands they need
+
+        public Exp visit(EApp p, Void arg) {
+            ListExp args = copyArgs(p.listexp_);
+            size++;
+            effects = true;
+            calls.add(p.id_);
+            return new EApp(p.id_, args);
+        }
+
+        public Exp visit(EDiv p, Void arg) {
+            Exp a = copy(p.exp_1);
+            Exp b = copy(p.exp_2);
+            size++;
+            effects = true;
+            return new EDiv(a, b);
+        }
+
+        public Exp visit(EAss p, Void arg) {
+            Exp target = copyTarget(p.exp_1);
+            Exp value = copy(p.exp_2);
+            assigns = true;
+            effects = true;
+            return new EAss(target, value);
+        }
+
+        public Exp visit(EAnd p, Void arg) {
+            Exp a = copy(p.exp_1);
+            Exp b = behindBranch(p.exp_2);
+            size++;
+            return new EAnd(a, b);
+        }
+
+        public Exp visit(EOr p, Void arg) {
+            Exp a = copy(p.exp_1);
+            Exp b = behindBranch(p.exp_2);
+            size++;
+            return new EOr(a, b);
+        }
+
+        public Stm visit(SIfElse p, Void arg) {
+            Exp condition = copy(p.exp_);
+            boolean saved = anticipated;
+            anticipated = false;
+            Stm then = copyStm(p.stm_1);
+            Stm otherwise = copyStm(p.stm_2);
+            anticipated = saved;
+            size++;
+            return new SIfElse(condition, then, otherwise);
+        }
+
+        public Stm visit(SWhile p, Void arg) {
+            Exp condition = copy(p.exp_);
+            boolean saved = anticipated;
+            anticipated = false;
+            Stm body = copyStm(p.stm_);
+            anticipated = saved;
+            size++;
+            return new SWhile(condition, body);
+        }
+
+        private Exp behindBranch(Exp e) {
+            boolean saved = anticipated;
+            anticipated = false;
+            Exp copy = copy(e);
+            anticipated = saved;
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,340 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Lexer for the DescentParser that reads the source file through a
+ * memory mapping instead of a Reader, the tokens are the ones of the
+ * DescentLexer. The bytes are scanned as ASCII, eight at a time where
+ * blanks, comments and digits run on, and a token is only its kind and
+ * offsets in the mapping. An identifier is made into a string the first
+ * time it is seen and found in the intern table every time after, which
+ * also holds the keywords, integers are read from the bytes without a
+ * string at all. Letters are the ASCII ones, a byte above 127 is an
+ * error where the DescentLexer would read a Latin-1 letter.
+ */
+public class MappedLexer implements TokenStream {
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final long SPACES = ' ' * ONES;
+
+    private static final String[] KEYWORDS = {
+        "bool", "double", "else", "false", "if", "int", "return", "true", "void", "while"
+    };
+
+    private final MappedByteBuffer bytes;
+    private final int length;
+    private int pos;
+    private int line = 1;
+
+    // the token last read
+    private int kind;
+    private int start;
+    private int end;
+    private String name;
+
+    // intern table of identifiers and keywords, open addressing
+    private String[] names = new String[256];
+    private int[] kinds = new int[256];
+    private int[] hashes = new int[256];
+    private int count;
+
+    public MappedLexer(String file) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to map");
+            }
+            this.bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            this.length = (int) size;
+        }
+        // little endian puts the first byte of a word in its lowest bits
+        bytes.order(ByteOrder.LITTLE_ENDIAN);
+        for (int k = 0; k < KEYWORDS.length; k++) {
+            insert(KEYWORDS[k], KEYWORDS[k].hashCode(), DescentLexer.BOOL + k);
+        }
+    }
+
+    public int next() throws SyntaxException {
+        skipBlanks();
+        start = pos;
+        name = null;
+        if (pos >= length) {
+            end = pos;
+            return kind = DescentLexer.EOF;
+        }
+        int c = byteAt(pos);
+        if (isLetter(c)) {
+            int hash = 0;
+            while (pos < length && isIdentChar(c = byteAt(pos))) {
+                hash = 31 * hash + c;
+                pos++;
+            }
+            end = pos;
+            return kind = intern(hash);
+        }
+        if (isDigit(c)) {
+            return kind = number();
+        }
+        pos++;
+        end = pos;
+        switch (c) {
+            case '(': return kind = DescentLexer.LPAREN;
+            case ')': return kind = DescentLexer.RPAREN;
+            case '{': return kind = DescentLexer.LBRACE;
+            case '}': return kind = DescentLexer.RBRACE;
+            case ',': return kind = DescentLexer.COMMA;
+            case ';': return kind = DescentLexer.SEMI;
+            case '*': return kind = DescentLexer.TIMES;
+            case '/': return kind = DescentLexer.DIV;
+            case '=': return kind = twoChar('=', DescentLexer.EQ, DescentLexer.ASSIGN);
+            case '+': return kind = twoChar('+', DescentLexer.INCR, DescentLexer.PLUS);
+            case '-': return kind = twoChar('-', DescentLexer.DECR, DescentLexer.MINUS);
+            case '<': return kind = twoChar('=', DescentLexer.LTEQ, DescentLexer.LT);
+            case '>': return kind = twoChar('=', DescentLexer.GTEQ, DescentLexer.GT);
+            case '!': return kind = twoChar('=', DescentLexer.NEQ, -1);
+            case '&': return kind = twoChar('&', DescentLexer.AND, -1);
+            case '|': return kind = twoChar('|', DescentLexer.OR, -1);
+            default:
+                throw new SyntaxException("unexpected character '" + (char) c + "'");
+        }
+    }
+
+    public String text() {
+        if (name != null) {
+            return name;
+        }
+        byte[] text = new byte[end - start];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = bytes.get(start + i);
+        }
+        return new String(text, StandardCharsets.ISO_8859_1);
+    }
+
+    // the digits are read straight from the mapping, an integer too
+    // large fails like Integer.parseInt does
+    public int intValue() {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = byteAt(i) - '0';
+            if (value > (Integer.MAX_VALUE - digit) / 10) {
+                throw new NumberFormatException("For input string: \"" + text() + "\"");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    public int line() {
+        return line;
+    }
+
+    private int byteAt(int i) {
+        return bytes.get(i) & 0xff;
+    }
+
+    private int twoChar(char second, int ifTwo, int ifOne) throws SyntaxException {
+        if (pos < length && byteAt(pos) == second) {
+            pos++;
+            end = pos;
+            return ifTwo;
+        }
+        if (ifOne < 0) {
+            throw new SyntaxException("unexpected character '" + (char) byteAt(start) + "'");
+        }
+        return ifOne;
+    }
+
+    ////////////////////////////// Numbers //////////////////////////////
+
+    // digits, then for a double a dot, digits and maybe an exponent
+    private int number() {
+        skipDigits();
+        int kind = DescentLexer.INTEGER;
+        if (pos + 1 < length && byteAt(pos) == '.' && isDigit(byteAt(pos + 1))) {
+            pos++;
+            skipDigits();
+            kind = DescentLexer.DOUBLE_LIT;
+            int mark = pos;
+            if (pos < length && byteAt(pos) == 'e') {
+                pos++;
+                if (pos < length && byteAt(pos) == '-') {
+                    pos++;
+                }
+                if (pos < length && isDigit(byteAt(pos))) {
+                    skipDigits();
+                } else {
+                    pos = mark;
+                }
+            }
+        }
+        end = pos;
+        return kind;
+    }
+
+    private void skipDigits() {
+        while (pos + 8 <= length && allDigits(bytes.getLong(pos))) {
+            pos += 8;
+        }
+        while (pos < length && isDigit(byteAt(pos))) {
+            pos++;
+        }
+    }
+
+    // whether the eight bytes of a word are all '0' to '9': a byte below
+    // '0' sets its high bit when '0' is taken away, one above '9' when
+    // 0x46 is added, and the bytes above 127 have it set already
+    private static boolean allDigits(long word) {
+        long below = word - '0' * ONES;
+        long above = word + 0x46 * ONES;
+        return ((word | below | above) & HIGHS) == 0;
+    }
+
+    ////////////////////////////// Blanks //////////////////////////////
+
+    private void skipBlanks() throws SyntaxException {
+        while (pos < length) {
+            int c = byteAt(pos);
+            if (c == ' ') {
+                // indentation goes a word at a time
+                if (pos + 8 <= length && bytes.getLong(pos) == SPACES) {
+                    pos += 8;
+                } else {
+                    pos++;
+                }
+            } else if (c == '\n') {
+                line++;
+                pos++;
+            } else if (c == '\t' || c == '\r' || c == '\f') {
+                pos++;
+            } else if (c == '#' || c == '/' && pos + 1 < length && byteAt(pos + 1) == '/') {
+                pos = find('\n', pos);
+            } else if (c == '/' && pos + 1 < length && byteAt(pos + 1) == '*') {
+                int open = pos;
+                pos += 2;
+                for (;;) {
+                    int star = find('*', pos);
+                    // the last byte is not looked at, like the DescentLexer
+                    line += lines(pos, Math.min(star, length - 1));
+                    if (star + 1 >= length) {
+                        pos = open;
+                        throw new SyntaxException("unterminated comment");
+                    }
+                    pos = star + 1;
+                    if (byteAt(pos) == '/') {
+                        pos++;
+                        break;
+                    }
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    // the offset of the first byte b from i on, or the length
+    private int find(int b, int i) {
+        long pattern = b * ONES;
+        while (i + 8 <= length) {
+            long word = bytes.getLong(i) ^ pattern;
+            // the lowest high bit set marks the first zero byte,
+            // the ones above it may be false
+            long zeros = (word - ONES) & ~word & HIGHS;
+            if (zeros != 0) {
+                return i + Long.numberOfTrailingZeros(zeros) / 8;
+            }
+            i += 8;
+        }
+        while (i < length && byteAt(i) != b) {
+            i++;
+        }
+        return i;
+    }
+
+    // the newlines from i up to j
+    private int lines(int i, int j) {
+        int n = 0;
+        while ((i = find('\n', i)) < j) {
+            n++;
+            i++;
+        }
+        return n;
+    }
+
+    ////////////////////////////// Intern table //////////////////////////////
+
+    // the kind of the identifier from start to end, its name is the
+    // interned string
+    private int intern(int hash) {
+        int mask = names.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            String s = names[i];
+            if (s == null) {
+                name = text();
+                insert(name, hash, DescentLexer.IDENT);
+                return DescentLexer.IDENT;
+            }
+            if (hashes[i] == hash && sameText(s)) {
+                name = s;
+                return kinds[i];
+            }
+        }
+    }
+
+    private boolean sameText(String s) {
+        if (s.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) != byteAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void insert(String s, int hash, int kind) {
+        if (2 * (count + 1) > names.length) {
+            String[] oldNames = names;
+            int[] oldKinds = kinds;
+            int[] oldHashes = hashes;
+            names = new String[oldNames.length * 2];
+            kinds = new int[names.length];
+            hashes = new int[names.length];
+            count = 0;
+            for (int i = 0; i < oldNames.length; i++) {
+                if (oldNames[i] != null) {
+                    insert(oldNames[i], oldHashes[i], oldKinds[i]);
+                }
+            }
+        }
+        int mask = names.length - 1;
+        int i = hash & mask;
+        while (names[i] != null) {
+            i = (i + 1) & mask;
+        }
+        names[i] = s;
+        kinds[i] = kind;
+        hashes[i] = hash;
+        count++;
+    }
+
+    ////////////////////////////// Characters //////////////////////////////
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetter(int c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isIdentChar(int c) {
+        return isLetter(c) || isDigit(c) || c == '_' || c == '\'';
+    }
+}
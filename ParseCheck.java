@@ -0,0 +1,88 @@
+import CPP.Absyn.*;
+import CPP.Yylex;
+import CPP.parser;
+
+import java.io.File;
+import java.io.FileReader;
+import java.util.Arrays;
+
+/**
+ * Checks that the parsers agree on the programs of parsecheck, which
+ * cover every rule of the grammar. Every program of parsecheck/good is
+ * parsed by the CUP parser and by the DescentParser on a DescentLexer
+ * and on a MappedLexer, and the three trees have to be equal. Every
+ * program of parsecheck/bad has to be rejected by all three. Prints a
+ * line for every program and exits with 1 if one of them failed.
+ *
+ *   java ParseCheck [directory]
+ */
+public class ParseCheck {
+
+    private static final String[] PARSERS = { "CUP parser", "descent parser", "descent parser on a mapped file" };
+
+    public static void main(String args[]) {
+        File directory = new File(args.length > 0 ? args[0] : "parsecheck");
+        int failed = 0;
+        int checked = 0;
+        for (String kind : new String[] { "good", "bad" }) {
+            File[] programs = new File(directory, kind).listFiles((dir, name) -> name.endsWith(".cc"));
+            if (programs == null) {
+                System.err.println("no directory " + new File(directory, kind));
+                System.exit(1);
+            }
+            Arrays.sort(programs);
+            for (File program : programs) {
+                String failure = kind.equals("good") ? checkGood(program) : checkBad(program);
+                System.out.println((failure == null ? "OK   " : "FAIL ") + kind + "/" + program.getName()
+                        + (failure == null ? "" : ": " + failure));
+                checked++;
+                if (failure != null) {
+                    failed++;
+                }
+            }
+        }
+        System.out.println(checked + " programs, " + failed + " failed");
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**null if every parser builds the same tree*/
+    private static String checkGood(File program) {
+        Program[] trees = new Program[PARSERS.length];
+        for (int i = 0; i < trees.length; i++) {
+            try {
+                trees[i] = parse(i, program);
+            } catch (Exception | Error e) {
+                return "the " + PARSERS[i] + " failed, " + e;
+            }
+        }
+        for (int i = 1; i < trees.length; i++) {
+            if (!trees[i].equals(trees[0])) {
+                return "the " + PARSERS[i] + " built another tree than the " + PARSERS[0];
+            }
+        }
+        return null;
+    }
+
+    /**null if every parser rejects the program*/
+    private static String checkBad(File program) {
+        for (int i = 0; i < PARSERS.length; i++) {
+            try {
+                parse(i, program);
+                return "the " + PARSERS[i] + " accepted it";
+            } catch (Exception | Error e) {
+                // what it should do
+            }
+        }
+        return null;
+    }
+
+    private static Program parse(int parser, File program) throws Exception {
+        switch (parser) {
+            case 0:  return new parser(new Yylex(new FileReader(program))).pProgram();
+            case 1:  return new DescentParser(new DescentLexer(new FileReader(program))).pProgram();
+            default: return new DescentParser(new MappedLexer(program.getPath())).pProgram();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+import CPP.Absyn.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Programs that passed the TypeChecker, kept on disk with their types
+ * under the SHA-256 of their source, so running an unchanged source
+ * again reads the checked tree instead of lexing, parsing and checking
+ * it. An entry starts with a magic number, the version of the form and
+ * the hash of the source, and ends with a CRC32 of the tree. An entry
+ * that is missing, of another version, for another source, cut short
+ * or damaged is not used, and the caller runs the whole front end.
+ */
+public class ProgramCache {
+
+    private static final int MAGIC = 0x6c327067;  // l2pg
+    // changes whenever the form AstWriter writes changes
+    private static final int VERSION = 1;
+    private static final int HASH = 32;
+
+    private final Path directory;
+
+    /**the tree and the checker of an entry*/
+    public static class Entry {
+        public final Program program;
+        public final TypeChecker types;
+
+        Entry(Program program, TypeChecker types) {
+            this.program = program;
+            this.types = types;
+        }
+    }
+
+    public ProgramCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**the key of a source, the hash of its bytes*/
+    public static byte[] hash(String source) throws IOException {
+        return sha256().digest(Files.readAllBytes(Paths.get(source)));
+    }
+
+    /**the program of the source with this hash, or null if there is
+     * no entry that can be trusted*/
+    public Entry load(byte[] hash) {
+        Path file = fileFor(hash);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            ByteBuffer entry = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (entry.getInt() != MAGIC || entry.getInt() != VERSION) {
+                return null;
+            }
+            byte[] source = new byte[HASH];
+            entry.get(source);
+            if (!Arrays.equals(source, hash)) {
+                return null;
+            }
+            int length = entry.getInt();
+            if (length < 0 || length > entry.remaining() - 8) {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(entry.array(), entry.position(), length);
+            if (entry.getLong(entry.position() + length) != crc.getValue()) {
+                return null;
+            }
+
+            AstReader reader = new AstReader(new ByteArrayInputStream(entry.array(), entry.position(), length), true);
+            Program program = reader.readProgram();
+            TypeChecker types = new TypeChecker();
+            types.restore(program, reader.types);
+            return new Entry(program, types);
+        } catch (IOException | RuntimeException e) {
+            // an entry that cannot be read is one to run the front end for
+            return null;
+        }
+    }
+
+    /**keeps a program that passed the checker under the hash of its
+     * source, a failure only means the next run has no entry*/
+    public void store(byte[] hash, Program program, TypeChecker types) {
+        try {
+            ByteArrayOutputStream tree = new ByteArrayOutputStream();
+            new AstWriter(tree, types.expTypes()).write(program);
+            CRC32 crc = new CRC32();
+            crc.update(tree.toByteArray());
+
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, "program", ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                DataOutputStream data = new DataOutputStream(out);
+                data.writeInt(MAGIC);
+                data.writeInt(VERSION);
+                data.write(hash);
+                data.writeInt(tree.size());
+                tree.writeTo(data);
+                data.writeLong(crc.getValue());
+                data.flush();
+            }
+            Files.move(temp, fileFor(hash), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("could not cache the program: " + e);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Path fileFor(byte[] hash) {
+        StringBuilder name = new StringBuilder();
+        for (byte b : hash) {
+            name.append(String.format("%02x", b));
+        }
+        return directory.resolve(name.append(".prog").toString());
+    }
+}
@@ -0,0 +1,54 @@
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Scanner;
+
+/**
+ * The builtin functions printInt, printDouble, readInt and readDouble,
+ * shared by every execution engine.
+ */
+public class ProgramIO {
+
+    private final InputStream in;
+    private final PrintStream out;
+
+    // the whole input is read on the first read operation
+    private ArrayList<String> inputLine = new ArrayList<>();
+    private int readerIndex = 0;
+
+    public ProgramIO() {
+        this(System.in, System.out);
+    }
+
+    public ProgramIO(InputStream in, PrintStream out) {
+        this.in = in;
+        this.out = out;
+    }
+
+    public int readInt() {
+        return Integer.valueOf(nextInput());
+    }
+
+    public double readDouble() {
+        return Double.valueOf(nextInput());
+    }
+
+    public void printInt(int value) {
+        out.println(value);
+    }
+
+    public void printDouble(double value) {
+        out.println(value);
+    }
+
+    private String nextInput() {
+        if(inputLine.isEmpty()) {
+            Scanner scanner = new Scanner(in);
+            scanner.useDelimiter("[;\r\n]+");
+            while(scanner.hasNext()) {
+                inputLine.add(scanner.next());
+            }
+        }
+        return inputLine.get(readerIndex++);
+    }
+}
@@ -0,0 +1,57 @@
+import CPP.Absyn.*;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Purity analysis, run after the TypeChecker. A function is pure when
+ * neither it nor any function it calls reads input or prints, so its
+ * result depends on nothing but its arguments.
+ */
+public class Purity
+{
+    // Functions of the program called by every function
+    private final Map<String,Set<String>> calls = new TreeMap<>();
+
+    // Functions that read or print, themselves or through a call
+    private final Set<String> impure = new HashSet<>();
+
+    // Entry point
+
+    public void analyze(Program p) {
+        for (Def d : ((PDefs) p).listdef_) {
+            DFun f = (DFun) d;
+            AstCopier copier = new AstCopier(null);
+            copier.copyList(f.liststm_);
+            calls.put(f.id_, copier.calls);
+        }
+
+        // only the builtin functions are not defined,
+        // and every one of them reads or prints
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<String,Set<String>> f : calls.entrySet()) {
+                if (impure.contains(f.getKey()))
+                    continue;
+                for (String callee : f.getValue()) {
+                    if (!calls.containsKey(callee) || impure.contains(callee)) {
+                        impure.add(f.getKey());
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    public boolean isPure(DFun f) {
+        return isPure(f.id_);
+    }
+
+    public boolean isPure(String function) {
+        return calls.containsKey(function) && !impure.contains(function);
+    }
+}
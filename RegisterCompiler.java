@@ -0,0 +1,679 @@
+import CPP.Absyn.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Compiles a type checked program to code for the RegisterVM.
+ * The slots assigned by the Resolver are the first registers of a
+ * function, temporaries of an expression are allocated above them
+ * and released after every statement. Conditions of if and while
+ * compile to compare-and-jump instructions, && and || to jumps.
+ */
+public class RegisterCompiler {
+
+    private final String MAIN_FUNC = "main";
+
+    private final String PRINT_INT = "printInt";
+    private final String PRINT_DOUBLE = "printDouble";
+    private final String READ_INT = "readInt";
+    private final String READ_DOUBLE = "readDouble";
+
+    public final Type BOOL   = new Type_bool();
+    public final Type INT    = new Type_int();
+    public final Type DOUBLE = new Type_double();
+    public final Type VOID   = new Type_void();
+
+    private final Resolver resolver = new Resolver();
+    private final Map<String, DFun> definitions = new TreeMap<>();
+    private final Map<String, Integer> functionIndex = new HashMap<>();
+
+    // double constant pool, shared by all functions
+    private final List<Double> constants = new ArrayList<>();
+    private final Map<Long, Integer> constantIndex = new HashMap<>();
+
+    // state of the function being compiled
+    private DFun current;
+    private int[] code;
+    private int size;
+    private Type[] slotTypes;
+    private int frameSize;
+    private int nextTemp;
+    private int maxRegisters;
+
+    private final StmCompiler stmCompiler = new StmCompiler();
+    private final ExpCompiler expCompiler = new ExpCompiler();
+    private final ExpType expType = new ExpType();
+    private final SideEffects sideEffects = new SideEffects();
+
+
+    public void interpret(Program p) {
+        interpret(p, new ProgramIO());
+    }
+
+    public void interpret(Program p, ProgramIO io) {
+        RegisterVM vm = compile(p, io);
+        vm.run(functionIndex.get(MAIN_FUNC));
+    }
+
+    /**compiles every function of the program into a vm running on io*/
+    public RegisterVM compile(Program p, ProgramIO io) {
+        resolver.resolve(p);
+
+        for (Def def : ((PDefs) p).listdef_) {
+            DFun dFun = (DFun) def;
+            definitions.put(dFun.id_, dFun);
+        }
+        RegisterVM.Function[] functions = new RegisterVM.Function[definitions.size()];
+        for (DFun dFun : definitions.values()) {
+            functionIndex.put(dFun.id_, functionIndex.size());
+        }
+        for (DFun dFun : definitions.values()) {
+            functions[functionIndex.get(dFun.id_)] = compileFunction(dFun);
+        }
+
+        double[] pool = new double[constants.size()];
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = constants.get(i);
+        }
+        return new RegisterVM(functions, pool, io);
+    }
+
+
+    ////////////////////////////// Functions //////////////////////////////
+
+    private RegisterVM.Function compileFunction(DFun dFun) {
+        current = dFun;
+        code = new int[64];
+        size = 0;
+        frameSize = resolver.frameSize(dFun);
+        slotTypes = new Type[frameSize];
+        nextTemp = frameSize;
+        maxRegisters = frameSize;
+
+        RegisterVM.Function function = new RegisterVM.Function(dFun.id_);
+        function.doubleParams = new boolean[dFun.listarg_.size()];
+        int i = 0;
+        for (Arg arg : dFun.listarg_) {
+            ADecl decl = (ADecl) arg;
+            slotTypes[resolver.slotOf(decl)] = decl.type_;
+            function.doubleParams[i++] = decl.type_.equals(DOUBLE);
+        }
+
+        for (Stm stm : dFun.liststm_) {
+            stm.accept(stmCompiler, null);
+        }
+
+        // a function may run off its end, return the default value
+        if (dFun.type_.equals(VOID)) {
+            emit(RegisterVM.VRET);
+        } else {
+            int r = temp();
+            if (dFun.type_.equals(DOUBLE)) {
+                emit(RegisterVM.DCONST, r, constant(0.0));
+                emit(RegisterVM.DRET, r);
+            } else {
+                emit(RegisterVM.ICONST, r, 0);
+                emit(RegisterVM.IRET, r);
+            }
+        }
+
+        int[] result = new int[size];
+        System.arraycopy(code, 0, result, 0, size);
+        function.code = result;
+        function.registers = maxRegisters;
+        return function;
+    }
+
+    private void emit(int... words) {
+        if (size + words.length > code.length) {
+            int[] grown = new int[Math.max(code.length * 2, size + words.length)];
+            System.arraycopy(code, 0, grown, 0, size);
+            code = grown;
+        }
+        for (int w : words) {
+            code[size++] = w;
+        }
+    }
+
+    private int constant(double v) {
+        long bits = Double.doubleToRawLongBits(v);
+        Integer index = constantIndex.get(bits);
+        if (index == null) {
+            index = constants.size();
+            constants.add(v);
+            constantIndex.put(bits, index);
+        }
+        return index;
+    }
+
+    private int temp() {
+        int r = nextTemp++;
+        maxRegisters = Math.max(maxRegisters, nextTemp);
+        return r;
+    }
+
+    /**the register a result goes to, dst or a fresh temporary*/
+    private int target(int dst) {
+        return dst >= 0 ? dst : temp();
+    }
+
+    private boolean isDouble(Exp exp) {
+        return typeOf(exp).equals(DOUBLE);
+    }
+
+    private void move(Type t, int dst, int src) {
+        if (dst != src) {
+            emit(t.equals(DOUBLE) ? RegisterVM.DMOVE : RegisterVM.IMOVE, dst, src);
+        }
+    }
+
+
+    ////////////////////////////// Statement //////////////////////////////
+
+    public class StmCompiler implements Stm.Visitor<Void,Void> {
+
+        public Void visit(SExp p, Void arg) {
+            int mark = nextTemp;
+            Exp exp = p.exp_;
+            // the old value of a post increment is not needed here
+            if (exp instanceof EPostIncr) {
+                expCompiler.increment(((EPostIncr) exp).exp_, 1, true, -1);
+            } else if (exp instanceof EPostDecr) {
+                expCompiler.increment(((EPostDecr) exp).exp_, -1, true, -1);
+            } else {
+                compileExp(exp, -1);
+            }
+            nextTemp = mark;
+            return null;
+        }
+
+        public Void visit(SDecls p, Void arg) {
+            int slot = resolver.slotOf(p);
+            for (int i = 0; i < p.listid_.size(); i++) {
+                slotTypes[slot + i] = p.type_;
+                if (p.type_.equals(DOUBLE)) {
+                    emit(RegisterVM.DCONST, slot + i, constant(0.0));
+                } else {
+                    emit(RegisterVM.ICONST, slot + i, 0);
+                }
+            }
+            return null;
+        }
+
+        public Void visit(SInit p, Void arg) {
+            int mark = nextTemp;
+            // the slot is not visible to the expression, it can be written directly
+            int slot = resolver.slotOf(p);
+            compileExp(p.exp_, slot);
+            slotTypes[slot] = p.type_;
+            nextTemp = mark;
+            return null;
+        }
+
+        public Void visit(SReturn p, Void arg) {
+            int mark = nextTemp;
+            int r = compileExp(p.exp_, -1);
+            if (current.type_.equals(VOID)) {
+                emit(RegisterVM.VRET);
+            } else if (current.type_.equals(DOUBLE)) {
+                emit(RegisterVM.DRET, r);
+            } else {
+                emit(RegisterVM.IRET, r);
+            }
+            nextTemp = mark;
+            return null;
+        }
+
+        public Void visit(SWhile p, Void arg) {
+            // the test is placed after the body, one jump per iteration
+            Label body = new Label();
+            Label test = new Label();
+
+            jump(RegisterVM.JUMP, test);
+            place(body);
+            p.stm_.accept(this, arg);
+            place(test);
+            int mark = nextTemp;
+            branch(p.exp_, body, true);
+            nextTemp = mark;
+            return null;
+        }
+
+        public Void visit(SBlock p, Void arg) {
+            for (Stm stm : p.liststm_) {
+                stm.accept(this, arg);
+            }
+            return null;
+        }
+
+        public Void visit(SIfElse p, Void arg) {
+            Label then = new Label();
+            Label end = new Label();
+
+            int mark = nextTemp;
+            branch(p.exp_, then, true);
+            nextTemp = mark;
+            p.stm_2.accept(this, arg);
+            jump(RegisterVM.JUMP, end);
+            place(then);
+            p.stm_1.accept(this, arg);
+            place(end);
+            return null;
+        }
+    }
+
+
+    ////////////////////////////// Jumps //////////////////////////////
+
+    /**a jump target, jumps to it are patched once it is placed*/
+    private class Label {
+        private int position = -1;
+        private final List<Integer> jumps = new ArrayList<>();
+    }
+
+    /**emits a jump with the given operands, the target is the last operand*/
+    private void jump(int opcode, Label target, int... operands) {
+        emit(opcode);
+        emit(operands);
+        if (target.position >= 0) {
+            emit(target.position);
+        } else {
+            target.jumps.add(size);
+            emit(-1);
+        }
+    }
+
+    private void place(Label label) {
+        label.position = size;
+        for (int at : label.jumps) {
+            code[at] = size;
+        }
+        label.jumps.clear();
+    }
+
+
+    ////////////////////////////// Conditions //////////////////////////////
+
+    /**jumps to target if the boolean expression evaluates
+     * to the given value, falls through otherwise*/
+    private void branch(Exp exp, Label target, boolean when) {
+        if (exp instanceof ETrue || exp instanceof EFalse) {
+            if ((exp instanceof ETrue) == when) {
+                jump(RegisterVM.JUMP, target);
+            }
+        } else if (exp instanceof EAnd) {
+            EAnd e = (EAnd) exp;
+            if (when) {
+                Label skip = new Label();
+                branch(e.exp_1, skip, false);
+                branch(e.exp_2, target, true);
+                place(skip);
+            } else {
+                branch(e.exp_1, target, false);
+                branch(e.exp_2, target, false);
+            }
+        } else if (exp instanceof EOr) {
+            EOr e = (EOr) exp;
+            if (when) {
+                branch(e.exp_1, target, true);
+                branch(e.exp_2, target, true);
+            } else {
+                Label skip = new Label();
+                branch(e.exp_1, skip, true);
+                branch(e.exp_2, target, false);
+                place(skip);
+            }
+        } else if (exp instanceof ELt) {
+            compare(((ELt) exp).exp_1, ((ELt) exp).exp_2, RegisterVM.JILT, target, when);
+        } else if (exp instanceof EGt) {
+            compare(((EGt) exp).exp_1, ((EGt) exp).exp_2, RegisterVM.JIGT, target, when);
+        } else if (exp instanceof ELtEq) {
+            compare(((ELtEq) exp).exp_1, ((ELtEq) exp).exp_2, RegisterVM.JILE, target, when);
+        } else if (exp instanceof EGtEq) {
+            compare(((EGtEq) exp).exp_1, ((EGtEq) exp).exp_2, RegisterVM.JIGE, target, when);
+        } else if (exp instanceof EEq) {
+            compare(((EEq) exp).exp_1, ((EEq) exp).exp_2, RegisterVM.JIEQ, target, when);
+        } else if (exp instanceof ENEq) {
+            compare(((ENEq) exp).exp_1, ((ENEq) exp).exp_2, RegisterVM.JINE, target, when);
+        } else {
+            int r = compileExp(exp, -1);
+            jump(when ? RegisterVM.JNZERO : RegisterVM.JZERO, target, r);
+        }
+    }
+
+    // opposite conditions of JILT .. JINE
+    private int negate(int intJump) {
+        switch (intJump) {
+            case RegisterVM.JILT: return RegisterVM.JIGE;
+            case RegisterVM.JIGT: return RegisterVM.JILE;
+            case RegisterVM.JILE: return RegisterVM.JIGT;
+            case RegisterVM.JIGE: return RegisterVM.JILT;
+            case RegisterVM.JIEQ: return RegisterVM.JINE;
+            default:              return RegisterVM.JIEQ;
+        }
+    }
+
+    /**intJump is the int jump of the comparison, the double
+     * jumps are in the same order six opcodes later*/
+    private void compare(Exp e1, Exp e2, int intJump, Label target, boolean when) {
+        boolean isDouble = isDouble(e1);
+        int[] r = operands(e1, e2);
+        if (!isDouble) {
+            jump(when ? intJump : negate(intJump), target, r[0], r[1]);
+        } else if (when || intJump == RegisterVM.JIEQ || intJump == RegisterVM.JINE) {
+            int opcode = when ? intJump : negate(intJump);
+            jump(opcode + (RegisterVM.JDLT - RegisterVM.JILT), target, r[0], r[1]);
+        } else {
+            // an ordering of NaN is false both ways, jump over the jump
+            Label skip = new Label();
+            jump(intJump + (RegisterVM.JDLT - RegisterVM.JILT), skip, r[0], r[1]);
+            jump(RegisterVM.JUMP, target);
+            place(skip);
+        }
+    }
+
+    /**the register of a condition evaluated to 0 or 1*/
+    private int boolValue(Exp exp, int dst) {
+        Label isTrue = new Label();
+        Label end = new Label();
+
+        int mark = nextTemp;
+        branch(exp, isTrue, true);
+        nextTemp = mark;
+        int r = target(dst);
+        emit(RegisterVM.ICONST, r, 0);
+        jump(RegisterVM.JUMP, end);
+        place(isTrue);
+        emit(RegisterVM.ICONST, r, 1);
+        place(end);
+        return r;
+    }
+
+
+    ////////////////////////////// Expression //////////////////////////////
+
+    /**compiles the expression, dst is the register the value must end
+     * up in or -1 for any register, returns the register of the value*/
+    private int compileExp(Exp exp, int dst) {
+        return exp.accept(expCompiler, dst);
+    }
+
+    /**evaluates both operands of a binary operator, the left one
+     * is copied if it is a variable the right one may change*/
+    private int[] operands(Exp e1, Exp e2) {
+        int a = compileExp(e1, -1);
+        if (a < frameSize && e2.accept(sideEffects, null)) {
+            int t = temp();
+            move(typeOf(e1), t, a);
+            a = t;
+        }
+        int b = compileExp(e2, -1);
+        return new int[] { a, b };
+    }
+
+    private Type typeOf(Exp exp) {
+        return exp.accept(expType, null);
+    }
+
+    public class ExpCompiler implements Exp.Visitor<Integer,Integer> {
+
+        public Integer visit(ETrue p, Integer dst) {
+            int r = target(dst);
+            emit(RegisterVM.ICONST, r, 1);
+            return r;
+        }
+
+        public Integer visit(EFalse p, Integer dst) {
+            int r = target(dst);
+            emit(RegisterVM.ICONST, r, 0);
+            return r;
+        }
+
+        public Integer visit(EInt p, Integer dst) {
+            int r = target(dst);
+            emit(RegisterVM.ICONST, r, p.integer_);
+            return r;
+        }
+
+        public Integer visit(EDouble p, Integer dst) {
+            int r = target(dst);
+            emit(RegisterVM.DCONST, r, constant(p.double_));
+            return r;
+        }
+
+        public Integer visit(EId p, Integer dst) {
+            int slot = resolver.slotOf(p);
+            if (dst < 0) {
+                return slot;
+            }
+            move(slotTypes[slot], dst, slot);
+            return dst;
+        }
+
+        public Integer visit(EApp p, Integer dst) {
+            if(PRINT_INT.equals(p.id_)) {
+                emit(RegisterVM.PRINTI, compileExp(p.listexp_.getFirst(), -1));
+                return -1;
+            } else if(PRINT_DOUBLE.equals(p.id_)) {
+                emit(RegisterVM.PRINTD, compileExp(p.listexp_.getFirst(), -1));
+                return -1;
+            } else if(READ_INT.equals(p.id_)) {
+                int r = target(dst);
+                emit(RegisterVM.READI, r);
+                return r;
+            } else if(READ_DOUBLE.equals(p.id_)) {
+                int r = target(dst);
+                emit(RegisterVM.READD, r);
+                return r;
+            }
+
+            // arguments go to consecutive temporaries
+            int first = nextTemp;
+            for (int i = 0; i < p.listexp_.size(); i++) {
+                temp();
+            }
+            int i = 0;
+            for (Exp exp : p.listexp_) {
+                compileExp(exp, first + i++);
+            }
+            int r = definitions.get(p.id_).type_.equals(VOID) ? first : target(dst);
+            emit(RegisterVM.CALL, r, functionIndex.get(p.id_), first);
+            return r;
+        }
+
+        public Integer visit(EPostIncr p, Integer dst) {
+            return increment(p.exp_, 1, false, dst);
+        }
+
+        public Integer visit(EPostDecr p, Integer dst) {
+            return increment(p.exp_, -1, false, dst);
+        }
+
+        public Integer visit(EPreIncr p, Integer dst) {
+            return increment(p.exp_, 1, true, dst);
+        }
+
+        public Integer visit(EPreDecr p, Integer dst) {
+            return increment(p.exp_, -1, true, dst);
+        }
+
+        private Integer increment(Exp variable, int delta, boolean pre, int dst) {
+            int slot = resolver.slotOf(variable);
+            Type t = slotTypes[slot];
+            int opcode = t.equals(DOUBLE) ? RegisterVM.DINC : RegisterVM.IINC;
+            if (pre) {
+                emit(opcode, slot, delta);
+                if (dst < 0) {
+                    return slot;
+                }
+                move(t, dst, slot);
+                return dst;
+            }
+            int r = target(dst);
+            move(t, r, slot);
+            emit(opcode, slot, delta);
+            return r;
+        }
+
+        private Integer arithmetic(Exp e1, Exp e2, int intOpcode, int doubleOpcode, int dst) {
+            boolean isDouble = isDouble(e1);
+            int[] r = operands(e1, e2);
+            int result = target(dst);
+            emit(isDouble ? doubleOpcode : intOpcode, result, r[0], r[1]);
+            return result;
+        }
+
+        public Integer visit(ETimes p, Integer dst) {
+            if (StrengthReducer.powerOfTwo(p.exp_2) >= 0) {
+                return shift(p.exp_1, RegisterVM.ISHL, StrengthReducer.powerOfTwo(p.exp_2), dst);
+            }
+            if (StrengthReducer.powerOfTwo(p.exp_1) >= 0) {
+                return shift(p.exp_2, RegisterVM.ISHL, StrengthReducer.powerOfTwo(p.exp_1), dst);
+            }
+            return arithmetic(p.exp_1, p.exp_2, RegisterVM.IMUL, RegisterVM.DMUL, dst);
+        }
+
+        public Integer visit(EDiv p, Integer dst) {
+            if (StrengthReducer.powerOfTwo(p.exp_2) >= 0) {
+                return shift(p.exp_1, RegisterVM.IDIVP2, StrengthReducer.powerOfTwo(p.exp_2), dst);
+            }
+            return arithmetic(p.exp_1, p.exp_2, RegisterVM.IDIV, RegisterVM.DDIV, dst);
+        }
+
+        // multiplying and dividing an int by a literal power of
+        // two shifts it, by 1 the value is only moved
+        private Integer shift(Exp e, int opcode, int shift, int dst) {
+            if (shift == 0) {
+                return compileExp(e, dst);
+            }
+            int a = compileExp(e, -1);
+            int result = target(dst);
+            emit(opcode, result, a, shift);
+            return result;
+        }
+
+        public Integer visit(EPlus p, Integer dst) {
+            return arithmetic(p.exp_1, p.exp_2, RegisterVM.IADD, RegisterVM.DADD, dst);
+        }
+
+        public Integer visit(EMinus p, Integer dst) {
+            return arithmetic(p.exp_1, p.exp_2, RegisterVM.ISUB, RegisterVM.DSUB, dst);
+        }
+
+        // comparisons that are values compute the 0 or 1 directly,
+        // the compare opcodes are in the same order as the int jumps
+        private Integer comparison(Exp e1, Exp e2, int intJump, int dst) {
+            int opcode = intJump - RegisterVM.JILT + (isDouble(e1) ? RegisterVM.DLT : RegisterVM.ILT);
+            int[] r = operands(e1, e2);
+            int result = target(dst);
+            emit(opcode, result, r[0], r[1]);
+            return result;
+        }
+
+        public Integer visit(ELt p, Integer dst)   { return comparison(p.exp_1, p.exp_2, RegisterVM.JILT, dst); }
+        public Integer visit(EGt p, Integer dst)   { return comparison(p.exp_1, p.exp_2, RegisterVM.JIGT, dst); }
+        public Integer visit(ELtEq p, Integer dst) { return comparison(p.exp_1, p.exp_2, RegisterVM.JILE, dst); }
+        public Integer visit(EGtEq p, Integer dst) { return comparison(p.exp_1, p.exp_2, RegisterVM.JIGE, dst); }
+        public Integer visit(EEq p, Integer dst)   { return comparison(p.exp_1, p.exp_2, RegisterVM.JIEQ, dst); }
+        public Integer visit(ENEq p, Integer dst)  { return comparison(p.exp_1, p.exp_2, RegisterVM.JINE, dst); }
+        public Integer visit(EAnd p, Integer dst)  { return boolValue(p, dst); }
+        public Integer visit(EOr p, Integer dst)   { return boolValue(p, dst); }
+
+        public Integer visit(EAss p, Integer dst) {
+            int slot = resolver.slotOf(p.exp_1);
+            Type t = slotTypes[slot];
+            // the value is computed into the variable unless the
+            // expression changes variables after reading them
+            if (p.exp_2.accept(sideEffects, null)) {
+                move(t, slot, compileExp(p.exp_2, -1));
+            } else {
+                compileExp(p.exp_2, slot);
+            }
+            if (dst < 0) {
+                return slot;
+            }
+            move(t, dst, slot);
+            return dst;
+        }
+    }
+
+
+    ////////////////////////////// Analysis //////////////////////////////
+
+    /**the type of an expression, variables have the
+     * types of their slots at this point of the function*/
+    public class ExpType implements Exp.Visitor<Type,Void> {
+
+        public Type visit(ETrue p, Void arg)     { return BOOL; }
+        public Type visit(EFalse p, Void arg)    { return BOOL; }
+        public Type visit(EInt p, Void arg)      { return INT; }
+        public Type visit(EDouble p, Void arg)   { return DOUBLE; }
+        public Type visit(EId p, Void arg)       { return slotTypes[resolver.slotOf(p)]; }
+
+        public Type visit(EApp p, Void arg) {
+            if (PRINT_INT.equals(p.id_) || PRINT_DOUBLE.equals(p.id_)) return VOID;
+            if (READ_INT.equals(p.id_)) return INT;
+            if (READ_DOUBLE.equals(p.id_)) return DOUBLE;
+            return definitions.get(p.id_).type_;
+        }
+
+        public Type visit(EPostIncr p, Void arg) { return p.exp_.accept(this, arg); }
+        public Type visit(EPostDecr p, Void arg) { return p.exp_.accept(this, arg); }
+        public Type visit(EPreIncr p, Void arg)  { return p.exp_.accept(this, arg); }
+        public Type visit(EPreDecr p, Void arg)  { return p.exp_.accept(this, arg); }
+        public Type visit(ETimes p, Void arg)    { return p.exp_1.accept(this, arg); }
+        public Type visit(EDiv p, Void arg)      { return p.exp_1.accept(this, arg); }
+        public Type visit(EPlus p, Void arg)     { return p.exp_1.accept(this, arg); }
+        public Type visit(EMinus p, Void arg)    { return p.exp_1.accept(this, arg); }
+        public Type visit(ELt p, Void arg)       { return BOOL; }
+        public Type visit(EGt p, Void arg)       { return BOOL; }
+        public Type visit(ELtEq p, Void arg)     { return BOOL; }
+        public Type visit(EGtEq p, Void arg)     { return BOOL; }
+        public Type visit(EEq p, Void arg)       { return BOOL; }
+        public Type visit(ENEq p, Void arg)      { return BOOL; }
+        public Type visit(EAnd p, Void arg)      { return BOOL; }
+        public Type visit(EOr p, Void arg)       { return BOOL; }
+        public Type visit(EAss p, Void arg)      { return p.exp_1.accept(this, arg); }
+    }
+
+    /**whether evaluating an expression assigns variables of the
+     * function, calls cannot change the variables of the caller*/
+    public class SideEffects implements Exp.Visitor<Boolean,Void> {
+
+        public Boolean visit(ETrue p, Void arg)     { return false; }
+        public Boolean visit(EFalse p, Void arg)    { return false; }
+        public Boolean visit(EInt p, Void arg)      { return false; }
+        public Boolean visit(EDouble p, Void arg)   { return false; }
+        public Boolean visit(EId p, Void arg)       { return false; }
+
+        public Boolean visit(EApp p, Void arg) {
+            for (Exp exp : p.listexp_) {
+                if (exp.accept(this, arg)) return true;
+            }
+            return false;
+        }
+
+        public Boolean visit(EPostIncr p, Void arg) { return true; }
+        public Boolean visit(EPostDecr p, Void arg) { return true; }
+        public Boolean visit(EPreIncr p, Void arg)  { return true; }
+        public Boolean visit(EPreDecr p, Void arg)  { return true; }
+        public Boolean visit(ETimes p, Void arg)    { return p.exp_1.accept(this, arg) || p.exp_2.accept(this, arg); }
+        public Boolean visit(EDiv p, Void arg)      { return p.exp_1.accept(this, arg) || p.exp_2.accept(this, arg); }
+        public Boolean visit(EPlus p, Void arg)     { return p.exp_1.accept(this, arg) || p.exp_2.accept(this, arg); }
+        public Boolean visit(EMinus p, Void arg)    { return p.exp_1.accept(this, arg) || p.exp_2.accept(this, arg); }
+        public Boolean visit(ELt p, Void arg)       { return p.exp_1.accept(this, arg) || p.exp_2.accept(this, arg); }
+        public Boolean visit(EGt p, Void arg)       { return p.exp_1.accept(this, arg) || p.exp_2.accept(this, arg); }
+        public Boolean visit(ELtEq p, Void arg)     { return p.exp_1.accept(this, arg) || p.exp_2.accept(this, arg); }
+        public Boolean visit(EGtEq p, Void arg)     { return p.exp_1.accept(this, arg) || p.exp_2.accept(this, arg); }
+        public Boolean visit(EEq p, Void arg)       { return p.exp_1.accept(this, arg) || p.exp_2.accept(this, arg); }
+        public Boolean visit(ENEq p, Void arg)      { return p.exp_1.accept(this, arg) || p.exp_2.accept(this, arg); }
+        public Boolean visit(EAnd p, Void arg)      { return p.exp_1.accept(this, arg) || p.exp_2.accept(this, arg); }
+        public Boolean visit(EOr p, Void arg)       { return p.exp_1.accept(this, arg) || p.exp_2.accept(this, arg); }
+        public Boolean visit(EAss p, Void arg)      { return true; }
+    }
+}
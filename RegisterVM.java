@@ -0,0 +1,235 @@
+/**
+ * Virtual machine for programs compiled by the RegisterCompiler.
+ * Code is a flat int[] of opcodes followed by their operands, operands
+ * are register numbers, jump targets, immediate ints or indexes into
+ * the double constant pool. Every frame has an int and a double
+ * register file of the same size, the opcode decides which one an
+ * operand refers to. Booleans are ints 0 and 1.
+ * Calls push frames on an explicit frame stack, so the depth of the
+ * executed program does not grow the Java stack.
+ */
+public class RegisterVM {
+
+    // opcode                operands
+    public static final int ICONST  = 0;   // dst, int value
+    public static final int DCONST  = 1;   // dst, constant index
+    public static final int IMOVE   = 2;   // dst, src
+    public static final int DMOVE   = 3;   // dst, src
+    public static final int IADD    = 4;   // dst, a, b
+    public static final int ISUB    = 5;   // dst, a, b
+    public static final int IMUL    = 6;   // dst, a, b
+    public static final int IDIV    = 7;   // dst, a, b
+    public static final int DADD    = 8;   // dst, a, b
+    public static final int DSUB    = 9;   // dst, a, b
+    public static final int DMUL    = 10;  // dst, a, b
+    public static final int DDIV    = 11;  // dst, a, b
+    public static final int IINC    = 12;  // register, int delta
+    public static final int DINC    = 13;  // register, int delta
+    public static final int ILT     = 14;  // dst, a, b       the compare opcodes
+    public static final int IGT     = 15;  // dst, a, b       are in the same order
+    public static final int ILE     = 16;  // dst, a, b       as the jump opcodes
+    public static final int IGE     = 17;  // dst, a, b
+    public static final int IEQ     = 18;  // dst, a, b
+    public static final int INE     = 19;  // dst, a, b
+    public static final int DLT     = 20;  // dst, a, b
+    public static final int DGT     = 21;  // dst, a, b
+    public static final int DLE     = 22;  // dst, a, b
+    public static final int DGE     = 23;  // dst, a, b
+    public static final int DEQ     = 24;  // dst, a, b
+    public static final int DNE     = 25;  // dst, a, b
+    public static final int JILT    = 26;  // a, b, target
+    public static final int JIGT    = 27;  // a, b, target
+    public static final int JILE    = 28;  // a, b, target
+    public static final int JIGE    = 29;  // a, b, target
+    public static final int JIEQ    = 30;  // a, b, target
+    public static final int JINE    = 31;  // a, b, target
+    public static final int JDLT    = 32;  // a, b, target
+    public static final int JDGT    = 33;  // a, b, target
+    public static final int JDLE    = 34;  // a, b, target
+    public static final int JDGE    = 35;  // a, b, target
+    public static final int JDEQ    = 36;  // a, b, target
+    public static final int JDNE    = 37;  // a, b, target
+    public static final int JUMP    = 38;  // target
+    public static final int JZERO   = 39;  // register, target
+    public static final int JNZERO  = 40;  // register, target
+    public static final int CALL    = 41;  // dst, function index, first argument register
+    public static final int IRET    = 42;  // register
+    public static final int DRET    = 43;  // register
+    public static final int VRET    = 44;  //
+    public static final int PRINTI  = 45;  // register
+    public static final int PRINTD  = 46;  // register
+    public static final int READI   = 47;  // dst
+    public static final int READD   = 48;  // dst
+    public static final int ISHL    = 49;  // dst, a, int shift      a * 2^shift
+    public static final int IDIVP2  = 50;  // dst, a, int shift      a / 2^shift
+
+    /**a compiled function*/
+    public static final class Function {
+        final String name;
+        int[] code;
+        int registers;
+        // which parameters are doubles, which are ints or booleans
+        boolean[] doubleParams;
+
+        Function(String name) {
+            this.name = name;
+        }
+    }
+
+    /**activation of a function, pc and result register are
+     * saved here while the function calls another one*/
+    private static final class Frame {
+        final Function function;
+        final int[] ints;
+        final double[] doubles;
+        final Frame caller;
+        int pc;
+        int result;
+
+        Frame(Function function, Frame caller) {
+            this.function = function;
+            this.ints = new int[function.registers];
+            this.doubles = new double[function.registers];
+            this.caller = caller;
+        }
+    }
+
+    private final Function[] functions;
+    private final double[] constants;
+    private final ProgramIO io;
+
+    public RegisterVM(Function[] functions, double[] constants, ProgramIO io) {
+        this.functions = functions;
+        this.constants = constants;
+        this.io = io;
+    }
+
+    /**runs the function with the given index until it returns*/
+    public void run(int entry) {
+        Frame frame = new Frame(functions[entry], null);
+        int[] code = frame.function.code;
+        int[] ir = frame.ints;
+        double[] dr = frame.doubles;
+        double[] constants = this.constants;
+        int pc = 0;
+
+        for (;;) {
+            switch (code[pc]) {
+                case ICONST: ir[code[pc + 1]] = code[pc + 2]; pc += 3; break;
+                case DCONST: dr[code[pc + 1]] = constants[code[pc + 2]]; pc += 3; break;
+                case IMOVE:  ir[code[pc + 1]] = ir[code[pc + 2]]; pc += 3; break;
+                case DMOVE:  dr[code[pc + 1]] = dr[code[pc + 2]]; pc += 3; break;
+
+                case IADD: ir[code[pc + 1]] = ir[code[pc + 2]] + ir[code[pc + 3]]; pc += 4; break;
+                case ISUB: ir[code[pc + 1]] = ir[code[pc + 2]] - ir[code[pc + 3]]; pc += 4; break;
+                case IMUL: ir[code[pc + 1]] = ir[code[pc + 2]] * ir[code[pc + 3]]; pc += 4; break;
+                case IDIV: ir[code[pc + 1]] = ir[code[pc + 2]] / ir[code[pc + 3]]; pc += 4; break;
+                case DADD: dr[code[pc + 1]] = dr[code[pc + 2]] + dr[code[pc + 3]]; pc += 4; break;
+                case DSUB: dr[code[pc + 1]] = dr[code[pc + 2]] - dr[code[pc + 3]]; pc += 4; break;
+                case DMUL: dr[code[pc + 1]] = dr[code[pc + 2]] * dr[code[pc + 3]]; pc += 4; break;
+                case DDIV: dr[code[pc + 1]] = dr[code[pc + 2]] / dr[code[pc + 3]]; pc += 4; break;
+                case ISHL: ir[code[pc + 1]] = ir[code[pc + 2]] << code[pc + 3]; pc += 4; break;
+                case IDIVP2: {
+                    // rounds towards zero like the division, a negative
+                    // dividend is raised by 2^shift - 1 before the shift
+                    int a = ir[code[pc + 2]];
+                    int shift = code[pc + 3];
+                    ir[code[pc + 1]] = (a + ((a >> 31) >>> (32 - shift))) >> shift;
+                    pc += 4;
+                    break;
+                }
+                case IINC: ir[code[pc + 1]] += code[pc + 2]; pc += 3; break;
+                case DINC: dr[code[pc + 1]] += code[pc + 2]; pc += 3; break;
+
+                case ILT: ir[code[pc + 1]] = ir[code[pc + 2]] <  ir[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                case IGT: ir[code[pc + 1]] = ir[code[pc + 2]] >  ir[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                case ILE: ir[code[pc + 1]] = ir[code[pc + 2]] <= ir[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                case IGE: ir[code[pc + 1]] = ir[code[pc + 2]] >= ir[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                case IEQ: ir[code[pc + 1]] = ir[code[pc + 2]] == ir[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                case INE: ir[code[pc + 1]] = ir[code[pc + 2]] != ir[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                case DLT: ir[code[pc + 1]] = dr[code[pc + 2]] <  dr[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                case DGT: ir[code[pc + 1]] = dr[code[pc + 2]] >  dr[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                case DLE: ir[code[pc + 1]] = dr[code[pc + 2]] <= dr[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                case DGE: ir[code[pc + 1]] = dr[code[pc + 2]] >= dr[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                case DEQ: ir[code[pc + 1]] = same(dr[code[pc + 2]], dr[code[pc + 3]]) ? 1 : 0; pc += 4; break;
+                case DNE: ir[code[pc + 1]] = same(dr[code[pc + 2]], dr[code[pc + 3]]) ? 0 : 1; pc += 4; break;
+
+                case JILT: pc = ir[code[pc + 1]] <  ir[code[pc + 2]] ? code[pc + 3] : pc + 4; break;
+                case JIGT: pc = ir[code[pc + 1]] >  ir[code[pc + 2]] ? code[pc + 3] : pc + 4; break;
+                case JILE: pc = ir[code[pc + 1]] <= ir[code[pc + 2]] ? code[pc + 3] : pc + 4; break;
+                case JIGE: pc = ir[code[pc + 1]] >= ir[code[pc + 2]] ? code[pc + 3] : pc + 4; break;
+                case JIEQ: pc = ir[code[pc + 1]] == ir[code[pc + 2]] ? code[pc + 3] : pc + 4; break;
+                case JINE: pc = ir[code[pc + 1]] != ir[code[pc + 2]] ? code[pc + 3] : pc + 4; break;
+                case JDLT: pc = dr[code[pc + 1]] <  dr[code[pc + 2]] ? code[pc + 3] : pc + 4; break;
+                case JDGT: pc = dr[code[pc + 1]] >  dr[code[pc + 2]] ? code[pc + 3] : pc + 4; break;
+                case JDLE: pc = dr[code[pc + 1]] <= dr[code[pc + 2]] ? code[pc + 3] : pc + 4; break;
+                case JDGE: pc = dr[code[pc + 1]] >= dr[code[pc + 2]] ? code[pc + 3] : pc + 4; break;
+                case JDEQ: pc = same(dr[code[pc + 1]], dr[code[pc + 2]]) ? code[pc + 3] : pc + 4; break;
+                case JDNE: pc = same(dr[code[pc + 1]], dr[code[pc + 2]]) ? pc + 4 : code[pc + 3]; break;
+                case JUMP:   pc = code[pc + 1]; break;
+                case JZERO:  pc = ir[code[pc + 1]] == 0 ? code[pc + 2] : pc + 3; break;
+                case JNZERO: pc = ir[code[pc + 1]] != 0 ? code[pc + 2] : pc + 3; break;
+
+                case CALL: {
+                    Function callee = functions[code[pc + 2]];
+                    Frame next = new Frame(callee, frame);
+                    // arguments are in consecutive registers of the caller,
+                    // parameters are the first registers of the callee
+                    int first = code[pc + 3];
+                    boolean[] doubleParams = callee.doubleParams;
+                    for (int i = 0; i < doubleParams.length; i++) {
+                        if (doubleParams[i]) {
+                            next.doubles[i] = dr[first + i];
+                        } else {
+                            next.ints[i] = ir[first + i];
+                        }
+                    }
+                    frame.result = code[pc + 1];
+                    frame.pc = pc + 4;
+
+                    frame = next;
+                    code = callee.code;
+                    ir = frame.ints;
+                    dr = frame.doubles;
+                    pc = 0;
+                    break;
+                }
+                case IRET:
+                case DRET:
+                case VRET: {
+                    int op = code[pc];
+                    int value = op == VRET ? 0 : code[pc + 1];
+                    Frame caller = frame.caller;
+                    if (caller == null) {
+                        return;
+                    }
+                    if (op == IRET) {
+                        caller.ints[caller.result] = ir[value];
+                    } else if (op == DRET) {
+                        caller.doubles[caller.result] = dr[value];
+                    }
+
+                    frame = caller;
+                    code = frame.function.code;
+                    ir = frame.ints;
+                    dr = frame.doubles;
+                    pc = frame.pc;
+                    break;
+                }
+
+                case PRINTI: io.printInt(ir[code[pc + 1]]); pc += 2; break;
+                case PRINTD: io.printDouble(dr[code[pc + 1]]); pc += 2; break;
+                case READI:  ir[code[pc + 1]] = io.readInt(); pc += 2; break;
+                case READD:  dr[code[pc + 1]] = io.readDouble(); pc += 2; break;
+
+                default:
+                    throw new RuntimeException("invalid opcode " + code[pc] + " in " + frame.function.name);
+            }
+        }
+    }
+
+    // equality of doubles follows Double.equals like the Interpreter
+    private static boolean same(double a, double b) {
+        return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+    }
+}
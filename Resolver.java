@@ -0,0 +1,327 @@
+import CPP.Absyn.*;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Resolution pass, run after the TypeChecker.
+ * Every local variable of a function gets a fixed slot index so
+ * that a frame can be a flat array instead of a map of names.
+ * Parameters take the first slots in declaration order, and the
+ * slots of a block are reused once the block is closed. A program
+ * can also be copied into one whose variable nodes carry their slots,
+ * so that an interpreter reads them without looking them up.
+ */
+public class Resolver
+{
+    // Slot of every EId, SInit and ADecl node, first slot of every SDecls
+    private final Map<Object,Integer> slots = new IdentityHashMap<>();
+
+    // Frame size of every function
+    private final Map<DFun,Integer> frameSizes = new IdentityHashMap<>();
+
+    // Slots of the variables in scope at every while statement
+    private final Map<SWhile,Map<String,Integer>> loopScopes = new IdentityHashMap<>();
+
+    // Stack of scopes of the function we are resolving
+    private List<Map<String,Integer>> scopes;
+
+    // First slot of every open block
+    private LinkedList<Integer> blockStarts;
+
+    // Next free slot and the highest slot count seen so far
+    private int nextSlot;
+    private int frameSize;
+
+    // Entry point
+
+    public void resolve(Program p) {
+        p.accept(new ProgramVisitor(), null);
+    }
+
+    public int slotOf(Object node) {
+        Integer slot = slots.get(node);
+        if (slot == null)
+            throw new RuntimeException("unresolved variable node " + node);
+        return slot;
+    }
+
+    public int frameSize(DFun d) {
+        return frameSizes.get(d);
+    }
+
+    public Map<String,Integer> variablesAt(SWhile loop) {
+        return loopScopes.get(loop);
+    }
+
+    /**a copy of a resolved program where every variable, SInit and
+     * SDecls node carries its slot, the copy has the same frame sizes*/
+    public Program slotted(Program p) {
+        ListDef defs = new ListDef();
+        for (Def d : ((PDefs) p).listdef_) {
+            DFun f = (DFun) d;
+            DFun copy = new DFun(f.type_, f.id_, f.listarg_, new SlotCopier().copyList(f.liststm_));
+            frameSizes.put(copy, frameSize(f));
+            defs.add(copy);
+        }
+        return new PDefs(defs);
+    }
+
+    ////////////////////////////// Slotted nodes //////////////////////////////
+
+    public static class SlotId extends EId
+    {
+        private static final long serialVersionUID = 1L;
+
+        public final int slot;
+
+        public SlotId(String id, int slot) {
+            super(id);
+            this.slot = slot;
+        }
+    }
+
+    public static class SlotInit extends SInit
+    {
+        private static final long serialVersionUID = 1L;
+
+        public final int slot;
+
+        public SlotInit(Type type, String id, Exp exp, int slot) {
+            super(type, id, exp);
+            this.slot = slot;
+        }
+    }
+
+    // slot of the first variable, the others follow it
+    public static class SlotDecls extends SDecls
+    {
+        private static final long serialVersionUID = 1L;
+
+        public final int slot;
+
+        public SlotDecls(Type type, ListId ids, int slot) {
+            super(type, ids);
+            this.slot = slot;
+        }
+    }
+
+    private class SlotCopier extends AstCopier
+    {
+        SlotCopier() {
+            super(null);
+        }
+
+        public Stm visit(SDecls p, Void arg) {
+            return new SlotDecls(p.type_, p.listid_, slotOf(p));
+        }
+
+        public Stm visit(SInit p, Void arg) {
+            return new SlotInit(p.type_, p.id_, copy(p.exp_), slotOf(p));
+        }
+
+        public Exp visit(EId p, Void arg) {
+            return new SlotId(p.id_, slotOf(p));
+        }
+
+        Exp copyTarget(Exp e) {
+            return e instanceof EId ? visit((EId) e, null) : copy(e);
+        }
+    }
+
+    ////////////////////////////// Program //////////////////////////////
+
+    public class ProgramVisitor implements Program.Visitor<Void,Void>
+    {
+        public Void visit(CPP.Absyn.PDefs p, Void arg)
+        {
+            for (Def x: p.listdef_) {
+                x.accept(new DefVisitor(), arg);
+            }
+            return null;
+        }
+    }
+
+    ////////////////////////////// Function //////////////////////////////
+
+    public class DefVisitor implements Def.Visitor<Void,Void>
+    {
+        public Void visit(CPP.Absyn.DFun p, Void arg)
+        {
+            scopes = new LinkedList<>();
+            scopes.add(new TreeMap<>());
+            blockStarts = new LinkedList<>();
+            nextSlot = 0;
+            frameSize = 0;
+
+            // parameters take the first slots
+            for (Arg a: p.listarg_) {
+                ADecl decl = (ADecl) a;
+                slots.put(decl, newVar(decl.id_));
+            }
+
+            StmVisitor stmVisitor = new StmVisitor();
+            for (Stm s: p.liststm_) {
+                s.accept(stmVisitor, arg);
+            }
+
+            frameSizes.put(p, frameSize);
+            return null;
+        }
+    }
+
+    ////////////////////////////// Statement //////////////////////////////
+
+    public class StmVisitor implements Stm.Visitor<Void,Void>
+    {
+        private final ExpVisitor expVisitor = new ExpVisitor();
+
+        public Void visit(CPP.Absyn.SExp p, Void arg)
+        {
+            p.exp_.accept(expVisitor, arg);
+            return null;
+        }
+
+        public Void visit(CPP.Absyn.SDecls p, Void arg)
+        {
+            slots.put(p, nextSlot);
+            for (String id: p.listid_) {
+                newVar(id);
+            }
+            return null;
+        }
+
+        public Void visit(CPP.Absyn.SInit p, Void arg)
+        {
+            // the initializer cannot see the variable it initializes
+            p.exp_.accept(expVisitor, arg);
+            slots.put(p, newVar(p.id_));
+            return null;
+        }
+
+        public Void visit(CPP.Absyn.SReturn p, Void arg)
+        {
+            p.exp_.accept(expVisitor, arg);
+            return null;
+        }
+
+        public Void visit(CPP.Absyn.SWhile p, Void arg)
+        {
+            loopScopes.put(p, visibleVars());
+            p.exp_.accept(expVisitor, arg);
+            inBlock(p.stm_, arg);
+            return null;
+        }
+
+        public Void visit(CPP.Absyn.SBlock p, Void arg)
+        {
+            newBlock();
+            for (Stm s: p.liststm_) s.accept(this, arg);
+            popBlock();
+            return null;
+        }
+
+        public Void visit(CPP.Absyn.SIfElse p, Void arg)
+        {
+            p.exp_.accept(expVisitor, arg);
+            inBlock(p.stm_1, arg);
+            inBlock(p.stm_2, arg);
+            return null;
+        }
+
+        private void inBlock(Stm s, Void arg) {
+            newBlock();
+            s.accept(this, arg);
+            popBlock();
+        }
+    }
+
+    ////////////////////////////// Expression //////////////////////////////
+
+    public class ExpVisitor implements Exp.Visitor<Void,Void>
+    {
+        public Void visit(CPP.Absyn.ETrue p, Void arg)   { return null; }
+        public Void visit(CPP.Absyn.EFalse p, Void arg)  { return null; }
+        public Void visit(CPP.Absyn.EInt p, Void arg)    { return null; }
+        public Void visit(CPP.Absyn.EDouble p, Void arg) { return null; }
+
+        public Void visit(CPP.Absyn.EId p, Void arg)
+        {
+            slots.put(p, lookupVar(p.id_));
+            return null;
+        }
+
+        public Void visit(CPP.Absyn.EApp p, Void arg)
+        {
+            for (Exp e: p.listexp_) e.accept(this, arg);
+            return null;
+        }
+
+        public Void visit(CPP.Absyn.EPostIncr p, Void arg) { return p.exp_.accept(this, arg); }
+        public Void visit(CPP.Absyn.EPostDecr p, Void arg) { return p.exp_.accept(this, arg); }
+        public Void visit(CPP.Absyn.EPreIncr p, Void arg)  { return p.exp_.accept(this, arg); }
+        public Void visit(CPP.Absyn.EPreDecr p, Void arg)  { return p.exp_.accept(this, arg); }
+
+        public Void visit(CPP.Absyn.ETimes p, Void arg) { return both(p.exp_1, p.exp_2, arg); }
+        public Void visit(CPP.Absyn.EDiv p, Void arg)   { return both(p.exp_1, p.exp_2, arg); }
+        public Void visit(CPP.Absyn.EPlus p, Void arg)  { return both(p.exp_1, p.exp_2, arg); }
+        public Void visit(CPP.Absyn.EMinus p, Void arg) { return both(p.exp_1, p.exp_2, arg); }
+        public Void visit(CPP.Absyn.ELt p, Void arg)    { return both(p.exp_1, p.exp_2, arg); }
+        public Void visit(CPP.Absyn.EGt p, Void arg)    { return both(p.exp_1, p.exp_2, arg); }
+        public Void visit(CPP.Absyn.ELtEq p, Void arg)  { return both(p.exp_1, p.exp_2, arg); }
+        public Void visit(CPP.Absyn.EGtEq p, Void arg)  { return both(p.exp_1, p.exp_2, arg); }
+        public Void visit(CPP.Absyn.EEq p, Void arg)    { return both(p.exp_1, p.exp_2, arg); }
+        public Void visit(CPP.Absyn.ENEq p, Void arg)   { return both(p.exp_1, p.exp_2, arg); }
+        public Void visit(CPP.Absyn.EAnd p, Void arg)   { return both(p.exp_1, p.exp_2, arg); }
+        public Void visit(CPP.Absyn.EOr p, Void arg)    { return both(p.exp_1, p.exp_2, arg); }
+        public Void visit(CPP.Absyn.EAss p, Void arg)   { return both(p.exp_1, p.exp_2, arg); }
+
+        private Void both(Exp e1, Exp e2, Void arg) {
+            e1.accept(this, arg);
+            e2.accept(this, arg);
+            return null;
+        }
+    }
+
+    ///////////////////////// Scope handling /////////////////////////
+
+    private int newVar(String x) {
+        int slot = nextSlot++;
+        scopes.get(0).put(x, slot);
+        frameSize = Math.max(frameSize, nextSlot);
+        return slot;
+    }
+
+    private void newBlock() {
+        scopes.add(0, new TreeMap<>());
+        // remember where the block starts so its slots can be reused
+        blockStarts.push(nextSlot);
+    }
+
+    private void popBlock() {
+        scopes.remove(0);
+        nextSlot = blockStarts.pop();
+    }
+
+    // inner scopes are put last so that they shadow outer ones
+    private Map<String,Integer> visibleVars() {
+        Map<String,Integer> visible = new TreeMap<>();
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            visible.putAll(scopes.get(i));
+        }
+        return visible;
+    }
+
+    private int lookupVar(String x) {
+        for (Map<String,Integer> m : scopes) {
+            Integer slot = m.get(x);
+            if (slot != null) {
+                return slot;
+            }
+        }
+        throw new RuntimeException("unbound variable " + x);
+    }
+}
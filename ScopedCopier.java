@@ -0,0 +1,94 @@
+import CPP.Absyn.*;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * Copies the body of a function keeping track of the types of the
+ * variables in scope, for the passes that add variables of their own
+ * and have to know the type of the expression they are given.
+ */
+public class ScopedCopier extends AstCopier
+{
+    // Functions of the program by name
+    private final Map<String,DFun> functions;
+
+    private final LinkedList<Map<String,Type>> scopes = new LinkedList<>();
+
+    ScopedCopier(DFun f, Map<String,DFun> functions) {
+        super(null);
+        this.functions = functions;
+        scopes.push(new HashMap<>());
+        for (Arg arg : f.listarg_)
+            declare(((ADecl) arg).id_, ((ADecl) arg).type_);
+    }
+
+    // a declaration that stands alone is a scope of its own
+    Stm copyStm(Stm s) {
+        if (!(s instanceof SInit || s instanceof SDecls))
+            return super.copyStm(s);
+        scopes.push(new HashMap<>());
+        Stm copy = super.copyStm(s);
+        scopes.pop();
+        return copy;
+    }
+
+    public Stm visit(SBlock p, Void arg) {
+        scopes.push(new HashMap<>());
+        ListStm stms = copyList(p.liststm_);
+        scopes.pop();
+        return new SBlock(stms);
+    }
+
+    public Stm visit(SInit p, Void arg) {
+        Stm copy = super.visit(p, arg);
+        declare(p.id_, p.type_);
+        return copy;
+    }
+
+    public Stm visit(SDecls p, Void arg) {
+        for (String id : p.listid_)
+            declare(id, p.type_);
+        return super.visit(p, arg);
+    }
+
+    void declare(String id, Type type) {
+        scopes.peek().put(id, type);
+    }
+
+    // the type of a variable in scope, null for any other name
+    Type typeOf(String id) {
+        for (Map<String,Type> scope : scopes) {
+            Type type = scope.get(id);
+            if (type != null)
+                return type;
+        }
+        return null;
+    }
+
+    Type typeOf(Exp e) {
+        if (e instanceof EInt)
+            return new Type_int();
+        if (e instanceof EDouble)
+            return new Type_double();
+        if (e instanceof EId) {
+            Type type = typeOf(((EId) e).id_);
+            if (type == null)
+                throw new RuntimeException("no type for variable " + ((EId) e).id_);
+            return type;
+        }
+        if (e instanceof EApp)
+            return functions.get(((EApp) e).id_).type_;
+        if (e instanceof ETimes)
+            return typeOf(((ETimes) e).exp_1);
+        if (e instanceof EDiv)
+            return typeOf(((EDiv) e).exp_1);
+        if (e instanceof EPlus)
+            return typeOf(((EPlus) e).exp_1);
+        if (e instanceof EMinus)
+            return typeOf(((EMinus) e).exp_1);
+        // what is left of the expressions without assignments
+        return new Type_bool();
+    }
+}
@@ -0,0 +1,362 @@
+import CPP.Absyn.*;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Interpreter working on frames of slots assigned by the Resolver.
+ * A frame is a flat Object[] indexed by slot, and it runs the copy of
+ * the program whose variable nodes carry their slots, so reading or
+ * writing a variable is a single array access, and entering or leaving
+ * a block costs nothing.
+ */
+public class SlotInterpreter {
+
+    private final String MAIN_FUNC = "main";
+
+    private final String PRINT_INT = "printInt";
+    private final String PRINT_DOUBLE = "printDouble";
+    private final String READ_INT = "readInt";
+    private final String READ_DOUBLE = "readDouble";
+
+    // result of a return statement whose expression has no value
+    private static final Object NO_VALUE = new VNull();
+
+    private final Map<String, DFun> functions = new TreeMap<>();
+    private final Resolver resolver = new Resolver();
+    private final ProgramIO io;
+
+    // back edges taken by every loop so far, hot loops continue
+    // on the ClosureCompiler's nodes, which use the same frames
+    private final Map<SWhile, Integer> backEdges = new IdentityHashMap<>();
+    private Program program;
+    private ClosureCompiler compiler;
+
+    // visitors are stateless, so one of each serves the whole program
+    private final StatementVisitor statementVisitor = new StatementVisitor();
+    private final ExpressionVisitor expressionVisitor = new ExpressionVisitor();
+
+
+    public SlotInterpreter() {
+        this(new ProgramIO());
+    }
+
+    public SlotInterpreter(ProgramIO io) {
+        this.io = io;
+    }
+
+    public void interpret(Program p) {
+        resolver.resolve(p);
+        program = resolver.slotted(p);
+
+        for (Def def : ((PDefs) program).listdef_) {
+            DFun dFun = (DFun) def;
+            functions.put(dFun.id_, dFun);
+        }
+
+        DFun funMain = functions.get(MAIN_FUNC);
+        execute(funMain, new Object[resolver.frameSize(funMain)]);
+    }
+
+
+    /**runs the body of a function in the given frame,
+     * parameters have to be stored in their slots already*/
+    private Object execute(DFun dFun, Object[] frame) {
+        for (Stm stm : dFun.liststm_) {
+            Object value = stm.accept(statementVisitor, frame);
+            if (value != null) {
+                return value == NO_VALUE ? null : value;
+            }
+        }
+        return null;
+    }
+
+    private Object call(EApp p, Object[] frame) {
+        DFun dFun = functions.get(p.id_);
+        Object[] calleeFrame = new Object[resolver.frameSize(dFun)];
+
+        // arguments are evaluated in the caller's frame,
+        // parameters occupy the first slots of the callee's frame
+        int i = 0;
+        for (Exp exp : p.listexp_) {
+            calleeFrame[i++] = exp.accept(expressionVisitor, frame);
+        }
+        return execute(dFun, calleeFrame);
+    }
+
+
+    /**statements return null when execution continues with the next
+     * statement, and the returned value when a return was executed*/
+    public class StatementVisitor implements Stm.Visitor<Object, Object[]> {
+
+        public Object visit(SExp p, Object[] frame) {
+            p.exp_.accept(expressionVisitor, frame);
+            return null;
+        }
+
+        public Object visit(SDecls p, Object[] frame) {
+            Object initVal;
+            if(p.type_ instanceof Type_bool) {
+                initVal = false;
+            } else if(p.type_ instanceof Type_int) {
+                initVal = 0;
+            } else if(p.type_ instanceof Type_double) {
+                initVal = 0.0;
+            } else {
+                initVal = null;
+            }
+
+            int slot = ((Resolver.SlotDecls) p).slot;
+            for (int i = 0; i < p.listid_.size(); i++) {
+                frame[slot + i] = initVal;
+            }
+            return null;
+        }
+
+        public Object visit(SInit p, Object[] frame) {
+            frame[((Resolver.SlotInit) p).slot] = p.exp_.accept(expressionVisitor, frame);
+            return null;
+        }
+
+        public Object visit(SReturn p, Object[] frame) {
+            Object value = p.exp_.accept(expressionVisitor, frame);
+            return value == null ? NO_VALUE : value;
+        }
+
+        public Object visit(SWhile p, Object[] frame) {
+            int count = backEdges.getOrDefault(p, 0);
+            while (count < ClosureCompiler.HOT_LOOP) {
+                if (!(Boolean) p.exp_.accept(expressionVisitor, frame)) {
+                    backEdges.put(p, count);
+                    return null;
+                }
+                Object value = p.stm_.accept(this, frame);
+                if (value != null) {
+                    backEdges.put(p, count);
+                    return value;
+                }
+                count++;
+            }
+            backEdges.put(p, count);
+
+            // on-stack replacement, the compiled loop continues in this frame
+            if (compiler == null) {
+                compiler = new ClosureCompiler(io);
+                compiler.compile(program);
+            }
+            Object value = compiler.loop(p).execute(frame);
+            return value == ClosureCompiler.NO_VALUE ? NO_VALUE : value;
+        }
+
+        public Object visit(SBlock p, Object[] frame) {
+            for (Stm stm : p.liststm_) {
+                Object value = stm.accept(this, frame);
+                if (value != null) {
+                    return value;
+                }
+            }
+            return null;
+        }
+
+        public Object visit(SIfElse p, Object[] frame) {
+            if ((Boolean) p.exp_.accept(expressionVisitor, frame)) {
+                return p.stm_1.accept(this, frame);
+            } else {
+                return p.stm_2.accept(this, frame);
+            }
+        }
+    }
+
+
+    /**visitor for expression*/
+    public class ExpressionVisitor implements Exp.Visitor<Object, Object[]> {
+
+        public Object visit(ETrue p, Object[] frame) {
+            return true;
+        }
+
+        public Object visit(EFalse p, Object[] frame) {
+            return false;
+        }
+
+        public Object visit(EInt p, Object[] frame) {
+            return p.integer_;
+        }
+
+        public Object visit(EDouble p, Object[] frame) {
+            return p.double_;
+        }
+
+        public Object visit(EId p, Object[] frame) {
+            return frame[((Resolver.SlotId) p).slot];
+        }
+
+        public Object visit(EApp p, Object[] frame) {
+            if(PRINT_INT.equals(p.id_)) {
+                io.printInt((Integer) p.listexp_.getFirst().accept(this, frame));
+                return null;
+            } else if(PRINT_DOUBLE.equals(p.id_)) {
+                io.printDouble((Double) p.listexp_.getFirst().accept(this, frame));
+                return null;
+            } else if(READ_INT.equals(p.id_)) {
+                return io.readInt();
+            } else if(READ_DOUBLE.equals(p.id_)) {
+                return io.readDouble();
+            } else {
+                return call(p, frame);
+            }
+        }
+
+
+        /** pre/post in/decrement */
+        public Object visit(EPostIncr p, Object[] frame) {
+            int slot = ((Resolver.SlotId) p.exp_).slot;
+            Object old = frame[slot];
+            frame[slot] = add(old, 1);
+            return old;
+        }
+
+        public Object visit(EPostDecr p, Object[] frame) {
+            int slot = ((Resolver.SlotId) p.exp_).slot;
+            Object old = frame[slot];
+            frame[slot] = add(old, -1);
+            return old;
+        }
+
+        public Object visit(EPreIncr p, Object[] frame) {
+            int slot = ((Resolver.SlotId) p.exp_).slot;
+            return frame[slot] = add(frame[slot], 1);
+        }
+
+        public Object visit(EPreDecr p, Object[] frame) {
+            int slot = ((Resolver.SlotId) p.exp_).slot;
+            return frame[slot] = add(frame[slot], -1);
+        }
+
+        private Object add(Object number, int delta) {
+            if(number instanceof Integer) {
+                return (Integer) number + delta;
+            } else {
+                return (Double) number + delta;
+            }
+        }
+
+
+        /**Arithmetic expression operations*/
+        public Object visit(ETimes p, Object[] frame) {
+            Object exp1 = p.exp_1.accept(this, frame);
+            Object exp2 = p.exp_2.accept(this, frame);
+
+            if(exp1 instanceof Integer) {
+                return (Integer) exp1 * (Integer) exp2;
+            } else {
+                return (Double) exp1 * (Double) exp2;
+            }
+        }
+
+        public Object visit(EDiv p, Object[] frame) {
+            Object exp1 = p.exp_1.accept(this, frame);
+            Object exp2 = p.exp_2.accept(this, frame);
+
+            if(exp1 instanceof Integer) {
+                return (Integer) exp1 / (Integer) exp2;
+            } else {
+                return (Double) exp1 / (Double) exp2;
+            }
+        }
+
+        public Object visit(EPlus p, Object[] frame) {
+            Object exp1 = p.exp_1.accept(this, frame);
+            Object exp2 = p.exp_2.accept(this, frame);
+
+            if(exp1 instanceof Integer) {
+                return (Integer) exp1 + (Integer) exp2;
+            } else {
+                return (Double) exp1 + (Double) exp2;
+            }
+        }
+
+        public Object visit(EMinus p, Object[] frame) {
+            Object exp1 = p.exp_1.accept(this, frame);
+            Object exp2 = p.exp_2.accept(this, frame);
+
+            if(exp1 instanceof Integer) {
+                return (Integer) exp1 - (Integer) exp2;
+            } else {
+                return (Double) exp1 - (Double) exp2;
+            }
+        }
+
+
+        /**boolean operator expressions*/
+        public Object visit(ELt p, Object[] frame) {
+            Object exp1 = p.exp_1.accept(this, frame);
+            Object exp2 = p.exp_2.accept(this, frame);
+
+            if(exp1 instanceof Integer) {
+                return (Integer) exp1 < (Integer) exp2;
+            } else {
+                return (Double) exp1 < (Double) exp2;
+            }
+        }
+
+        public Object visit(EGt p, Object[] frame) {
+            Object exp1 = p.exp_1.accept(this, frame);
+            Object exp2 = p.exp_2.accept(this, frame);
+
+            if(exp1 instanceof Integer) {
+                return (Integer) exp1 > (Integer) exp2;
+            } else {
+                return (Double) exp1 > (Double) exp2;
+            }
+        }
+
+        public Object visit(ELtEq p, Object[] frame) {
+            Object exp1 = p.exp_1.accept(this, frame);
+            Object exp2 = p.exp_2.accept(this, frame);
+
+            if(exp1 instanceof Integer) {
+                return (Integer) exp1 <= (Integer) exp2;
+            } else {
+                return (Double) exp1 <= (Double) exp2;
+            }
+        }
+
+        public Object visit(EGtEq p, Object[] frame) {
+            Object exp1 = p.exp_1.accept(this, frame);
+            Object exp2 = p.exp_2.accept(this, frame);
+
+            if(exp1 instanceof Integer) {
+                return (Integer) exp1 >= (Integer) exp2;
+            } else {
+                return (Double) exp1 >= (Double) exp2;
+            }
+        }
+
+        public Object visit(EEq p, Object[] frame) {
+            return p.exp_1.accept(this, frame).equals(p.exp_2.accept(this, frame));
+        }
+
+        public Object visit(ENEq p, Object[] frame) {
+            return !p.exp_1.accept(this, frame).equals(p.exp_2.accept(this, frame));
+        }
+
+        public Object visit(EAnd p, Object[] frame) {
+            return (Boolean) p.exp_1.accept(this, frame) && (Boolean) p.exp_2.accept(this, frame);
+        }
+
+        public Object visit(EOr p, Object[] frame) {
+            return (Boolean) p.exp_1.accept(this, frame) || (Boolean) p.exp_2.accept(this, frame);
+        }
+
+
+        /**Assignment expression*/
+        public Object visit(EAss p, Object[] frame) {
+            Object value = p.exp_2.accept(this, frame);
+            frame[((Resolver.SlotId) p.exp_1).slot] = value;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+import CPP.Absyn.*;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Strength reduction of while loops, run after the TypeChecker. It
+ * returns a new tree which has to be checked again.
+ * An induction variable is an int variable of the enclosing scope that
+ * the loop changes only by statements of its body like i++, --i or
+ * i = i + c for a literal c. A product of it with an int literal or a
+ * variable the loop never assigns, or with itself, is kept in a new
+ * variable set before the loop and moved along with every such
+ * statement by an addition, so the loop multiplies no more. Ints wrap
+ * around, so the sums are the products even when they overflow.
+ * Inner loops are done first, their new variables are then declared
+ * in the body of the outer loop.
+ */
+public class StrengthReducer
+{
+    // Functions of the program by name
+    private final Map<String,DFun> functions = new TreeMap<>();
+
+    // Suffix of the last variable made for a product
+    private int temps;
+
+    // Entry point
+
+    public Program reduce(Program p) {
+        for (Def d : ((PDefs) p).listdef_)
+            functions.put(((DFun) d).id_, (DFun) d);
+
+        ListDef listdef = new ListDef();
+        for (Def d : ((PDefs) p).listdef_) {
+            DFun f = (DFun) d;
+            listdef.add(new DFun(f.type_, f.id_, f.listarg_, new Reducer(f).copyList(f.liststm_)));
+        }
+        return new PDefs(listdef);
+    }
+
+    ////////////////////////////// Reducer //////////////////////////////
+
+    /**
+     * Copies the body of a function with the products of the
+     * induction variables of its loops replaced.
+     */
+    private class Reducer extends ScopedCopier
+    {
+        Reducer(DFun f) {
+            super(f, functions);
+        }
+
+        void copyInto(Stm s, ListStm out) {
+            if (s instanceof SWhile)
+                reduce((SWhile) s, out);
+            else
+                super.copyInto(s, out);
+        }
+
+        private void reduce(SWhile p, ListStm out) {
+            Exp condition = copy(p.exp_);
+            Stm body = copyStm(p.stm_);
+            ListStm stms = body instanceof SBlock ? ((SBlock) body).liststm_ : single(body);
+
+            AstCopier loop = new AstCopier(null);
+            loop.copy(condition);
+            loop.copyStm(body);
+            Set<String> variant = new HashSet<>(loop.assigned);
+            variant.addAll(loop.declared);
+
+            // the induction variables are stepped by statements of the
+            // body, the other statements must not assign them
+            Set<String> induction = new HashSet<>();
+            Set<String> others = new HashSet<>();
+            for (Stm s : stms) {
+                String id = inducted(s);
+                if (id != null) {
+                    induction.add(id);
+                } else {
+                    AstCopier scan = new AstCopier(null);
+                    scan.copyStm(s);
+                    others.addAll(scan.assigned);
+                }
+            }
+            AstCopier scan = new AstCopier(null);
+            scan.copy(condition);
+            others.addAll(scan.assigned);
+            induction.removeAll(others);
+            induction.removeAll(loop.declared);
+            induction.removeIf(id -> !(typeOf(id) instanceof Type_int));
+
+            Products products = new Products(induction, variant);
+            condition = products.copy(condition);
+            ListStm reduced = new ListStm();
+            for (Stm s : stms) {
+                String id = inducted(s);
+                if (id == null || !induction.contains(id)) {
+                    reduced.add(products.copyStm(s));
+                    continue;
+                }
+                // the products move along before the variable does
+                for (Map.Entry<Exp,String> product : products.kept.entrySet()) {
+                    Exp increment = increment((ETimes) product.getKey(), id, step(s));
+                    if (increment != null)
+                        reduced.add(new SExp(new EAss(new EId(product.getValue()),
+                                new EPlus(new EId(product.getValue()), increment))));
+                }
+                reduced.add(s);
+            }
+
+            for (Map.Entry<Exp,String> product : products.kept.entrySet()) {
+                out.add(new SInit(new Type_int(), product.getValue(), product.getKey()));
+                declare(product.getValue(), new Type_int());
+            }
+            if (products.kept.isEmpty())
+                out.add(new SWhile(condition, body));
+            else
+                out.add(new SWhile(condition, new SBlock(reduced)));
+        }
+
+        // what the product i * k changes by when i does by c,
+        // null when the product does not have i in it
+        private Exp increment(ETimes product, String id, int c) {
+            Exp a = product.exp_1;
+            Exp b = product.exp_2;
+            boolean left = a instanceof EId && ((EId) a).id_.equals(id);
+            boolean right = b instanceof EId && ((EId) b).id_.equals(id);
+            // (i + c) * (i + c) = i * i + 2c * i + c * c
+            if (left && right)
+                return new EPlus(times(new EId(id), 2 * c), new EInt(c * c));
+            if (left)
+                return times(b, c);
+            if (right)
+                return times(a, c);
+            return null;
+        }
+
+        private Exp times(Exp k, int c) {
+            if (k instanceof EInt)
+                return new EInt(((EInt) k).integer_ * c);
+            if (c == 1)
+                return new EId(((EId) k).id_);
+            return new ETimes(new EId(((EId) k).id_), new EInt(c));
+        }
+    }
+
+    ////////////////////////////// Products //////////////////////////////
+
+    /**
+     * Copies the condition and the body of a loop, replacing the
+     * products of its induction variables by the variables kept for them.
+     */
+    private class Products extends AstCopier
+    {
+        private final Set<String> induction;
+        private final Set<String> variant;
+
+        // Products and the variables they are kept in
+        final Map<Exp,String> kept = new LinkedHashMap<>();
+
+        Products(Set<String> induction, Set<String> variant) {
+            super(null);
+            this.induction = induction;
+            this.variant = variant;
+        }
+
+        public Exp visit(ETimes p, Void arg) {
+            if (!reducible(p.exp_1, p.exp_2) && !reducible(p.exp_2, p.exp_1))
+                return super.visit(p, arg);
+            size++;
+            // equal products share one variable
+            ETimes product = new ETimes(copy(p.exp_1), copy(p.exp_2));
+            String name = kept.get(product);
+            if (name == null) {
+                name = "ind$" + (++temps);
+                kept.put(product, name);
+            }
+            return new EId(name);
+        }
+
+        // an induction variable times an invariant or itself
+        private boolean reducible(Exp i, Exp k) {
+            if (!(i instanceof EId) || !induction.contains(((EId) i).id_))
+                return false;
+            if (k instanceof EInt)
+                return true;
+            if (!(k instanceof EId))
+                return false;
+            String id = ((EId) k).id_;
+            return id.equals(((EId) i).id_) || !variant.contains(id);
+        }
+    }
+
+    // the exponent of an int literal that is a power of two, otherwise -1,
+    // the code generators turn multiplying and dividing by it into shifts
+    static int powerOfTwo(Exp exp) {
+        if (!(exp instanceof EInt))
+            return -1;
+        int v = ((EInt) exp).integer_;
+        return v > 0 && (v & (v - 1)) == 0 ? Integer.numberOfTrailingZeros(v) : -1;
+    }
+
+    // the induction variable a statement steps, or null
+    private static String inducted(Stm s) {
+        if (!(s instanceof SExp))
+            return null;
+        Exp e = ((SExp) s).exp_;
+        Exp target = AstCopier.incremented(e);
+        if (target instanceof EId)
+            return ((EId) target).id_;
+        if (!(e instanceof EAss) || !(((EAss) e).exp_1 instanceof EId))
+            return null;
+        String id = ((EId) ((EAss) e).exp_1).id_;
+        Exp value = ((EAss) e).exp_2;
+        if (value instanceof EPlus) {
+            EPlus plus = (EPlus) value;
+            if (isVariable(plus.exp_1, id) && plus.exp_2 instanceof EInt
+                    || plus.exp_1 instanceof EInt && isVariable(plus.exp_2, id))
+                return id;
+        }
+        if (value instanceof EMinus) {
+            EMinus minus = (EMinus) value;
+            if (isVariable(minus.exp_1, id) && minus.exp_2 instanceof EInt)
+                return id;
+        }
+        return null;
+    }
+
+    // how much the statement found by inducted changes its variable
+    private static int step(Stm s) {
+        Exp e = ((SExp) s).exp_;
+        if (e instanceof EPostIncr || e instanceof EPreIncr)
+            return 1;
+        if (e instanceof EPostDecr || e instanceof EPreDecr)
+            return -1;
+        Exp value = ((EAss) e).exp_2;
+        if (value instanceof EMinus)
+            return -((EInt) ((EMinus) value).exp_2).integer_;
+        EPlus plus = (EPlus) value;
+        return plus.exp_1 instanceof EInt ? ((EInt) plus.exp_1).integer_ : ((EInt) plus.exp_2).integer_;
+    }
+
+    private static boolean isVariable(Exp e, String id) {
+        return e instanceof EId && ((EId) e).id_.equals(id);
+    }
+
+    private static ListStm single(Stm s) {
+        ListStm stms = new ListStm();
+        stms.add(s);
+        return stms;
+    }
+}
@@ -0,0 +1,169 @@
+import CPP.Absyn.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What expressions read, assign and call, found bottom-up once for
+ * every node and kept by node, for the passes that ask it of every
+ * subexpression of an expression. Copying each of them with an
+ * AstCopier instead walks a large expression once for every level of
+ * it. Every expression also gets a number, which equal expressions
+ * share, so they can be compared and kept in a set without walking
+ * them. An expression shares the sets of an operand when it adds
+ * nothing to them, so the sets are never changed.
+ */
+public class Summaries implements Exp.Visitor<Summaries.Summary,Void>
+{
+    /**the facts an AstCopier counts, for one expression*/
+    static final class Summary
+    {
+        final int number;
+        // Variables read or assigned
+        final Set<String> uses;
+        final Set<String> assigned;
+        final Set<String> calls;
+        // Whether it calls, divides or assigns
+        final boolean effects;
+
+        Summary(int number, Set<String> uses, Set<String> assigned, Set<String> calls, boolean effects) {
+            this.number = number;
+            this.uses = uses;
+            this.assigned = assigned;
+            this.calls = calls;
+            this.effects = effects;
+        }
+
+        boolean assigns() {
+            return !assigned.isEmpty();
+        }
+    }
+
+    private final Map<Exp,Summary> summaries = new IdentityHashMap<>();
+
+    // Number of every expression, by its kind, its literal or name
+    // and the numbers of its operands, and the summary of each number
+    private final Map<List<Object>,Integer> numbers = new HashMap<>();
+    private final List<Summary> byNumber = new ArrayList<>();
+
+    Summary of(Exp e) {
+        Summary summary = summaries.get(e);
+        if (summary == null) {
+            summary = e.accept(this, null);
+            summaries.put(e, summary);
+        }
+        return summary;
+    }
+
+    // the summary of any expression with this number
+    Summary withNumber(int number) {
+        return byNumber.get(number);
+    }
+
+    private Summary summary(List<Object> key, Set<String> uses, Set<String> assigned,
+                            Set<String> calls, boolean effects) {
+        Integer number = numbers.get(key);
+        if (number != null)
+            return byNumber.get(number);
+        Summary summary = new Summary(byNumber.size(), uses, assigned, calls, effects);
+        numbers.put(key, summary.number);
+        byNumber.add(summary);
+        return summary;
+    }
+
+    private Summary leaf(Exp e, Object value) {
+        return summary(Arrays.asList(e.getClass(), value), Collections.emptySet(),
+                Collections.emptySet(), Collections.emptySet(), false);
+    }
+
+    private Summary both(Exp e, Exp e1, Exp e2, boolean effects) {
+        Summary a = of(e1);
+        Summary b = of(e2);
+        return summary(Arrays.asList(e.getClass(), a.number, b.number), union(a.uses, b.uses),
+                union(a.assigned, b.assigned), union(a.calls, b.calls), effects || a.effects || b.effects);
+    }
+
+    private Summary assignment(Exp e, Exp target, Exp value) {
+        String id = ((EId) target).id_;
+        Summary v = value == null ? null : of(value);
+        List<Object> key = Arrays.asList(e.getClass(), id, v == null ? -1 : v.number);
+        if (v == null)
+            return summary(key, Collections.singleton(id), Collections.singleton(id), Collections.emptySet(), true);
+        return summary(key, with(v.uses, id), with(v.assigned, id), v.calls, true);
+    }
+
+    private static Set<String> union(Set<String> a, Set<String> b) {
+        if (a.containsAll(b))
+            return a;
+        if (b.containsAll(a))
+            return b;
+        Set<String> union = new HashSet<>(a);
+        union.addAll(b);
+        return union;
+    }
+
+    private static Set<String> with(Set<String> a, String id) {
+        if (a.contains(id))
+            return a;
+        Set<String> with = new HashSet<>(a);
+        with.add(id);
+        return with;
+    }
+
+    // Expressions
+
+    public Summary visit(ETrue p, Void arg)   { return leaf(p, true); }
+    public Summary visit(EFalse p, Void arg)  { return leaf(p, false); }
+    public Summary visit(EInt p, Void arg)    { return leaf(p, p.integer_); }
+    public Summary visit(EDouble p, Void arg) { return leaf(p, p.double_); }
+
+    public Summary visit(EId p, Void arg) {
+        return summary(Arrays.asList(EId.class, p.id_), Collections.singleton(p.id_),
+                Collections.emptySet(), Collections.emptySet(), false);
+    }
+
+    public Summary visit(EApp p, Void arg) {
+        List<Object> key = new ArrayList<>();
+        key.add(EApp.class);
+        key.add(p.id_);
+        Set<String> uses = Collections.emptySet();
+        Set<String> assigned = Collections.emptySet();
+        Set<String> calls = Collections.singleton(p.id_);
+        for (Exp e : p.listexp_) {
+            Summary a = of(e);
+            key.add(a.number);
+            uses = union(uses, a.uses);
+            assigned = union(assigned, a.assigned);
+            calls = union(calls, a.calls);
+        }
+        return summary(key, uses, assigned, calls, true);
+    }
+
+    public Summary visit(EPostIncr p, Void arg) { return assignment(p, p.exp_, null); }
+    public Summary visit(EPostDecr p, Void arg) { return assignment(p, p.exp_, null); }
+    public Summary visit(EPreIncr p, Void arg)  { return assignment(p, p.exp_, null); }
+    public Summary visit(EPreDecr p, Void arg)  { return assignment(p, p.exp_, null); }
+    public Summary visit(EAss p, Void arg)      { return assignment(p, p.exp_1, p.exp_2); }
+
+    // division by zero throws, so it counts as an effect
+    public Summary visit(EDiv p, Void arg)   { return both(p, p.exp_1, p.exp_2, true); }
+
+    public Summary visit(ETimes p, Void arg) { return both(p, p.exp_1, p.exp_2, false); }
+    public Summary visit(EPlus p, Void arg)  { return both(p, p.exp_1, p.exp_2, false); }
+    public Summary visit(EMinus p, Void arg) { return both(p, p.exp_1, p.exp_2, false); }
+    public Summary visit(ELt p, Void arg)    { return both(p, p.exp_1, p.exp_2, false); }
+    public Summary visit(EGt p, Void arg)    { return both(p, p.exp_1, p.exp_2, false); }
+    public Summary visit(ELtEq p, Void arg)  { return both(p, p.exp_1, p.exp_2, false); }
+    public Summary visit(EGtEq p, Void arg)  { return both(p, p.exp_1, p.exp_2, false); }
+    public Summary visit(EEq p, Void arg)    { return both(p, p.exp_1, p.exp_2, false); }
+    public Summary visit(ENEq p, Void arg)   { return both(p, p.exp_1, p.exp_2, false); }
+    public Summary visit(EAnd p, Void arg)   { return both(p, p.exp_1, p.exp_2, false); }
+    public Summary visit(EOr p, Void arg)    { return both(p, p.exp_1, p.exp_2, false); }
+}
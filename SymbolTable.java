@@ -0,0 +1,73 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Nested scopes of names, each name maps to the stack of its bindings
+ * with the innermost on top, so a lookup is one hash lookup however deep
+ * the scopes are. Every scope keeps an undo log of the names it
+ * declared, leaving it pops exactly those bindings.
+ */
+public class SymbolTable<T> {
+
+    private static final class Binding<T> {
+        final T value;
+        final int depth;
+        final Binding<T> shadowed;
+
+        Binding(T value, int depth, Binding<T> shadowed) {
+            this.value = value;
+            this.depth = depth;
+            this.shadowed = shadowed;
+        }
+    }
+
+    private final Map<String,Binding<T>> bindings = new HashMap<>();
+
+    // the names declared, in order, and where each open scope starts in it
+    private final ArrayList<String> log = new ArrayList<>();
+    private int[] marks = new int[16];
+    private int depth;
+
+    /**opens a scope inside the current one*/
+    public void enter() {
+        if (depth == marks.length) {
+            marks = Arrays.copyOf(marks, depth * 2);
+        }
+        marks[depth++] = log.size();
+    }
+
+    /**closes the innermost scope, its names go back to what they
+     * were bound to outside it*/
+    public void exit() {
+        int mark = marks[--depth];
+        for (int i = log.size() - 1; i >= mark; i--) {
+            String name = log.remove(i);
+            Binding<T> shadowed = bindings.get(name).shadowed;
+            if (shadowed == null) {
+                bindings.remove(name);
+            } else {
+                bindings.put(name, shadowed);
+            }
+        }
+    }
+
+    /**binds the name in the innermost scope, false if that scope
+     * already has it*/
+    public boolean declare(String name, T value) {
+        Binding<T> top = bindings.get(name);
+        if (top != null && top.depth == depth) {
+            return false;
+        }
+        bindings.put(name, new Binding<>(value, depth, top));
+        log.add(name);
+        return true;
+    }
+
+    /**the innermost binding of the name, null if it has none*/
+    public T lookup(String name) {
+        Binding<T> top = bindings.get(name);
+        return top == null ? null : top.value;
+    }
+}
@@ -0,0 +1,9 @@
+public class SyntaxException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public SyntaxException(String msg) {
+        super(msg);
+    }
+
+}
@@ -0,0 +1,17 @@
+/**
+ * The tokens the DescentParser reads, with the kinds of DescentLexer.
+ */
+public interface TokenStream {
+
+    /**reads the next token and returns its kind*/
+    int next() throws SyntaxException;
+
+    /**the text of the token last read*/
+    String text();
+
+    /**the value of the integer literal last read*/
+    int intValue();
+
+    /**the line of the token last read*/
+    int line();
+}
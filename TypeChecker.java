@@ -1,62 +1,112 @@
 import CPP.Absyn.*;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TypeChecker
 {
     // Global signature of functions
     private Map<String,FunType> sig;
 
-    // Stack of contexts
-    private List<Map<String,Type>> cxt;
+    // Nested scopes of the variables
+    private SymbolTable<Type> cxt;
 
     // Return type of function we are checking
     private Type returnType;
 
+    // Definition of every function of the program
+    private Map<String,DFun> definitions;
+
+    // Side tables filled in while checking: the type of every
+    // expression and the definition called by every function call
+    private final Map<Exp,Type> expTypes = new IdentityHashMap<>();
+    private final Map<EApp,DFun> callees = new IdentityHashMap<>();
+
+    // Check the function bodies on the fork join pool
+    private final boolean parallel;
+
     // Share type constants
     public final Type BOOL   = new Type_bool();
     public final Type INT    = new Type_int();
     public final Type DOUBLE = new Type_double();
     public final Type VOID   = new Type_void();
 
+    public TypeChecker() {
+        this(false);
+    }
+
+    /**parallel checks the bodies of the functions at the same time,
+     * the first error is the one the sequential checker finds*/
+    public TypeChecker(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    // Checker of one function of the program the parent checks
+    private TypeChecker(TypeChecker parent) {
+        this.parallel = false;
+        this.sig = parent.sig;
+        this.definitions = parent.definitions;
+    }
+
     // Entry point
 
     public void typeCheck(Program p) {
         p.accept(new ProgramVisitor(), null);
     }
 
+    /**takes the types of a program that passed before, as AstReader
+     * reads them, instead of checking it again*/
+    public void restore(Program p, Map<Exp,Type> types) {
+        declare((PDefs)p);
+        expTypes.putAll(types);
+        for (Exp e: types.keySet()) {
+            if (e instanceof EApp && definitions.containsKey(((EApp)e).id_))
+                callees.put((EApp)e, definitions.get(((EApp)e).id_));
+        }
+    }
+
+    // Results, available once the program is checked
+
+    public Type typeOf(Exp e) {
+        Type t = expTypes.get(e);
+        if (t == null)
+            throw new RuntimeException("expression has not been type checked " + e);
+        return t;
+    }
+
+    public Map<Exp,Type> expTypes() {
+        return expTypes;
+    }
+
+    // null for the primitive functions
+    public DFun calleeOf(EApp e) {
+        return callees.get(e);
+    }
+
+    public FunType funTypeOf(EApp e) {
+        return sig.get(e.id_);
+    }
+
     ////////////////////////////// Program //////////////////////////////
 
     public class ProgramVisitor implements Program.Visitor<Void,Void>
     {
         public Void visit(CPP.Absyn.PDefs p, Void arg)
         {
-            // Put primitive functions into signature
-            sig = new TreeMap<String,FunType>();
-            sig.put("printInt"   , new FunType(VOID, singleArg(INT)));
-            sig.put("readInt"    , new FunType(INT, new ListArg()));
-
-            sig.put("printDouble"   , new FunType(VOID, singleArg(DOUBLE)));
-            sig.put("readDouble"    , new FunType(DOUBLE, new ListArg()));
-
-
-            // Extend signature by all the definitions
-            for (Def x: p.listdef_) {
-                DFun d = (DFun)x;
-                // make sure x is not already in the signature.
-                if (sig.get(d.id_) != null)
-                    throw new TypeException("function " + d.id_ + " has already been declared");
-
-                sig.put(d.id_, new FunType(d.type_, d.listarg_));
-            }
+            declare(p);
 
             // Check definitions
-            for (Def x: p.listdef_) {
-                returnType = sig.get(((DFun)x).id_).returnType;
-                x.accept(new DefVisitor(), arg);
+            if (parallel) {
+                checkInParallel(p.listdef_);
+            } else {
+                for (Def x: p.listdef_) {
+                    returnType = sig.get(((DFun)x).id_).returnType;
+                    x.accept(new DefVisitor(), arg);
+                }
             }
 
 
@@ -71,6 +121,30 @@ public class TypeChecker
         }
     }
 
+    // Build the signature of the primitive and the defined functions
+    private void declare(PDefs p) {
+        // Put primitive functions into signature
+        sig = new TreeMap<String,FunType>();
+        sig.put("printInt"   , new FunType(VOID, singleArg(INT)));
+        sig.put("readInt"    , new FunType(INT, new ListArg()));
+
+        sig.put("printDouble"   , new FunType(VOID, singleArg(DOUBLE)));
+        sig.put("readDouble"    , new FunType(DOUBLE, new ListArg()));
+
+
+        // Extend signature by all the definitions
+        definitions = new TreeMap<String,DFun>();
+        for (Def x: p.listdef_) {
+            DFun d = (DFun)x;
+            // make sure x is not already in the signature.
+            if (sig.get(d.id_) != null)
+                throw new TypeException("function " + d.id_ + " has already been declared");
+
+            sig.put(d.id_, new FunType(d.type_, d.listarg_));
+            definitions.put(d.id_, d);
+        }
+    }
+
     public ListArg singleArg (Type t) {
         ListArg l = new ListArg();
         l.add(new ADecl(t, "x"));
@@ -85,8 +159,7 @@ public class TypeChecker
         {
             // set return type and initial context
             returnType = p.type_;
-            cxt = new LinkedList();
-            cxt.add(new TreeMap());
+            cxt = new SymbolTable<>();
 
             // add all function parameters to context
             for (Arg a: p.listarg_) {
@@ -102,6 +175,74 @@ public class TypeChecker
         }
     }
 
+    ////////////////////////////// Parallel checking //////////////////////////////
+
+    // Once the signature is built every body is checked on its own,
+    // each by a checker of its own so the context and the return type
+    // stay with one thread. The side tables are merged and the error of
+    // the first function that has one is thrown, in the order of the
+    // program like the sequential checker.
+    private void checkInParallel(ListDef defs) {
+        DFun[] funs = new DFun[defs.size()];
+        int n = 0;
+        for (Def x: defs)
+            funs[n++] = (DFun)x;
+        TypeChecker[] parts = new TypeChecker[n];
+        RuntimeException[] errors = new RuntimeException[n];
+        AtomicInteger firstError = new AtomicInteger(n);
+        ForkJoinPool.commonPool().invoke(new CheckTask(funs, parts, errors, firstError, 0, n));
+
+        for (int i = 0; i < n; i++) {
+            if (errors[i] != null)
+                throw errors[i];
+            expTypes.putAll(parts[i].expTypes);
+            callees.putAll(parts[i].callees);
+        }
+    }
+
+    private class CheckTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final DFun[] funs;
+        private final TypeChecker[] parts;
+        private final RuntimeException[] errors;
+        private final AtomicInteger firstError;
+        private final int from, to;
+
+        CheckTask(DFun[] funs, TypeChecker[] parts, RuntimeException[] errors,
+                  AtomicInteger firstError, int from, int to)
+        {
+            this.funs = funs;
+            this.parts = parts;
+            this.errors = errors;
+            this.firstError = firstError;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute()
+        {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new CheckTask(funs, parts, errors, firstError, from, mid),
+                          new CheckTask(funs, parts, errors, firstError, mid, to));
+                return;
+            }
+            // a function after one with an error does not matter
+            if (from >= firstError.get())
+                return;
+            TypeChecker part = new TypeChecker(TypeChecker.this);
+            try {
+                funs[from].accept(part.new DefVisitor(), null);
+                parts[from] = part;
+            } catch (RuntimeException e) {
+                errors[from] = e;
+                firstError.accumulateAndGet(from, Math::min);
+            }
+        }
+    }
+
     ///////////////////////// Function argument /////////////////////////
 
     // Add a type declaration to the context
@@ -120,7 +261,7 @@ public class TypeChecker
     {
         public Void visit(CPP.Absyn.SExp p, Void arg)
         {
-            Type t = p.exp_.accept(new ExpVisitor(), arg);
+            Type t = infer(p.exp_, arg);
             return null;
         }
 
@@ -135,14 +276,14 @@ public class TypeChecker
         // E.g. "int x = 1";
         public Void visit(CPP.Absyn.SInit p, Void arg)
         {
-            check(p.type_, p.exp_.accept(new ExpVisitor(), arg));
+            check(p.type_, infer(p.exp_, arg));
             newVar(p.id_, p.type_);
             return null;
         }
 
         public Void visit(CPP.Absyn.SReturn p, Void arg)
         {
-            Type t1 = p.exp_.accept(new ExpVisitor(),arg);
+            Type t1 = infer(p.exp_, arg);
             if(!t1.equals(returnType))
                 throw new TypeException("Function must have return value with the same type");
 
@@ -151,9 +292,14 @@ public class TypeChecker
 
         public Void visit(CPP.Absyn.SWhile p, Void arg)
         {
-           Type t1= p.exp_.accept(new ExpVisitor(),arg);
+           Type t1= infer(p.exp_, arg);
               if(!t1.equals(BOOL))
                 throw new TypeException("While state must have Boolean expression");
+
+            // the body is a scope of its own
+            newBlock();
+            p.stm_.accept(new StmVisitor(), arg);
+            popBlock();
             return null;
 
         }
@@ -169,7 +315,7 @@ public class TypeChecker
 
         public Void visit(CPP.Absyn.SIfElse p, Void arg)
         {
-            Type t1= p.exp_.accept(new ExpVisitor(),arg);
+            Type t1= infer(p.exp_, arg);
             if(!t1.equals(BOOL)) {
                 throw new TypeException("If Condition must have Boolean expression");
             }
@@ -228,9 +374,11 @@ public class TypeChecker
             int i = 0;
             for (Exp e: p.listexp_) {
                 ADecl a = (ADecl)(ft.args.get(i));
-                check(a.type_, e.accept(new ExpVisitor(), arg));
+                check(a.type_, infer(e, arg));
                 i++;
             }
+            if (definitions.containsKey(p.id_))
+                callees.put(p, definitions.get(p.id_));
             return ft.returnType;
         }
 
@@ -239,27 +387,27 @@ public class TypeChecker
         // x++
         public Type visit(CPP.Absyn.EPostIncr p, Void arg)
         {
-            return numericType(p.exp_.accept(new ExpVisitor(), arg));
+            return numericType(infer(p.exp_, arg));
         }
         public Type visit(CPP.Absyn.EPostDecr p, Void arg)
         {
-            return numericType(p.exp_.accept(new ExpVisitor(), arg));
+            return numericType(infer(p.exp_, arg));
         }
         public Type visit(CPP.Absyn.EPreIncr p, Void arg)
         {
-            return numericType(p.exp_.accept(new ExpVisitor(), arg));
+            return numericType(infer(p.exp_, arg));
         }
         public Type visit(CPP.Absyn.EPreDecr p, Void arg)
         {
-            return numericType(p.exp_.accept(new ExpVisitor(), arg));
+            return numericType(infer(p.exp_, arg));
         }
 
         // Arithmetical operators
 
         public Type visit(CPP.Absyn.ETimes p, Void arg)
         {
-            Type t1=p.exp_1.accept(new ExpVisitor(), arg);
-            Type t2=p.exp_2.accept(new ExpVisitor(), arg);
+            Type t1=infer(p.exp_1, arg);
+            Type t2=infer(p.exp_2, arg);
 
             if(!t1.equals(t2)) {
                 throw new TypeException("Multiplication requires operands with the same type");
@@ -276,8 +424,8 @@ public class TypeChecker
         }
         public Type visit(CPP.Absyn.EDiv p, Void arg)
         {
-            Type t1=p.exp_1.accept(new ExpVisitor(), arg);
-            Type t2=p.exp_2.accept(new ExpVisitor(), arg);
+            Type t1=infer(p.exp_1, arg);
+            Type t2=infer(p.exp_2, arg);
 
             if(!t1.equals(t2)) {
                 throw new TypeException("Division requires operands with the same type");
@@ -293,8 +441,8 @@ public class TypeChecker
         }
         public Type visit(CPP.Absyn.EPlus p, Void arg)
         {
-            Type t1=p.exp_1.accept(new ExpVisitor(), arg);
-            Type t2=p.exp_2.accept(new ExpVisitor(), arg);
+            Type t1=infer(p.exp_1, arg);
+            Type t2=infer(p.exp_2, arg);
             if(!t1.equals(t2)) {
                 throw new TypeException("Addition requires operands with the same type");
             } else if(t1.equals(INT) || t1.equals(DOUBLE)) {
@@ -311,8 +459,8 @@ public class TypeChecker
 
         public Type visit(CPP.Absyn.EMinus p, Void arg)
         {
-            Type t1=p.exp_1.accept(new ExpVisitor(), arg);
-            Type t2=p.exp_2.accept(new ExpVisitor(), arg);
+            Type t1=infer(p.exp_1, arg);
+            Type t2=infer(p.exp_2, arg);
 
             if(!t1.equals(t2)) {
                 throw new TypeException("Subtraction requires operands with the same type");
@@ -330,8 +478,8 @@ public class TypeChecker
         // Comparison operators
         public Type visit(CPP.Absyn.ELt p, Void arg)
         {
-            Type t1=p.exp_1.accept(new ExpVisitor(), arg);
-            Type t2=p.exp_2.accept(new ExpVisitor(), arg);
+            Type t1=infer(p.exp_1, arg);
+            Type t2=infer(p.exp_2, arg);
 
             if (!t1.equals(t2)) {
                 throw new TypeException("Both of the operands have to be the same type!");
@@ -343,8 +491,8 @@ public class TypeChecker
         }
 
         public Type visit(CPP.Absyn.EGt p, Void arg) {
-            Type t1 = p.exp_1.accept(new ExpVisitor(), arg);
-            Type t2 = p.exp_2.accept(new ExpVisitor(), arg);
+            Type t1 = infer(p.exp_1, arg);
+            Type t2 = infer(p.exp_2, arg);
 
             if (!t1.equals(t2)) {
                 throw new TypeException("Both of the operands have to be the same type!");
@@ -357,8 +505,8 @@ public class TypeChecker
 
         public Type visit(CPP.Absyn.ELtEq p, Void arg)
         {
-            Type t1=p.exp_1.accept(new ExpVisitor(), arg);
-            Type t2=p.exp_2.accept(new ExpVisitor(), arg);
+            Type t1=infer(p.exp_1, arg);
+            Type t2=infer(p.exp_2, arg);
 
             if (!t1.equals(t2)) {
                 throw new TypeException("Both of the operands have to be the same type!");
@@ -371,8 +519,8 @@ public class TypeChecker
 
         public Type visit(CPP.Absyn.EGtEq p, Void arg)
         {
-            Type t1=p.exp_1.accept(new ExpVisitor(), arg);
-            Type t2=p.exp_2.accept(new ExpVisitor(), arg);
+            Type t1=infer(p.exp_1, arg);
+            Type t2=infer(p.exp_2, arg);
 
             if (!t1.equals(t2)) {
                 throw new TypeException("Both of the operands have to be the same type!");
@@ -387,8 +535,8 @@ public class TypeChecker
 
         public Type visit(CPP.Absyn.EEq p, Void arg)
         {
-            Type t1=p.exp_1.accept(new ExpVisitor(), arg);
-            Type t2=p.exp_2.accept(new ExpVisitor(), arg);
+            Type t1=infer(p.exp_1, arg);
+            Type t2=infer(p.exp_2, arg);
 
             if(!t1.equals(t2))
                 throw new TypeException("Both of the operands have to be the same type!");
@@ -399,8 +547,8 @@ public class TypeChecker
         }
 
         public Type visit(CPP.Absyn.ENEq p, Void arg) {
-            Type t1 = p.exp_1.accept(new ExpVisitor(), arg);
-            Type t2 = p.exp_2.accept(new ExpVisitor(), arg);
+            Type t1 = infer(p.exp_1, arg);
+            Type t2 = infer(p.exp_2, arg);
 
             if(!t1.equals(t2))
                 throw new TypeException("Both of the operands have to be the same type!");
@@ -414,10 +562,10 @@ public class TypeChecker
             // Logic operators
 
         public Type visit(CPP.Absyn.EAnd p, Void arg) {
-            Type t1 = p.exp_1.accept(new ExpVisitor(), arg);
-            Type t2 = p.exp_2.accept(new ExpVisitor(), arg);
+            Type t1 = infer(p.exp_1, arg);
+            Type t2 = infer(p.exp_2, arg);
 
-            if (!t1.equals(BOOL) && !t2.equals(BOOL))
+            if (!t1.equals(BOOL) || !t2.equals(BOOL))
                 throw new TypeException("&& requires both operands to be Boolean!");
             else
                 return BOOL;
@@ -425,10 +573,10 @@ public class TypeChecker
 
         public Type visit(CPP.Absyn.EOr p, Void arg)
         {
-            Type t1=p.exp_1.accept(new ExpVisitor(), arg);
-            Type t2=p.exp_2.accept(new ExpVisitor(), arg);
+            Type t1=infer(p.exp_1, arg);
+            Type t2=infer(p.exp_2, arg);
 
-            if(!t1.equals(BOOL)&& !t2.equals(BOOL))
+            if(!t1.equals(BOOL) || !t2.equals(BOOL))
                 throw new TypeException("|| requires both operands to be Boolean!");
             else
                 return BOOL;
@@ -437,11 +585,11 @@ public class TypeChecker
         // Assignment
         public Type visit(CPP.Absyn.EAss p, Void arg)
         {
-            Type t1=p.exp_1.accept(new ExpVisitor(), arg);
+            Type t1=infer(p.exp_1, arg);
             if(t1.equals(null)) {
                 throw new TypeException("Assignment error. Unidentified type of assignment target!");
             }else{
-                Type t2 = p.exp_2.accept(new ExpVisitor(), arg);
+                Type t2 = infer(p.exp_2, arg);
                 if(!t1.equals(t2))
                     throw new TypeException ("Assignment operation requires " +
                             "both variable and values with the same type");
@@ -452,37 +600,33 @@ public class TypeChecker
     }
 
 
+    // Infer the type of an expression and record it in the side table
+    public Type infer(Exp e, Void arg) {
+        Type t = e.accept(new ExpVisitor(), arg);
+        expTypes.put(e, t);
+        return t;
+    }
+
+
     ///////////////////////// Context handling /////////////////////////
 
     public void newVar (String x, Type t) {
-        // Get the top context block
-        Map<String,Type> m = cxt.get(0);
-        // Check that the variable is not declared already
-        if (m.containsKey(x))
+        // Add the binding unless the block has the variable already
+        if (!cxt.declare(x, t))
             throw new TypeException("duplicate variable binding " + x);
-        // Add the binding
-        m.put(x, t);
     }
 
     public void newBlock() {
-        cxt.add(0, new TreeMap());
+        cxt.enter();
     }
     public void popBlock() {
-        cxt.remove(0);
+        cxt.exit();
     }
 
     public Type lookupVar(String x) {
-        Type t = null;
-        for (Map<String,Type> m : cxt) {
-            t = m.get(x);
-            if (t != null) {
-                return t;
-            }
-        }
-
-        if(t == null) {
-           throw new TypeException("unbound variable " + x);
-        }
+        Type t = cxt.lookup(x);
+        if (t == null)
+            throw new TypeException("unbound variable " + x);
         return t;
     }
 
@@ -3,41 +3,370 @@ import java_cup.runtime.*;
 import CPP.*;
 import CPP.Absyn.*;
 import java.io.*;
+import java.util.Arrays;
 
 public class lab2 {
     public static void main(String args[]) {
-        if (args.length != 1) {
-            System.err.println("Usage: lab2 <SourceFile>");
-            System.exit(1);
+        if (args.length == 2 && args[0].equals("-daemon")) {
+            try {
+                new Daemon(java.nio.file.Paths.get(args[1])).serve();
+            } catch (IOException e) {
+                System.err.println(e.toString());
+                System.exit(1);
+            }
+            return;
         }
+        int status = run(args, null, System.in, System.out, System.err);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /**runs lab2 with these arguments and streams and returns the exit
+     * status, the files named are taken relative to dir unless it is
+     * null*/
+    public static int run(String args[], File dir, InputStream in, PrintStream out, PrintStream err) {
+        String source = null;
+        String engine = "-tree";
+        String jarFile = null;
+        String irPasses = null;
+        boolean irDump = false;
+        boolean descent = false;
+        boolean mmap = false;
+        boolean checkParse = false;
+        boolean parallelCheck = false;
+        boolean cache = false;
+        String batch = null;
+        boolean inline = false;
+        boolean memo = false;
+        boolean fold = false;
+        boolean licm = false;
+        boolean reduce = false;
+        boolean cse = false;
+        boolean dce = false;
+        boolean verify = false;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-slots") || arg.equals("-closure") || arg.equals("-jvm")
+                    || arg.equals("-vm") || arg.equals("-ir")) {
+                engine = arg;
+            } else if (arg.equals("-inline")) {
+                inline = true;
+            } else if (arg.equals("-fold")) {
+                fold = true;
+            } else if (arg.equals("-licm")) {
+                licm = true;
+            } else if (arg.equals("-reduce")) {
+                reduce = true;
+            } else if (arg.equals("-cse")) {
+                cse = true;
+            } else if (arg.equals("-verify")) {
+                verify = true;
+            } else if (arg.equals("-dce")) {
+                dce = true;
+            } else if (arg.equals("-memo")) {
+                memo = true;
+            } else if (arg.equals("-irpasses") && i + 1 < args.length) {
+                irPasses = args[++i];
+            } else if (arg.equals("-descent")) {
+                descent = true;
+            } else if (arg.equals("-mmap")) {
+                // the mapped lexer only feeds the hand written parser
+                descent = true;
+                mmap = true;
+            } else if (arg.equals("-checkparse")) {
+                checkParse = true;
+            } else if (arg.equals("-parcheck")) {
+                parallelCheck = true;
+            } else if (arg.equals("-cache")) {
+                cache = true;
+            } else if (arg.equals("-batch") && i + 1 < args.length) {
+                batch = args[++i];
+            } else if (arg.equals("-irdump")) {
+                irDump = true;
+            } else if (arg.equals("-compile") && i + 1 < args.length) {
+                jarFile = args[++i];
+            } else if (source == null && !arg.startsWith("-")) {
+                source = arg;
+            } else {
+                return usage(err);
+            }
+        }
+        if (batch != null && source == null) {
+            // every other argument is for each program of the directory
+            String[] options = new String[args.length - 2];
+            for (int i = 0, j = 0; i < args.length; i++) {
+                if (args[i].equals("-batch")) {
+                    i++;
+                } else {
+                    options[j++] = args[i];
+                }
+            }
+            try {
+                return new BatchRunner(new File(resolve(dir, batch)).toPath(), options,
+                        Runtime.getRuntime().availableProcessors()).run(out);
+            } catch (IOException e) {
+                err.println(e.toString());
+                return 1;
+            }
+        }
+        if (source == null || batch != null) {
+            return usage(err);
+        }
+        source = resolve(dir, source);
+        if (jarFile != null) {
+            jarFile = resolve(dir, jarFile);
+        }
+        java.nio.file.Path cacheDirectory = new File(resolve(dir, ".lab2cache")).toPath();
 
         Yylex l = null;
+        TokenStream d = null;
+        // what goes wrong once there is a tree is no syntax error
+        boolean parsed = false;
         try {
-            l = new Yylex(new FileReader(args[0]));
-            parser p = new parser(l);
-            CPP.Absyn.Program parse_tree = p.pProgram();
-            new TypeChecker().typeCheck(parse_tree);
-            new Interpreter().interpret(parse_tree);
+            CPP.Absyn.Program parse_tree = null;
+            TypeChecker typeChecker = null;
+            ProgramCache programs = null;
+            byte[] sourceHash = null;
+            if (cache) {
+                // an unchanged source that passed before is read checked
+                programs = new ProgramCache(cacheDirectory);
+                sourceHash = ProgramCache.hash(source);
+                ProgramCache.Entry entry = programs.load(sourceHash);
+                if (entry != null) {
+                    parse_tree = entry.program;
+                    typeChecker = entry.types;
+                    parsed = true;
+                }
+            }
+            if (parse_tree == null) {
+                if (descent) {
+                    d = mmap ? new MappedLexer(source) : new DescentLexer(new FileReader(source));
+                    parse_tree = new DescentParser(d).pProgram();
+                } else {
+                    l = new Yylex(new FileReader(source));
+                    parser p = new parser(l);
+                    parse_tree = p.pProgram();
+                }
+                parsed = true;
+                if (checkParse && !checkParse(source, parse_tree, descent, err)) {
+                    return 1;
+                }
+                typeChecker = new TypeChecker(parallelCheck);
+                typeChecker.typeCheck(parse_tree);
+                // unless the source changed while it was read
+                if (programs != null && Arrays.equals(sourceHash, ProgramCache.hash(source))) {
+                    programs.store(sourceHash, parse_tree, typeChecker);
+                }
+            }
+            CPP.Absyn.Program original = parse_tree;
+            if (inline) {
+                Inliner inliner = new Inliner();
+                parse_tree = inliner.inline(parse_tree);
+                for (String line : inliner.report()) {
+                    err.println(line);
+                }
+                typeChecker = new TypeChecker(parallelCheck);
+                typeChecker.typeCheck(parse_tree);
+            }
+            if (fold) {
+                parse_tree = new ConstantFolder().fold(parse_tree);
+                typeChecker = new TypeChecker(parallelCheck);
+                typeChecker.typeCheck(parse_tree);
+            }
+            if (licm) {
+                parse_tree = new LoopInvariantMover().move(parse_tree);
+                typeChecker = new TypeChecker(parallelCheck);
+                typeChecker.typeCheck(parse_tree);
+            }
+            if (reduce) {
+                parse_tree = new StrengthReducer().reduce(parse_tree);
+                typeChecker = new TypeChecker(parallelCheck);
+                typeChecker.typeCheck(parse_tree);
+            }
+            if (cse) {
+                CommonSubexpressionEliminator eliminator = new CommonSubexpressionEliminator();
+                parse_tree = eliminator.eliminate(parse_tree);
+                for (String line : eliminator.report()) {
+                    err.println(line);
+                }
+                typeChecker = new TypeChecker(parallelCheck);
+                typeChecker.typeCheck(parse_tree);
+            }
+            if (dce) {
+                parse_tree = new DeadCodeEliminator().eliminate(parse_tree);
+                typeChecker = new TypeChecker(parallelCheck);
+                typeChecker.typeCheck(parse_tree);
+            }
+            ProgramIO io = new ProgramIO(in, out);
+            if (verify) {
+                return verify(original, parse_tree, in, out, err);
+            } else if (jarFile != null) {
+                new JvmCompiler().writeJar(parse_tree, JvmCompiler.className(source), new File(jarFile));
+            } else if (engine.equals("-slots")) {
+                new SlotInterpreter(io).interpret(parse_tree);
+            } else if (engine.equals("-closure")) {
+                new ClosureCompiler(io).interpret(parse_tree);
+            } else if (engine.equals("-vm")) {
+                new RegisterCompiler().interpret(parse_tree, io);
+            } else if (engine.equals("-ir")) {
+                Ir.Program program = new IrBuilder().build(parse_tree);
+                IrPassManager passes = IrPassManager.standard();
+                if (irPasses == null) {
+                    passes.addAll();
+                } else {
+                    for (String name : irPasses.split(",")) {
+                        if (!name.isEmpty()) {
+                            passes.add(name);
+                        }
+                    }
+                }
+                passes.run(program);
+                if (irDump) {
+                    err.print(Ir.print(program));
+                }
+                new IrInterpreter(program, io).run();
+            } else if (engine.equals("-jvm")) {
+                CppRuntime.setIO(io);
+                try {
+                    new JvmCompiler().run(parse_tree, JvmCompiler.className(source));
+                } finally {
+                    CppRuntime.clearIO();
+                }
+            } else {
+                Interpreter interpreter = new Interpreter(io, typeChecker);
+                if (memo) {
+                    interpreter.memoize(Interpreter.MEMO_CAPACITY);
+                }
+                interpreter.interpret(parse_tree);
+                for (String line : interpreter.memoStatistics()) {
+                    err.println(line);
+                }
+            }
 
         } catch (TypeException e) {
-            System.out.println("TYPE ERROR");
-            System.err.println(e.toString());
-            System.exit(1);
+            out.println("TYPE ERROR");
+            err.println(e.toString());
+            return 1;
         } catch (RuntimeException e) {
-            //System.out.println("RUNTIME ERROR");
-            System.err.println(e.toString());
-            System.exit(-1);
+            //out.println("RUNTIME ERROR");
+            err.println(e.toString());
+            return -1;
         } catch (IOException e) {
-            System.err.println(e.toString());
-            System.exit(1);
+            err.println(e.toString());
+            return 1;
         } catch (Throwable e) {
-            System.out.println("SYNTAX ERROR");
-            System.out.println("At line " + String.valueOf(l.line_num())
-                       + ", near \"" + l.buff() + "\" :");
-            System.out.println("     " + e.getMessage());
-            e.printStackTrace();
-            System.exit(1);
+            if (parsed) {
+                // like a stack overflow while the program runs
+                err.println(e.toString());
+                return -1;
+            }
+            out.println("SYNTAX ERROR");
+            if (d != null) {
+                out.println("At line " + d.line() + ", near \"" + d.text() + "\" :");
+            } else if (l != null) {
+                out.println("At line " + String.valueOf(l.line_num())
+                           + ", near \"" + l.buff() + "\" :");
+            }
+            out.println("     " + e.getMessage());
+            e.printStackTrace(err);
+            return 1;
         }
+        return 0;
+    }
+
+    private static String resolve(File dir, String name) {
+        return dir == null || new File(name).isAbsolute() ? name : new File(dir, name).getPath();
     }
-}
 
+    /**parses the source again with the other parser and fails
+     * if that one does not build the same tree*/
+    private static boolean checkParse(String source, Program parsed, boolean descent, PrintStream err) throws IOException {
+        String other = descent ? "CUP parser" : "descent parser";
+        Program tree;
+        try {
+            if (descent) {
+                tree = new parser(new Yylex(new FileReader(source))).pProgram();
+            } else {
+                tree = new DescentParser(new DescentLexer(new FileReader(source))).pProgram();
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            err.println("PARSE CHECK FAILED: the " + other + " failed, " + e.getMessage());
+            return false;
+        }
+        if (!tree.equals(parsed)) {
+            err.println("PARSE CHECK FAILED: the " + other + " built another tree");
+            return false;
+        }
+        return true;
+    }
+
+    /**runs the program as written and as optimized in the Interpreter
+     * on the same input, prints the optimized output and fails if the
+     * two outputs differ*/
+    private static int verify(Program original, Program optimized, InputStream in, PrintStream out, PrintStream err) throws IOException {
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int n; (n = in.read(buffer)) > 0; ) {
+            input.write(buffer, 0, n);
+        }
+        String expected = runCaptured(original, input.toByteArray());
+        String actual = runCaptured(optimized, input.toByteArray());
+        out.print(actual);
+        if (!expected.equals(actual)) {
+            err.println("VERIFY FAILED: the optimized program printed something else, it should print");
+            err.print(expected);
+            return 1;
+        }
+        return 0;
+    }
+
+    private static String runCaptured(Program program, byte[] input) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(output, true);
+        try {
+            new Interpreter(new ProgramIO(new ByteArrayInputStream(input), out)).interpret(program);
+        } catch (RuntimeException | StackOverflowError e) {
+            // a program that fails has to fail the same way
+            out.println(e.toString());
+        }
+        return output.toString();
+    }
+
+    private static int usage(PrintStream err) {
+        err.println("Usage: lab2 [-slots | -closure | -vm | -ir | -jvm | -compile <JarFile>] [-inline] [-fold] [-licm] [-reduce] [-cse] [-dce] [-irpasses <names>] [-irdump] [-descent] [-mmap] [-checkparse] [-parcheck] [-cache] [-memo] [-verify] <SourceFile>");
+        err.println("       lab2 -batch <Directory> [options]");
+        err.println("       lab2 -daemon <Socket>");
+        err.println("  -batch <dir>      run every .cc file of dir with the other options on all cores,");
+        err.println("                    compare with its .output and print a summary with the times");
+        err.println("  -daemon <socket>  stay running and run the programs lab2client sends on the socket");
+        err.println("  -slots            run on frames of resolved variable slots");
+        err.println("  -closure          compile functions to executable nodes and run those");
+        err.println("  -vm               compile to register machine code and run it");
+        err.println("  -ir               build the SSA form, optimize it and run it");
+        err.println("  -irpasses <names> the optimizations of the SSA form to run, in order and");
+        err.println("                    separated by commas, all of fold,merge,dce if not given");
+        err.println("  -irdump           print the SSA form on stderr before it runs");
+        err.println("  -jvm              compile to JVM bytecode and run it");
+        err.println("  -compile <jar>    compile to JVM bytecode and write a runnable jar");
+        err.println("  -descent          parse with the hand written parser instead of the CUP one");
+        err.println("  -mmap             parse with the hand written parser from a memory mapping");
+        err.println("  -checkparse       parse with both parsers and fail if the trees differ");
+        err.println("  -parcheck         type check the functions in parallel");
+        err.println("  -cache            keep the checked program in .lab2cache and run an unchanged");
+        err.println("                    source from there without parsing and checking it");
+        err.println("  -inline           inline calls of small functions first, report them on stderr");
+        err.println("  -fold             fold and propagate constants first");
+        err.println("  -licm             move loop invariant expressions out of loops first");
+        err.println("  -reduce           replace products of loop counters by sums carried along first");
+        err.println("  -cse              compute repeated expressions once first, report them on stderr");
+        err.println("  -dce              remove dead stores and code that never runs first");
+        err.println("  -memo             keep results of pure functions in the tree interpreter");
+        err.println("  -verify           run the program before and after the optimizations above");
+        err.println("                    in the tree interpreter and fail if the outputs differ");
+        return 1;
+    }
+}
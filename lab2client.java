@@ -0,0 +1,58 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+
+/**
+ * Client of the lab2 daemon: sends the arguments after the socket and
+ * the standard input to the daemon, copies the output of the run to
+ * its own and exits with the status of the run.
+ */
+public class lab2client {
+    public static void main(String args[]) {
+        if (args.length < 1) {
+            System.err.println("Usage: lab2client <Socket> <lab2 arguments>");
+            System.exit(1);
+        }
+        try (SocketChannel daemon = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            daemon.connect(UnixDomainSocketAddress.of(args[0]));
+
+            ByteArrayOutputStream input = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int n; (n = System.in.read(buffer)) > 0; ) {
+                input.write(buffer, 0, n);
+            }
+            DataOutputStream request = new DataOutputStream(Channels.newOutputStream(daemon));
+            request.writeUTF(Paths.get("").toAbsolutePath().toString());
+            request.writeInt(args.length - 1);
+            for (int i = 1; i < args.length; i++) {
+                request.writeUTF(args[i]);
+            }
+            request.writeInt(input.size());
+            input.writeTo(request);
+            request.flush();
+
+            DataInputStream answer = new DataInputStream(Channels.newInputStream(daemon));
+            byte[] out = new byte[answer.readInt()];
+            answer.readFully(out);
+            byte[] err = new byte[answer.readInt()];
+            answer.readFully(err);
+            int status = answer.readInt();
+            System.out.write(out);
+            System.out.flush();
+            System.err.write(err);
+            System.err.flush();
+            if (status != 0) {
+                System.exit(status);
+            }
+        } catch (IOException e) {
+            System.err.println(e.toString());
+            System.exit(1);
+        }
+    }
+}
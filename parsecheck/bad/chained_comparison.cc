@@ -0,0 +1,5 @@
+int main() {
+  int a = 1;
+  bool p = a < a < a;
+  return 0;
+}
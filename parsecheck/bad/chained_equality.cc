@@ -0,0 +1,4 @@
+int main() {
+  bool p = true == true == true;
+  return 0;
+}
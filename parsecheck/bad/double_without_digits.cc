@@ -0,0 +1,4 @@
+int main() {
+  double d = 1.e5;
+  return 0;
+}
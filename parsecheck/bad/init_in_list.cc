@@ -0,0 +1,4 @@
+int main() {
+  int a, b = 1;
+  return 0;
+}
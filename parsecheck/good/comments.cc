@@ -0,0 +1,14 @@
+// a line comment
+# a line starting with a hash
+/* a block comment */
+/* a block comment
+   over several lines // with a line comment in it
+   and a * and a / */
+int/* between tokens */main(/**/) {  // after code
+  int x = 1; # after code
+  /** stars **/
+  /***/
+  x = x /* inside an expression */ + 1;
+  return x;  /* at the end of a line */
+}
+// a last comment without a line end
\ No newline at end of file
@@ -0,0 +1,20 @@
+// definitions of every type, with no, one and several parameters
+
+void nothing() {}
+
+bool yes() { return true; }
+
+int one(int x) { return x; }
+
+double mix(int a, double b, bool c) {
+  if (c) return a + b; else return b;
+}
+
+int main() {
+  nothing();
+  printInt(one(1));
+  printDouble(mix(1, 2.5, yes()));
+  printInt(one(one(one(2))));
+  printDouble(mix(one(3), readDouble(), false));
+  return 0;
+}
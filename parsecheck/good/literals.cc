@@ -0,0 +1,15 @@
+int main() {
+  int zero = 0;
+  int big = 2147483647;
+  int lead = 007;
+  double d = 1.5;
+  double small = 0.25;
+  double e1 = 1.0e5;
+  double e2 = 3.0e-2;
+  double e3 = 12.375e10;
+  double e4 = 2.0e0;
+  bool t = true;
+  bool f = false;
+  printDouble(1.0 + 2.5e3 * 0.0);
+  return zero;
+}
@@ -0,0 +1,42 @@
+int main() {
+  int a = 1;
+  int b = 2;
+  int c = 3;
+  bool p = true;
+  bool q = false;
+
+  // the operators of every level and how they bind
+  a = a * b / c + a - b * c;
+  a = a - b - c;
+  a = a / b / c;
+  p = a + b < c * a;
+  p = a < b == b > c;
+  p = a <= b != c >= a;
+  p = (a < b) == (b < c);
+  p = p && q || q && p;
+  p = p || q || p && q && p;
+
+  // assignments go to the right, to whatever is on their left
+  a = b = c;
+  p || q = p;
+  p && q = q || p;
+  a + b = c;
+
+  // increments and decrements on both sides
+  a++;
+  ++a;
+  a--;
+  --a;
+  ++a++;
+  --a--;
+  ++a--;
+  --a++;
+  a = a++ * ++b - c-- / --a;
+  a = a+++b;
+  a = a---b;
+
+  // calls and parentheses
+  a = (((a)));
+  a = f(a, (b), c + 1) * g();
+  return ((a));
+}
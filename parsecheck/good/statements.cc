@@ -0,0 +1,16 @@
+int main() {
+  int a;
+  double b, c, d;
+  bool e = true;
+  int f = 1;
+  a = f;
+  {}
+  { int g; { int h = g; } }
+  while (a < 10) a++;
+  while (false) { }
+  while (e) { e = false; }
+  if (e) a++; else a--;
+  if (e) if (e) {} else {} else {}
+  if (a < 1) { return 1; } else if (a < 2) { return 2; } else { }
+  return a;
+}
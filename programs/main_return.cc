@@ -0,0 +1,6 @@
+int main() {
+  int x = 5;
+  printInt(x);
+  return 0;
+  printInt(99);
+}
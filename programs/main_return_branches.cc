@@ -0,0 +1,14 @@
+// -dce removes what follows the if, both branches end main
+int main() {
+  int x = 1;
+  int y = 2;
+  if (x == 1) {
+    printInt(x);
+    return 0;
+  } else {
+    printInt(y);
+    return 1;
+  }
+  y = 7;
+  printInt(y);
+}